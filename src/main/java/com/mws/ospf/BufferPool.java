@@ -0,0 +1,47 @@
+package com.mws.ospf;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**<p><h1>Buffer Pool</h1></p>
+ * <p>A fixed size pool of PacketBuffers, allocated up front. Acquiring and releasing a buffer does not allocate, as
+ * the pool is backed by an array queue. When the pool is empty, acquire returns null rather than growing the pool, so
+ * the number of buffers in flight for an interface is bounded.</p>
+ */
+class BufferPool {
+    //region OBJECT PROPERTIES
+    private final ArrayBlockingQueue<PacketBuffer> freeBuffers;
+    //endregion OBJECT PROPERTIES
+
+    //region OBJECT METHODS
+    /**<p><h1>Buffer Pool Constructor</h1></p>
+     * <p>Create a pool filled with the given number of buffers, each with the given capacity.</p>
+     * @param size number of buffers in the pool
+     * @param capacity capacity of each buffer in bytes
+     */
+    BufferPool(int size, int capacity) {
+        freeBuffers = new ArrayBlockingQueue<>(size);
+        for (int i = 0; i < size; i++)
+            freeBuffers.add(new PacketBuffer(capacity));
+    }
+
+    /**<p><h1>Acquire Buffer</h1></p>
+     * <p>Take a free buffer from the pool, cleared and ready to receive into.</p>
+     * @return a free buffer, or null if every buffer is in use
+     */
+    PacketBuffer acquire() {
+        PacketBuffer pBuffer = freeBuffers.poll();
+        if (pBuffer != null)
+            pBuffer.buffer.clear();
+        return pBuffer;
+    }
+
+    /**<p><h1>Release Buffer</h1></p>
+     * <p>Return a buffer to the pool once it has been processed. The buffer must not be used after release.</p>
+     * @param pBuffer buffer to return
+     */
+    void release(PacketBuffer pBuffer) {
+        pBuffer.source = null;
+        freeBuffers.offer(pBuffer);
+    }
+    //endregion OBJECT METHODS
+}
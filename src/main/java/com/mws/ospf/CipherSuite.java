@@ -0,0 +1,120 @@
+package com.mws.ospf;
+
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import java.security.spec.AlgorithmParameterSpec;
+
+/**<p><h1>Cipher Suites</h1></p>
+ * <p>An enumerable list of the ciphers encrypted OSPF packets can be protected with. Each suite has a code, advertised
+ * in the DH PubKey packet, and the parameters used to make its Cipher.</p>
+ * <p>AEAD suites authenticate the OSPF header as associated data, and their tag replaces the packet checksum. The
+ * checksum of an AEAD packet is left as 0, as for OSPF cryptographic authentication.</p>
+ */
+enum CipherSuite {
+    /**<p><h1>AES-CBC</h1></p>
+     * <p>AES-128 in CBC mode with PKCS5 padding. No integrity beyond the packet checksum. Supported by every node, so
+     * used when neighbours prefer different suites.</p>
+     */
+    AES_CBC(1, "AES/CBC/PKCS5Padding", "AES", 16, 16, 0),
+    /**<p><h1>AES-GCM</h1></p>
+     * <p>AES-128 in GCM mode, an AEAD cipher with a 16 byte tag.</p>
+     */
+    AES_GCM(2, "AES/GCM/NoPadding", "AES", 16, 12, 16),
+    /**<p><h1>ChaCha20-Poly1305</h1></p>
+     * <p>ChaCha20 with a 256 bit key and a Poly1305 16 byte tag, an AEAD cipher fast without AES instructions.</p>
+     */
+    CHACHA20_POLY1305(3, "ChaCha20-Poly1305", "ChaCha20", 32, 12, 16);
+
+    final int code;//Advertised in the DH PubKey packet
+    final String transformation;
+    final String keyAlgorithm;
+    final int keyLength;//Bytes of the DH secret used as the key
+    final int ivLength;
+    final int tagLength;//0 for suites that are not AEAD
+
+    /**<p><h1>Cipher Suite Constructor</h1></p>
+     * @param code value of the suite in the DH PubKey packet
+     * @param transformation Cipher transformation
+     * @param keyAlgorithm SecretKey algorithm
+     * @param keyLength key length in bytes
+     * @param ivLength IV, or nonce, length in bytes
+     * @param tagLength authentication tag length in bytes, 0 if the suite is not AEAD
+     */
+    CipherSuite(int code, String transformation, String keyAlgorithm, int keyLength, int ivLength, int tagLength) {
+        this.code = code;
+        this.transformation = transformation;
+        this.keyAlgorithm = keyAlgorithm;
+        this.keyLength = keyLength;
+        this.ivLength = ivLength;
+        this.tagLength = tagLength;
+    }
+
+    /**<p><h1>Is AEAD</h1></p>
+     * @return true if the suite authenticates packets with a tag
+     */
+    boolean isAEAD() {
+        return tagLength != 0;
+    }
+
+    /**<p><h1>Make Parameter Spec</h1></p>
+     * <p>Make the parameters to init the Cipher with, for an IV.</p>
+     * @param iv IV, or nonce, of ivLength bytes
+     * @return parameters for Cipher.init
+     */
+    AlgorithmParameterSpec makeParameterSpec(byte[] iv) {
+        if (this == AES_GCM)
+            return new GCMParameterSpec(tagLength * 8, iv);
+        return new IvParameterSpec(iv);
+    }
+
+    /**<p><h1>Convert ENUM to String</h1></p>
+     * <p>Convert enum type to string, based on the specific enum. Useful for storage in a file.</p>
+     * @return a text string that represents the string value.
+     */
+    @Override
+    public String toString() {
+        return switch (this) {
+            case AES_CBC -> "AES-CBC";
+            case AES_GCM -> "AES-GCM";
+            case CHACHA20_POLY1305 -> "ChaCha20-Poly1305";
+        };
+    }
+
+    /**<p><h1>From String</h1></p>
+     * <p>Map of a string value to a cipher suite ENUM. Values identical to that returned by toString()</p>
+     * @param suite String value to map to a CipherSuite ENUM
+     * @return the associated ENUM CipherSuite
+     * @throws IllegalArgumentException parameter suite is not valid
+     */
+    static CipherSuite fromString(String suite) {
+        for (CipherSuite cipherSuite: values()) {
+            if (cipherSuite.toString().equals(suite))
+                return cipherSuite;
+        }
+        throw new IllegalArgumentException("Unexpected value: " + suite);
+    }
+
+    /**<p><h1>From Code</h1></p>
+     * @param code value of a suite as advertised in a DH PubKey packet
+     * @return the associated ENUM CipherSuite, or null if the code is not known
+     */
+    static CipherSuite fromCode(int code) {
+        for (CipherSuite cipherSuite: values()) {
+            if (cipherSuite.code == code)
+                return cipherSuite;
+        }
+        return null;
+    }
+
+    /**<p><h1>Negotiate Cipher Suite</h1></p>
+     * <p>Pick the suite for a neighbour, from the suite this node prefers and the suite the neighbour advertised. Both
+     * neighbours make the same choice: the preferred suite if they agree, otherwise AES-CBC, which every node
+     * supports.</p>
+     * @param local suite this node advertises
+     * @param remote suite the neighbour advertised, or null if it was not known
+     * @return the suite to use with the neighbour
+     */
+    static CipherSuite negotiate(CipherSuite local, CipherSuite remote) {
+        return local == remote ? local : AES_CBC;
+    }
+}
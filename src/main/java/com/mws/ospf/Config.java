@@ -36,8 +36,11 @@ class Config {
     private static File fileConfig = null; //File reference, for IO Operations
     static boolean flagFileConfRemove;
     static ThisNode thisNode;//Accessible to all here.
-    static List<NeighbourNode> neighboursTable = new ArrayList<>();
+    static final NeighbourTable neighboursTable = new NeighbourTable();//Read and added to by each interface worker
     static LSDB lsdb;
+    static int helloJitterMs = HelloScheduler.DEFAULT_JITTER_MS;//Max random change to each hello interval
+    static CipherSuite cipherSuite = CipherSuite.AES_CBC;//Preferred suite, advertised to neighbours. Opt in to AEAD
+    static KeyExchangeType keyExchangeType = KeyExchangeType.DH_2048;//Must match on both neighbours. Opt in to X25519
     //endregion
 
     //region STATIC METHODS
@@ -133,6 +136,9 @@ class Config {
     <config>
         <Hostname>R1</Hostname>
         <RID>0.0.0.1</RID>
+        <HelloJitter>1000</HelloJitter>
+        <CipherSuite>AES-GCM</CipherSuite>
+        <KeyExchange>X25519</KeyExchange>
         <interfaces>
             <enp5s0>
                 <IPv4>192.168.1.20/24</IPv4>
@@ -181,6 +187,40 @@ class Config {
             // looping over XML elements.
             IPAddressString rid = new IPAddressString(configDocument.getElementsByTagName("RID").item(0).getTextContent());
 
+            //Hello jitter in ms is optional, older config files do not have it. Kept well under the hello interval.
+            NodeList confHelloJitter = configDocument.getElementsByTagName("HelloJitter");
+            if (confHelloJitter.getLength() != 0) {
+                try {
+                    helloJitterMs = Integer.parseInt(confHelloJitter.item(0).getTextContent().trim());
+                } catch (NumberFormatException ex) {
+                    handleConfigError("Unexpected value: HelloJitter must be a whole number of milliseconds.");
+                }
+                if (helloJitterMs < 0 || helloJitterMs > HelloScheduler.HELLO_INTERVAL * 1000 / 4)
+                    handleConfigError("Unexpected value: HelloJitter must be between 0 and " +
+                            HelloScheduler.HELLO_INTERVAL * 1000 / 4 + " milliseconds.");
+            }
+
+            //Cipher suite is optional, older config files do not have it.
+            NodeList confCipherSuite = configDocument.getElementsByTagName("CipherSuite");
+            if (confCipherSuite.getLength() != 0) {
+                try {
+                    cipherSuite = CipherSuite.fromString(confCipherSuite.item(0).getTextContent().trim());
+                } catch (IllegalArgumentException ex) {
+                    handleConfigError("Unexpected value: CipherSuite must be one of AES-CBC, AES-GCM or " +
+                            "ChaCha20-Poly1305.");
+                }
+            }
+
+            //Key exchange is optional, older config files do not have it.
+            NodeList confKeyExchange = configDocument.getElementsByTagName("KeyExchange");
+            if (confKeyExchange.getLength() != 0) {
+                try {
+                    keyExchangeType = KeyExchangeType.fromString(confKeyExchange.item(0).getTextContent().trim());
+                } catch (IllegalArgumentException ex) {
+                    handleConfigError("Unexpected value: KeyExchange must be one of DH-2048 or X25519.");
+                }
+            }
+
             List<RouterInterface> confInterfaces = new ArrayList<>();
 
             //Go into the interfaces element, loop over each child, getting all children of each interface and storing
@@ -231,6 +271,7 @@ class Config {
             }
             //Finally, take all the work we've done, create this node from rid and the interfaces in the config file.
             thisNode = new ThisNode(rid, hostname, confInterfaces);
+            RouterInterface.rebuildIngressTable();
 
         } catch (ParserConfigurationException | SAXException | IOException | AddressStringException e) {
             e.printStackTrace();
@@ -270,7 +311,19 @@ class Config {
 
             //setup nid element. Set nid text content to the stored config.
             Element configRID = getConfigElementFromRoot(confDoc, confRoot, "RID");
-            configRID.setTextContent(String.valueOf(thisNode.getRID()));
+            configRID.setTextContent(thisNode.getRIDString());
+
+            //setup hello jitter element, in milliseconds.
+            Element configHelloJitter = getConfigElementFromRoot(confDoc, confRoot, "HelloJitter");
+            configHelloJitter.setTextContent(String.valueOf(helloJitterMs));
+
+            //setup cipher suite element.
+            Element configCipherSuite = getConfigElementFromRoot(confDoc, confRoot, "CipherSuite");
+            configCipherSuite.setTextContent(cipherSuite.toString());
+
+            //setup key exchange element.
+            Element configKeyExchange = getConfigElementFromRoot(confDoc, confRoot, "KeyExchange");
+            configKeyExchange.setTextContent(keyExchangeType.toString());
 
             //Create interfaces root.
             Element confInterfacesRoot = getConfigElementFromRoot(confDoc, confRoot, "interfaces");
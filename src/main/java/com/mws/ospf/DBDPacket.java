@@ -1,11 +1,8 @@
 package com.mws.ospf;
 
-import com.google.common.primitives.Bytes;
-import com.google.common.primitives.Ints;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 /*      Stripped DBD packet
@@ -63,53 +60,51 @@ class DBDPacket {
         this.packetBuffer = makeDBDPacket();
     }
 
-    /**<p><h1>Construct DBDPacket from Buffer</h1></p>
-     * <p>Construct an OSPF DBD packet from a buffer received from neighbour, constructing LSAs stored in the process
+    /**<p><h1>Construct DBDPacket from Received Packet</h1></p>
+     * <p>Construct an OSPF DBD packet from a packet received from neighbour, constructing LSAs stored in the process
      * The stored LSAs can form the basis of a request list, if they do not contain link data.</p>
      * <p>This constructor is useful when receiving an OSPF DBD packet form a neighbour, and storing the last received
-     * packet</p>
-     * @param packetBuffer a full received ospf packet buffer
+     * packet. The packet is read in place through the views. As the receive buffer is pooled, no packet buffer is kept
+     * for a received DBD, which is never retransmitted.</p>
+     * @param dbd view over a full received ospf packet
+     * @param lsaView reusable view used to read each LSA header listed in the packet
      */
-    public DBDPacket(byte[] packetBuffer) {
-        this.packetBuffer = packetBuffer;
-        byte[] strippedPacketBuffer = Arrays.copyOfRange(packetBuffer, StdDaemon.HEADER_LENGTH, packetBuffer.length);
-
+    public DBDPacket(DBDView dbd, LSAHeaderView lsaView) {
+        this.packetBuffer = null;
         this.listLSAs = new ArrayList<>();
 
-        this.mtu = ((strippedPacketBuffer[0] << 8) & 0xff00) | strippedPacketBuffer[1];
-        this.dbdFlags = strippedPacketBuffer[3];
-        this.ddSeqNo = (((strippedPacketBuffer[4] << 24) & 0xff000000) | ((strippedPacketBuffer[5] << 16) & 0xff0000) |
-                ((strippedPacketBuffer[6] << 8) & 0xff00) | strippedPacketBuffer[7] & 0xff);
+        this.mtu = dbd.getMTU();
+        this.dbdFlags = dbd.getFlags();
+        this.ddSeqNo = dbd.getDDSeqNo();
 
         /*" The rest of the packet consists of a (possibly partial) list of the
         //  link-state database's pieces.  Each LSA in the database is described
         //  by its LSA header."
 
-        new RLSA self-validates. First scrape the size from bytes 18 and 19 from the potential LSA, use this to copy
-        all data from the buffer to a new RLSA. Increment offset. Acts like a for loop, but with varying index value*/
-        int offset = DBD_HEADER_LENGTH;
+        new RLSA self-validates, including that the header stays inside the packet. The length in each header is of the
+        whole LSA, so move onto the next LSA by the header length.*/
+        int offset = dbd.getFirstLSAOffset();
         try {
-            while (offset < strippedPacketBuffer.length) {
-                int reportedLSASize = ((strippedPacketBuffer[offset + 18] << 8) & 0xff00) |
-                        (strippedPacketBuffer[offset + 19] & 0xff);
-                listLSAs.add(new RLSA(Arrays.copyOfRange(strippedPacketBuffer, offset, offset + reportedLSASize)));
-                offset += reportedLSASize;
+            while (offset < dbd.length()) {
+                lsaView.wrap(dbd.buffer, offset);
+                listLSAs.add(new RLSA(lsaView, true));
+                offset += RLSA.LSA_HEADER_LENGTH;
             }
         } catch (ArithmeticException ex) {
             Launcher.printToUser("An R-LSA from a received DBD packet was malformed at offset " + offset + ": " +
                     ex.getMessage());
             ex.printStackTrace();
-            Launcher.printBuffer(strippedPacketBuffer);
+            Launcher.printBuffer(dbd.buffer);
         } catch (IllegalArgumentException ex) {
             Launcher.printToUser("An R-LSA in a received DBD packet was invalid at offset " + offset + ": " +
                     ex.getMessage());
             ex.printStackTrace();
-            Launcher.printBuffer(strippedPacketBuffer);
+            Launcher.printBuffer(dbd.buffer);
         } catch (IndexOutOfBoundsException ex) {
             Launcher.printToUser("DBD packet received from a neighbour was invalid. The offsets in the LSAs did not" +
-                    "match up with the packet length: offset=" + offset + ",length=" + strippedPacketBuffer.length);
+                    "match up with the packet length: offset=" + offset + ",length=" + dbd.length());
             ex.printStackTrace();
-            Launcher.printBuffer(strippedPacketBuffer);
+            Launcher.printBuffer(dbd.buffer);
         }
     }
 
@@ -170,34 +165,9 @@ class DBDPacket {
      * @return a fully complete DBD packet byte buffer
      */
     private byte[] makeDBDPacket() {
-        //GENERIC OSPF HEADER
-        byte[] buffer = Bytes.concat(
-                new byte[] {Launcher.operationMode},
-                new byte[] {
-                        //Assume 0x02 or 0x04 is here
-                              0x02,//message type
-                                    0x00, 0x00,//packet length
-                }, Config.thisNode.getRIDBytes(), new byte[] {
-                        0x00, 0x00, 0x00, 0x00,//area id (dotted decimal)
-                        0x00, 0x00,//checksum
-                                    0x00, 0x00,//Auth type//0x00, 0x01
-                        0x00, 0x00, 0x00, 0x00,
-                        0x00, 0x00, 0x00, 0x00,//Auth Data
-                });
-
-        //Add in DBD packet data.
-        byte[] mtuBuffer = Ints.toByteArray(mtu);
-        buffer = Bytes.concat(
-                buffer,
-                new byte[] {mtuBuffer[2], mtuBuffer[3], 0x00, dbdFlags},//20,21,22,23
-                Ints.toByteArray(ddSeqNo)
-        );
-        //Add in LSA data. Only copy in the header for DBDs.
-        for (RLSA lsa: listLSAs) {
-            buffer = Bytes.concat(buffer, lsa.makeRLSABuffer());
-        }
-
-        return StdDaemon.updateChecksumAndLength(buffer);
+        //Encode into this thread's transmit buffer, then keep a copy for retransmission.
+        return PacketCodec.toArray(
+                PacketCodec.encodeDBD(PacketCodec.getTxBuffer(), mtu, dbdFlags, ddSeqNo, listLSAs));
     }
     //endregion OBJECT METHODS
 }
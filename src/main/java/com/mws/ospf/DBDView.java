@@ -0,0 +1,45 @@
+package com.mws.ospf;
+
+import java.nio.ByteBuffer;
+
+/**<p><h1>DBD Packet View</h1></p>
+ * <p>Flyweight view over an OSPF DBD packet. Reads the DBD header in place. The LSA headers listed in the packet start
+ * at getFirstLSAOffset, and can be read with an LSAHeaderView.</p>
+ */
+class DBDView extends PacketView {
+    //region OBJECT METHODS
+    @Override
+    DBDView wrap(ByteBuffer buffer) {
+        super.wrap(buffer);
+        return this;
+    }
+
+    /**<p><h1>Get Interface MTU</h1></p>
+     * @return interface MTU, bytes 24 and 25
+     */
+    int getMTU() {
+        return buffer.getShort(StdDaemon.HEADER_LENGTH) & 0xffff;
+    }
+
+    /**<p><h1>Get DBD Flags</h1></p>
+     * @return the I, M and MS flags byte, byte 27
+     */
+    byte getFlags() {
+        return buffer.get(StdDaemon.HEADER_LENGTH + 3);
+    }
+
+    /**<p><h1>Get DD Sequence Number</h1></p>
+     * @return dd sequence number, bytes 28 to 31
+     */
+    int getDDSeqNo() {
+        return buffer.getInt(StdDaemon.HEADER_LENGTH + 4);
+    }
+
+    /**<p><h1>Get First LSA Offset</h1></p>
+     * @return buffer index of the first LSA header in the packet
+     */
+    int getFirstLSAOffset() {
+        return StdDaemon.HEADER_LENGTH + DBDPacket.DBD_HEADER_LENGTH;
+    }
+    //endregion OBJECT METHODS
+}
@@ -1,141 +1,285 @@
 package com.mws.ospf;
 
-import com.google.common.primitives.Bytes;
-import com.google.common.primitives.Shorts;
-
 import javax.crypto.KeyAgreement;
 import javax.crypto.spec.SecretKeySpec;
+import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.security.*;
+import java.security.interfaces.XECPublicKey;
 import java.security.spec.InvalidKeySpecException;
+import java.security.spec.KeySpec;
+import java.security.spec.NamedParameterSpec;
 import java.security.spec.X509EncodedKeySpec;
-import java.util.Arrays;
+import java.security.spec.XECPublicKeySpec;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**<p><h1>Diffie-Hellman Exchange</h1></p>
  * <p>Class for storing and progressing the Diffie-Hellman key exchange process for a router interface. It contains
  * variables related to generating a key, using a Diffie-Hellman key pair for the public and private key, and a
- * key agreement to generate a shared secret from exchanged public and private keys.</p>
- * <p>The current iteration of the class is intended only for use with p2p links, not multi-access. A flag, flagComplete,
- * is present to identify when the p2p exchange is complete.</p>
+ * key agreement per neighbour to generate a shared secret from exchanged public and private keys.</p>
+ * <p>The key pair is shared by every neighbour on the interface, as the same public key is multicast to all of them.
+ * The agreement state is kept per neighbour, so on a multi-access link each neighbour derives its own secret at the
+ * same time, rather than one at a time. The exchange is complete once every neighbour on the interface is past
+ * 2-Way.</p>
+ * <p>The key agreement is set by the config, either 2048 bit finite field Diffie-Hellman or X25519. X25519 makes a key
+ * pair and a shared secret in a fraction of the time, and its public key is 32 bytes rather than around 550.</p>
+ * <p>The shared secret is derived on the agreementExecutor, a pool with a thread per core, rather than on the interface
+ * worker that received the key. Adjacencies forming on many interfaces at once then derive their secrets in parallel,
+ * and packets on the receiving interface keep being processed meanwhile.</p>
  */
 class DHExchange {
+    //region STATIC PROPERTIES
+    private static final ExecutorService agreementExecutor = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "Thread-Key-Agreement");
+                thread.setDaemon(true);
+                return thread;
+            });
+    //endregion STATIC PROPERTIES
+
     //region OBJECT PROPERTIES
     private final RouterInterface rIntOwner;
-    private final int keySize = 2048;
-    private KeyPair thisNodeKeyPair;
-    private KeyAgreement keyAgreement;
-    boolean flagComplete = false;
-    boolean flagProcessingKey = false;
+    private final KeyExchangeType keyExchangeType;
+    private final KeyPair thisNodeKeyPair;
+    private final byte[] encodedPubKey;
+    //RID of each neighbour with a secret being derived, to a token for that agreement
+    private final Map<Integer, Object> pendingAgreements = new ConcurrentHashMap<>();
     //endregion OBJECT PROPERTIES
 
     //region OBJECT METHODS
     /**<p><h1>Diffie-Hellman Exchange</h1></p>
-     * <p>Construct a Diffie-Hellman exchange object, initialising keys and exchange parameters, per RouterInterface.</p>
-     * <p>Manually handles exceptions.</p>
-     * @param rIntOwner owning router interface, primarily for debugging
+     * <p>Construct a Diffie-Hellman exchange object, initialising keys and exchange parameters, per RouterInterface.
+     * The key agreement used is the one set in the config. The key pair is taken from the KeyPairPool.</p>
+     * @param rIntOwner owning router interface
      */
     public DHExchange(RouterInterface rIntOwner) {
+        //Key pair is made ahead of time by the pool, so the exchange can start straight away.
+        this(rIntOwner, KeyPairPool.take());
+    }
+
+    /**<p><h1>Diffie-Hellman Exchange With Key Pair</h1></p>
+     * <p>Construct a Diffie-Hellman exchange object with a key pair already taken from the KeyPairPool.</p>
+     * @param rIntOwner owning router interface
+     * @param keyPair key pair of this node, for the key agreement set in the config
+     */
+    DHExchange(RouterInterface rIntOwner, KeyPair keyPair) {
         this.rIntOwner = rIntOwner;
+        this.keyExchangeType = Config.keyExchangeType;
+        this.thisNodeKeyPair = keyPair;
+        this.encodedPubKey = encodePubKey(thisNodeKeyPair.getPublic());
+    }
 
-        try {
-            KeyPairGenerator kpg = KeyPairGenerator.getInstance("DH");
-            keyAgreement = KeyAgreement.getInstance("DH");
+    /**<p><h1>Is Exchange Complete</h1></p>
+     * <p>The exchange is complete once there is a neighbour on the interface, and every neighbour on the interface is
+     * past 2-Way, so has decrypted hellos from this node. A neighbour that goes down, or a new neighbour, makes the
+     * exchange incomplete again, so DH PubKey packets are sent until it has a secret.</p>
+     * @return true if no neighbour on the interface still needs the public key of this node
+     */
+    boolean isComplete() {
+        boolean hasNeighbour = false;
+        for (NeighbourNode neighbour: Config.neighboursTable) {
+            if (neighbour.rIntOwner != rIntOwner)
+                continue;
+            if (neighbour.getState().value < ExternalStates.EXSTART.value)
+                return false;
+            hasNeighbour = true;
+        }
+        return hasNeighbour;
+    }
 
-            kpg.initialize(this.keySize);
-            thisNodeKeyPair = kpg.generateKeyPair();
-            keyAgreement.init(thisNodeKeyPair.getPrivate());
-        } catch (NoSuchAlgorithmException ex) {
-            // Ex on code:  KeyPairGenerator.getInstance("DH");
-            // Ex on code:  KeyAgreement.getInstance("DH");
-            StdDaemon.handleDaemonError("UNLIKELY EXCEPTION: NoSuchAlgorithm \"DH\"", ex);
-        } catch (InvalidKeyException ex) {
-            // Ex on code:  ka.init(thisNodeKeyPair.getPrivate());
-            StdDaemon.handleDaemonError("The generated keypair private key for interface \"" + rIntOwner.getName() + "\" was invalid", ex);
-        } catch (Exception ex) {
-            StdDaemon.handleDaemonError("DHExchange: Unexpected exception", ex);
+    /**<p><h1>Is Processing Key</h1></p>
+     * @param neighbourRID RID of the neighbour
+     * @return true if a secret is being derived for the neighbour
+     */
+    boolean isProcessingKey(int neighbourRID) {
+        return pendingAgreements.containsKey(neighbourRID);
+    }
+
+    /**<p><h1>Has Other Neighbours</h1></p>
+     * <p>Checks if the key pair of the exchange is in use by any neighbour on the interface, other than the one
+     * provided.</p>
+     * @param neighbour neighbour to ignore
+     * @return true if another neighbour has, or is deriving, a secret from this exchange
+     */
+    boolean hasOtherNeighbours(NeighbourNode neighbour) {
+        for (NeighbourNode other: Config.neighboursTable) {
+            if (other == neighbour || other.rIntOwner != rIntOwner)
+                continue;
+            if (other.enParam != null || isProcessingKey(other.getRID()))
+                return true;
         }
+        return false;
+    }
+
+    /**<p><h1>Reset Neighbour</h1></p>
+     * <p>Forget the agreement with a neighbour that went down. A secret still being derived for it is discarded, and a
+     * new DH PubKey from the neighbour will be processed.</p>
+     * @param neighbourRID RID of the neighbour
+     */
+    void resetNeighbour(int neighbourRID) {
+        pendingAgreements.remove(neighbourRID);
     }
 
     /**<p><h1>Receive Diffie-Hellman PubKey packet</h1></p>
-     * <p>From the receiveMulticastThread method, provide a packet, containing the DH PubKey of a neighbour. The expected
+     * <p>From the receivePacket method, provide a packet, containing the DH PubKey of a neighbour. The expected
      * packet still contains a header, which will be stripped.</p>
+     * <p>The cipher suite for the neighbour is negotiated from the suite it advertised and the suite in the config.
+     * The shared secret is cut down to the key length of the suite.</p>
+     * <p>The key is read out of the packet straight away, so the packet buffer can be reused once this returns. The
+     * secret is then derived on the agreementExecutor, and the neighbour's enParam set there. Only one secret is
+     * derived per neighbour at once, but secrets for different neighbours are derived in parallel.</p>
      * <p>Manually handles exceptions.</p>
      * @param neighbour the neighbour node sending the packet, used to set the EncryptionParameters of that node
-     * @param receiveBuffer the raw OSPFv4 type 6 packet (DH PubKey) containing the public key
+     * @param receiveBuffer the received OSPFv4 type 6 packet (DH PubKey) containing the public key
+     * @return future completing with true once the neighbour's enParam is set, or false if no secret was made
      */
-    void receiveDHKey(NeighbourNode neighbour, byte[] receiveBuffer) {
-        flagProcessingKey = true;
-        byte[] encPubKey = Arrays.copyOfRange(receiveBuffer, 26, receiveBuffer.length);
+    CompletableFuture<Boolean> receiveDHKey(NeighbourNode neighbour, ByteBuffer receiveBuffer) {
+        //Too short to hold the key size and cipher suite fields, let alone a key.
+        if (receiveBuffer.limit() <= 28)
+            return CompletableFuture.completedFuture(false);
+
+        //Match the reported key type to the key used. Neighbours with a different key agreement can't make a secret.
+        int receiveKeyType = receiveBuffer.getShort(24) & 0xffff;
+        if (receiveKeyType != keyExchangeType.code)
+            return CompletableFuture.completedFuture(false);
+
+        //X25519 keys are always the raw 32 bytes.
+        if (keyExchangeType == KeyExchangeType.X25519 &&
+                receiveBuffer.limit() - 28 != KeyExchangeType.X25519_KEY_LENGTH)
+            return CompletableFuture.completedFuture(false);
+
+        //Claim the agreement for the neighbour, unless one is already in progress.
+        Object agreementToken = new Object();
+        if (pendingAgreements.putIfAbsent(neighbour.getRID(), agreementToken) != null)
+            return CompletableFuture.completedFuture(false);
 
-        //Match the reported key size to the key used. For the artefact, is a sanity check, as size is hard coded 20 2048
-        int receiveKeySize = Short.toUnsignedInt(Shorts.fromByteArray(Arrays.copyOfRange(receiveBuffer, 24, 26)));
-        if (receiveKeySize != this.keySize)
-            return;
+        CipherSuite suite = CipherSuite.negotiate(Config.cipherSuite,
+                CipherSuite.fromCode(receiveBuffer.getShort(26) & 0xffff));
 
-        PublicKey neighbourPubKey = decodeX509PubKey(encPubKey);
+        //Copy only the key out of the pooled receive buffer, as the key decoder needs an array.
+        byte[] encPubKey = new byte[receiveBuffer.limit() - 28];
+        receiveBuffer.get(28, encPubKey);
 
-        //Try to create a shared secret byte array, and a final SecretKey for AES. Store it in the neighbour's enParam
+        PublicKey neighbourPubKey = decodePubKey(encPubKey);
+        return CompletableFuture.supplyAsync(() -> deriveSecret(neighbour, neighbourPubKey, suite, agreementToken),
+                agreementExecutor);
+    }
+
+    /**<p><h1>Derive Shared Secret</h1></p>
+     * <p>Run on the agreementExecutor. Completes a key agreement with the public key of a neighbour, and sets the
+     * EncryptionParameters of the neighbour from the shared secret. Each call has its own KeyAgreement, so agreements
+     * for neighbours on the same interface run at the same time.</p>
+     * <p>Manually handles exceptions.</p>
+     * @param neighbour the neighbour node that sent the key
+     * @param neighbourPubKey decoded public key of the neighbour
+     * @param suite cipher suite negotiated with the neighbour
+     * @param agreementToken token claimed for the neighbour in receiveDHKey
+     * @return true if the neighbour's enParam was set
+     */
+    private boolean deriveSecret(NeighbourNode neighbour, PublicKey neighbourPubKey, CipherSuite suite,
+                                 Object agreementToken) {
+        //Try to create a shared secret byte array, and a final SecretKey for the suite. Store it in the neighbour's enParam
         byte[] secretKey = new byte[0];//Defined before scope for exception handle.
         try {
+            KeyAgreement keyAgreement = KeyAgreement.getInstance(keyExchangeType.algorithm);
+            keyAgreement.init(thisNodeKeyPair.getPrivate());
             keyAgreement.doPhase(neighbourPubKey, true);
             secretKey = keyAgreement.generateSecret();
-            SecretKeySpec finalKey = new SecretKeySpec(secretKey, 0, 16, "AES");
-            neighbour.enParam = new EncryptionParameters(finalKey);
+            SecretKeySpec finalKey = new SecretKeySpec(secretKey, 0, suite.keyLength, suite.keyAlgorithm);
+
+            /*Only one of the DH exchange and session resumption may set the key, else the nodes can end up with
+            different keys. The session is held while the key is set, as resumption only answers a request while no
+            secret is being derived.*/
+            SessionCache.Session session = SessionCache.get(neighbour.getRID(), rIntOwner);
+            synchronized (session != null ? session : agreementToken) {
+                /*The neighbour may have gone down while the secret was derived, resetting it or replacing the
+                exchange. A secret from either is stale.*/
+                if (!pendingAgreements.remove(neighbour.getRID(), agreementToken) || rIntOwner.dhExchange != this)
+                    return false;
+                if (session != null && session.isResuming())
+                    return false;
+                neighbour.enParam = new EncryptionParameters(finalKey, suite);
+            }
+
+            //Cache the secret, so the session can be resumed if the neighbour goes down for a short time.
+            SessionCache.put(neighbour, secretKey, suite);
+            return true;
+        } catch (NoSuchAlgorithmException ex) {
+            // Ex on code:  KeyAgreement.getInstance(keyExchangeType.algorithm);
+            StdDaemon.handleDaemonError("UNLIKELY EXCEPTION: NoSuchAlgorithm \"" + keyExchangeType.algorithm + "\"",
+                    ex);
         } catch (InvalidKeyException ex) {
-            flagProcessingKey = false;//Reset flag, as no longer processing a key.
+            pendingAgreements.remove(neighbour.getRID(), agreementToken);//No longer processing a key.
             // Ex on code:  keyAgreement.doPhase(neighbourPubKey,true);
-            Launcher.printToUser("Received DH PubKey packet " + neighbour.getRID() + " on interface " +
+            Launcher.printToUser("Received DH PubKey packet " + neighbour.getRIDString() + " on interface " +
                     this.rIntOwner.getName() + "that was invalid:");
             Launcher.printBuffer(secretKey);//Print key for debug.
         } catch (Exception ex) {
             StdDaemon.handleDaemonError("DHExchange: Unexpected exception", ex);
         }
+        return false;
     }
 
     /**<p><h1>Make Diffie-Hellman PubKey Packet</h1></p>
-     * <p>Constructs and returns a packet buffer for a DH PubKey (ospfv4 type 6, new packet type) packet. Contains an
-     * OSPF header, key size and the public key, encoded in x509 for aided complexity</p>
-     * @return an OSPF buffer, for message type DH PubKey.
+     * <p>Encodes a DH PubKey (ospfv4 type 6, new packet type) packet into a buffer. Contains an OSPF header, key type,
+     * the preferred cipher suite and the public key. The encoded key is made once per exchange.</p>
+     * @param out buffer to encode into
+     * @return out, holding an OSPF packet for message type DH PubKey.
+     */
+    ByteBuffer makeDHPubKey(ByteBuffer out) {
+        return PacketCodec.encodeDHPubKey(out, keyExchangeType.code, Config.cipherSuite, this.encodedPubKey);
+    }
+
+    /**<p><h1>Encode Public Key</h1></p>
+     * <p>Encode the public key of this node for the DH PubKey packet. A DH key is x509 encoded. An X25519 key is the
+     * u coordinate as 32 little endian bytes, as RFC 7748 defines, rather than the 44 byte x509 encoding.</p>
+     * @param pubKey public key of this node
+     * @return encoded public key
+     */
+    private byte[] encodePubKey(PublicKey pubKey) {
+        if (keyExchangeType == KeyExchangeType.DH_2048)
+            return pubKey.getEncoded();
+
+        //BigInteger is big endian, possibly with a sign byte, so copy it backwards into a fixed size array.
+        byte[] u = ((XECPublicKey) pubKey).getU().toByteArray();
+        byte[] encoded = new byte[KeyExchangeType.X25519_KEY_LENGTH];
+        for (int i = 0; i < encoded.length && i < u.length; i++)
+            encoded[i] = u[u.length - 1 - i];
+        return encoded;
+    }
+
+    /**<p><h1>Decode Public Key</h1></p>
+     * <p>Decode a received public key, in the format of the key agreement of this exchange.</p>
+     * <p>Manually handles exceptions.</p>
+     * @param encPubKeyBuffer the encoded public key
+     * @return decoded public key in usable format
      */
-    byte[] makeDHPubKey() {
-        byte[] ospfBuffer = {
-                //GENERIC OSPF HEADER
-                0x04,//version //v 4 for encrypted OSPF
-                0x06,//message type//type 6, special new type for DH PubKey.
-                0x00, 0x00,//packet length //MUST BE REAL VALUE
-                0x00, 0x00, 0x00, 0x00,//source router rid (dotted decimal) //MUST BE REAL VALUE
-                0x00, 0x00, 0x00, 0x00,//area id (dotted decimal) //MUST BE ALL 0s
-                0x00, 0x00,//checksum
-                0x00, 0x00,//Auth type//0x00, 0x01
-                0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00,//Auth Data//0x63, 0x69, 0x73, 0x63, 0x6f, 0x00, 0x00, 0x00//"Cisco"
-
-                //Data
-                0x00, 0x00,//KeySize
-                //PubKey
-        };
-
-        //Add PubKey to buffer
-        ospfBuffer = Bytes.concat(ospfBuffer, thisNodeKeyPair.getPublic().getEncoded());
-
-        //Update KeySize (24, 25)
-        ByteBuffer keySizeBuffer = ByteBuffer.allocate(4);
-        keySizeBuffer.putInt(this.keySize);
-        ospfBuffer[24] = keySizeBuffer.array()[2];
-        ospfBuffer[25] = keySizeBuffer.array()[3];
-
-        //Update router ID (4, 5, 6, 7)
+    private PublicKey decodePubKey(byte[] encPubKeyBuffer) {
+        if (keyExchangeType == KeyExchangeType.DH_2048)
+            return decodeX509PubKey(encPubKeyBuffer);
+
+        //Little endian to big endian. The top bit of the last byte is masked, as RFC 7748 section 5 requires.
+        byte[] u = new byte[encPubKeyBuffer.length];
+        for (int i = 0; i < u.length; i++)
+            u[i] = encPubKeyBuffer[u.length - 1 - i];
+        u[0] &= 0x7f;
+        KeySpec keySpec = new XECPublicKeySpec(NamedParameterSpec.X25519, new BigInteger(1, u));
+
         try {
-            byte[] rid = Config.thisNode.getRIDBytes();
-            ospfBuffer[4] = rid[0];
-            ospfBuffer[5] = rid[1];
-            ospfBuffer[6] = rid[2];
-            ospfBuffer[7] = rid[3];
-        } catch (Exception ex)  {
-            StdDaemon.handleDaemonError("Error when creating an OSPF packet: Substituting in router ID.", ex);
+            return KeyFactory.getInstance(keyExchangeType.algorithm).generatePublic(keySpec);
+        } catch (InvalidKeySpecException ex) {
+            StdDaemon.handleDaemonError("Received key could not be decoded because it was invalid", ex);
+        } catch (NoSuchAlgorithmException ex) {
+            StdDaemon.handleDaemonError("UNLIKELY EXCEPTION: NoSuchAlgorithm \"" + keyExchangeType.algorithm + "\"",
+                    ex);
+        } catch (Exception ex) {
+            StdDaemon.handleDaemonError("DHExchange: Unexpected exception", ex);
         }
-
-        //Update packet length (2, 3), Update Checksum (12, 13)
-        return StdDaemon.updateChecksumAndLength(ospfBuffer);
+        return null;
     }
 
     /**<p><h1>Decode x509 Public Key</h1></p>
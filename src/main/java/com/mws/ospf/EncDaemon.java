@@ -1,15 +1,10 @@
 package com.mws.ospf;
 
-import com.google.common.primitives.Bytes;
-import com.google.common.primitives.Shorts;
-import inet.ipaddr.IPAddress;
-import inet.ipaddr.IPAddressNetwork;
-import inet.ipaddr.IPAddressString;
 import org.jetbrains.annotations.NotNull;
 
+import javax.crypto.SecretKey;
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 import static com.mws.ospf.StdDaemon.*;
@@ -22,16 +17,11 @@ import static com.mws.ospf.StdDaemon.*;
  * while providing opposite functionality.</p>
  */
 class EncDaemon {
-    //region STATIC PROPERTIES
-    static final Thread threadEncMulticastListen = new Thread(EncDaemon::receiveMulticastThread,
-            "Thread-DHHello-Receive");
-    //endregion
-
     //region STATIC METHODS
     /**<p><h1>EncDaemon Main Method</h1></p>
      * <p>Entrypoint into the EncDaemon. Sets up the hello protocol behaviour to allow nodes to start working with
      * implemented methods to handle communication. Init the encrypted process flow of new OSPF.</p>
-     * <p>Utilises the same socket as the StdDaemon.</p>
+     * <p>Utilises the same PacketEngine as the StdDaemon.</p>
      */
     static void main() {
         Launcher.printToUser("Encrypted Daemon Program Run");
@@ -41,8 +31,14 @@ class EncDaemon {
             Stat.setupStats();
 
         Config.lsdb = new LSDB();
-        setupMulticastSocket();
 
+        //Start generating a key pair for every enabled interface in parallel, with spares for re-keying.
+        int enabledInterfaces = 0;
+        for (RouterInterface rInt: Config.thisNode.interfaceList) {
+            if (rInt.isEnabled)
+                enabledInterfaces++;
+        }
+        KeyPairPool.start(enabledInterfaces + KeyPairPool.SPARE_KEY_PAIRS);
 
         //Router Interface negotiations need to be setup for the first time, so a separate public key exists on each
         //interface. Creating new instances of objects sets up these parameters, including public key.
@@ -51,206 +47,302 @@ class EncDaemon {
             if (!rInt.isEnabled)
                 continue;
             rInt.dhExchange = new DHExchange(rInt);
+
+            //Hello packets are encoded once per interface, then patched as neighbours change.
+            rInt.helloTemplate = new HelloTemplate((byte) 0x04);
         }
 
         //Start listening for hello packets before sending them. Should force that packets are not received before
-        threadEncMulticastListen.start();
-
-        //Create a timer for hello and set it to run instantly. Running the timer schedules further running.
-        timerHelloSend = new Timer();
-        timerHelloSend.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                sendHelloPackets();
-                sendDHPubKey();
-            }
-
-        }, 0, 10 * 1000);
+        PacketEngine.start(multicastSocketAddr, EncDaemon::receivePacket);
+
+        //Start a staggered hello timer per interface. Each timer reschedules itself with jitter.
+        HelloScheduler.start(rInt -> {
+            sendHelloPacket(rInt);
+            sendDHPubKey(rInt);
+            sendSessionResume(rInt);
+        });
     }
 
     /**<p><h1>Send Hello Packets</h1></p>
-     * <p>Method used to send hello packets. Uses the method makeHelloPacket for the packet buffer, using
-     * multicastSocket to send the packet to each neighbour. It is part of the timer task for timerHelloSend</p>
-     * <p>This method differs significantly from the version in StdDaemon, firstly by sending only to neighbours. A
-     * neighbour is required for the EncryptionParameters. Also, the version of makeHelloPacket requires the neighbour,
-     * and encrypts the data before sending it.</p>
+     * <p>Method used to send hello packets out of every interface at once, when neighbours should hear of a change
+     * straight away.</p>
      */
     static void sendHelloPackets() {
-        //Prevent sending if multicast socket was not setup prior. More of a sanity check.
-        if (multicastSocket.isClosed())
-            return;
+        for (RouterInterface rInt: Config.thisNode.interfaceList) {
+            //Prevent sending if the interface channel was not setup prior. More of a sanity check.
+            if (rInt.channel == null)
+                continue;
 
+            sendHelloPacket(rInt);
+        }
+    }
 
+    /**<p><h1>Send Hello Packet</h1></p>
+     * <p>Method used to send hello packets out of one interface. Uses the cached hello of the RouterInterface for the
+     * packet buffer, using the channel of the RouterInterface to send the packet to each neighbour. It is part of the
+     * task of the interface's hello timer</p>
+     * <p>This method differs significantly from the version in StdDaemon, firstly by sending only to neighbours. A
+     * neighbour is required for the EncryptionParameters. The plaintext hello of an interface is copied once, then
+     * encrypted for every neighbour in one batch, into the transmit arena of the thread. All hellos for one interface
+     * are sent as a single batch.</p>
+     * <p>Synchronized, so hellos from the timer and the interface workers are not interleaved.</p>
+     * @param rInt enabled interface to send out of
+     */
+    static synchronized void sendHelloPacket(RouterInterface rInt) {
+        //Plaintext hello, the same for every neighbour on the interface before encryption.
+        ByteBuffer helloBuffer = rInt.helloTemplate.writeTo(PacketCodec.getTxBuffer());
+
+        //Collect the encryption parameters of each neighbour on this interface with encryption setup.
+        List<EncryptionParameters> enParams = new ArrayList<>();
         for (NeighbourNode neighbour: Config.neighboursTable) {
-            //Skip neighbours without encryption setup.
-            if (neighbour.enParam == null)
-                continue;
+            EncryptionParameters enParam = neighbour.enParam;
+            if (enParam != null && neighbour.rIntOwner == rInt)
+                enParams.add(enParam);
+        }
 
-            //Create an encrypted hello buffer, which already cotnains the encrypted data, correct header checksum and length
-            byte[] encHelloBuffer = makeHelloPacket(neighbour);
+        if (enParams.isEmpty())
+            return;
 
-            try {
-                //Construct packet, set output interface to the current neighbour's interface, send packet on interface.
-                DatagramPacket helloPacket = new DatagramPacket(encHelloBuffer, encHelloBuffer.length, multicastSocketAddr);
-                multicastSocket.setNetworkInterface(neighbour.rIntOwner.toNetworkInterface());
-                multicastSocket.send(helloPacket);
+        /*Encrypt the hello for every neighbour in one batch. Each encrypted hello already contains the encrypted data,
+        correct header checksum and length*/
+        ByteBuffer arena = PacketCodec.getTxArena(
+                EncryptionParameters.getArenaSize(List.of(helloBuffer), enParams.size()));
+        List<ByteBuffer> encHelloBuffers = EncryptionParameters.encryptBatch(helloBuffer, enParams, arena,
+                new ArrayList<>(enParams.size()));
 
-            } catch (UnknownHostException ex) {
-                handleDaemonError("UNLIKELY EXCEPTION: 224.0.0.5 not a valid IP", ex);
-            } catch (IOException ex) {
-                handleDaemonError("Enc Daemon: IOException when sending hello datagram packet", ex);
-            }
+        try {
+            rInt.channel.send(encHelloBuffers);
+        } catch (IOException ex) {
+            handleDaemonError("Enc Daemon: IOException when sending hello datagram packet", ex);
         }
     }
 
     /**<p><h1>Send Diffie-Hellman PubKey Packets</h1></p>
-     * <p>Method used to send Diffie-Hellman PubKey packets, new for the encrypted daemon. Packets are sent to the
-     * multicastSocket, and sent to each RouterInterface, similar to standard OSPF hello. It is part of the timer task
-     * for timerHelloSend</p>
-     * <p>Interfaces will only be sent packets if the interface is enabled, and if a DH keypair process has not already
-     * been created for the specific interface, as part of a packet limiting function for p2p links. Expansion of the
-     * DHExchange class to support MA links in the future would require modification of this feature.</p>
+     * <p>Method used to send Diffie-Hellman PubKey packets, new for the encrypted daemon. Packets are sent using the
+     * channel of each RouterInterface, similar to standard OSPF hello.</p>
+     * <p>Interfaces will only be sent packets if the interface is enabled, and if the DH exchange of the interface is
+     * not complete, as part of a packet limiting function. On a multi-access link, packets are sent until every
+     * neighbour on the link is past 2-Way.</p>
      * <p>The method is heavy reliant on the DHExchange class for each router interface to create a buffer, containing
      * the correct public key.</p>
      * <p>This </p>
      */
     private static void sendDHPubKey() {
+        for(RouterInterface rInt: Config.thisNode.interfaceList) {
+            //Skip processing for disabled interfaces
+            if (!rInt.isEnabled)
+                continue;
+
+            sendDHPubKey(rInt);
+        }
+    }
+
+    /**<p><h1>Send Diffie-Hellman PubKey Packet</h1></p>
+     * <p>Send a DH PubKey packet out of one enabled interface, unless every neighbour on the interface already
+     * negotiated a secret. It is part of the task of the interface's hello timer</p>
+     * @param rInt enabled interface to send out of
+     */
+    private static void sendDHPubKey(RouterInterface rInt) {
+        //Skip processing for interfaces which already have negotiated a secret with every neighbour
+        if (rInt.dhExchange.isComplete())
+            return;
+
         try {
-            for(RouterInterface rInt: Config.thisNode.interfaceList) {
-                //Skip processing for disabled interfaces
-                if (!rInt.isEnabled)
-                    continue;
-
-                //Skip processing for interfaces which already have negotiated a secret
-                if (rInt.dhExchange.flagComplete)
-                    continue;
-
-                //Set up data to be sent
-                byte[] dhHelloBuffer = rInt.dhExchange.makeDHPubKey();
-                DatagramPacket dhHelloPacket = new DatagramPacket(dhHelloBuffer, dhHelloBuffer.length, multicastSocketAddr);
-
-                //send data to interface
-                multicastSocket.setNetworkInterface(rInt.toNetworkInterface());
-                multicastSocket.send(dhHelloPacket);
-            }
-        } catch (UnknownHostException ex) {
-            handleDaemonError("UNLIKELY EXCEPTION: 224.0.0.5 not a valid IP", ex);
+            //send data to interface
+            rInt.channel.send(rInt.dhExchange.makeDHPubKey(PacketCodec.getTxBuffer()));
         } catch (IOException ex) {
             handleDaemonError("Enc Daemon: IOException when sending DH Hello datagram packet", ex);
         }
     }
 
-    /**<p><h1>Encrypted Multicast Receive Handle Method</h1></p>
-     * <p>Method implemented as a thread to receive an packet from any network joined to the multicast group. A thread
-     * is required as the receive method is blocking.</p>
+    /**<p><h1>Send Session Resume Requests</h1></p>
+     * <p>Send a Session Resume request to each down neighbour on an interface that has no secret, but has a cached
+     * session. A down neighbour with a resumed key is sent its confirm again instead. It is part of the task of the
+     * interface's hello timer, so a lost request, response or confirm is retried.</p>
+     * @param rInt enabled interface to send out of
+     */
+    private static void sendSessionResume(RouterInterface rInt) {
+        for (NeighbourNode neighbour: Config.neighboursTable) {
+            if (neighbour.rIntOwner != rInt || neighbour.getState() != ExternalStates.DOWN)
+                continue;
+            if (neighbour.enParam == null)
+                sendSessionResume(neighbour);
+            else
+                resendSessionConfirm(neighbour);
+        }
+    }
+
+    /**<p><h1>Send Session Resume Request</h1></p>
+     * <p>Send a Session Resume request to a neighbour with a cached session, with a new nonce. A request sent earlier
+     * is replaced, and its response will be ignored.</p>
+     * @param neighbour neighbour to resume the session with
+     */
+    static void sendSessionResume(NeighbourNode neighbour) {
+        SessionCache.Session session = SessionCache.get(neighbour.getRID(), neighbour.rIntOwner);
+        if (session == null || neighbour.rIntOwner.channel == null)
+            return;
+
+        byte[] requestNonce = SessionCache.makeNonce();
+        byte[] proof;
+        synchronized (session) {
+            session.pendingNonce = requestNonce;
+            proof = session.makeProof(SessionCache.RESUME_REQUEST, Config.thisNode.getRID(), neighbour.getRID(),
+                    requestNonce, SessionCache.NO_NONCE);
+        }
+
+        sendSessionResumePacket(neighbour, SessionCache.RESUME_REQUEST, requestNonce, SessionCache.NO_NONCE, proof);
+    }
+
+    /**<p><h1>Resend Session Resume Confirm</h1></p>
+     * <p>Send the confirm of a resumed key again, while the neighbour is still down. After MAX_CONFIRMS the neighbour
+     * is taken to have not set the key, so the key is dropped and the session expires again. A new request, or a DH
+     * exchange, then starts over.</p>
+     * @param neighbour down neighbour with a resumed key
+     */
+    private static void resendSessionConfirm(NeighbourNode neighbour) {
+        SessionCache.Session session = SessionCache.get(neighbour.getRID(), neighbour.rIntOwner);
+        if (session == null || neighbour.rIntOwner.channel == null)
+            return;
+
+        synchronized (session) {
+            if (session.confirmRequestNonce == null)
+                return;
+            if (session.confirmsSent < SessionCache.MAX_CONFIRMS) {
+                sendSessionConfirm(neighbour, session);
+                return;
+            }
+            session.confirmRequestNonce = null;
+            session.confirmResponseNonce = null;
+        }
+
+        neighbour.enParam = null;
+        SessionCache.startExpiry(neighbour);
+        Launcher.printToUser("Session resume with '" + neighbour.getRIDString() + "' not confirmed");
+    }
+
+    /**<p><h1>Send Session Resume Confirm</h1></p>
+     * <p>Send the confirm of the resumed key in the session. The caller holds the session.</p>
+     * @param neighbour neighbour the key was resumed with
+     * @param session session with the neighbour, with the nonces of the resumed key
+     */
+    private static void sendSessionConfirm(NeighbourNode neighbour, SessionCache.Session session) {
+        session.confirmsSent++;
+        sendSessionResumePacket(neighbour, SessionCache.RESUME_CONFIRM, session.confirmRequestNonce,
+                session.confirmResponseNonce, session.makeProof(SessionCache.RESUME_CONFIRM,
+                        Config.thisNode.getRID(), neighbour.getRID(), session.confirmRequestNonce,
+                        session.confirmResponseNonce));
+    }
+
+    /**<p><h1>Send Session Resume Packet</h1></p>
+     * @param neighbour neighbour the packet is for
+     * @param message SessionCache.RESUME_REQUEST, SessionCache.RESUME_RESPONSE or SessionCache.RESUME_CONFIRM
+     * @param requestNonce nonce of the request
+     * @param responseNonce nonce of the response
+     * @param proof HMAC proof of the cached secret
+     */
+    private static void sendSessionResumePacket(NeighbourNode neighbour, byte message, byte[] requestNonce,
+                                                byte[] responseNonce, byte[] proof) {
+        try {
+            neighbour.rIntOwner.channel.send(PacketCodec.encodeSessionResume(PacketCodec.getTxBuffer(),
+                    neighbour.getRID(), message, requestNonce, responseNonce, proof));
+        } catch (IOException ex) {
+            handleDaemonError("Enc Daemon: IOException when sending Session Resume datagram packet", ex);
+        }
+    }
+
+    /**<p><h1>Encrypted Receive Packet Handle Method</h1></p>
+     * <p>Method called by the PacketEngine on the worker thread of the interface a packet was received on. The receive
+     * itself is done by the PacketEngine, so decrypting on one interface does not hold up other interfaces.</p>
      * <p>Once a packet is received, it is verified, data is scraped and it is passed onto specific handle methods, for
-     * use in protocol functions and features.</p>
+     * use in protocol functions and features. Packets are decrypted into the channel's decrypt buffer, and read in
+     * place through the views owned by the channel.</p>
      * <p>This variant differs from the standard OSPF version by trying to incorporate decryption, as well as
      * addition of encrypted ospf (OSPFv4) specific packet (type 6)</p>
+     * @param rxChannel channel the packet was received on
+     * @param packet received packet buffer, pooled by the channel
+     * @param pSource IPv4 source address of packet, as an int
      */
-    private static void receiveMulticastThread() {
-        byte[] pBytes =  new byte[4000];
-        DatagramPacket pReturned = new DatagramPacket(pBytes, pBytes.length);
-
-        //Setup thread loop, blocked by receive, stops when thread is interrupted.
-        while (!Thread.currentThread().isInterrupted()) {
-            try  {
-                multicastSocket.receive(pReturned);
-            } catch (IOException ex) {
-                handleDaemonError("IOException on MulticastReceiveThread", ex);
-            }
-
+    private static void receivePacket(InterfaceChannel rxChannel, ByteBuffer packet, int pSource) {
+        //region VALIDATE
+        //Only accept packets that are the encrypted protocol version (v4 in this artefact).
+        if (packet.limit() < HEADER_LENGTH || packet.get(0) != 0x04)
+            return;
 
-            //region VALIDATE
-            //Get value used multiple times, source IP.
-            IPAddress pSource = new IPAddressNetwork.IPAddressGenerator().from(pReturned.getAddress());
+        //Treat the packet as valid initially, scrape the length from the packet and use it to truncate the buffer
+        if (!StdDaemon.truncateToPacketLength(packet))
+            return;
 
-            //Treat the packet as valid initially, scrape the length from the packet and use it to truncate the buffer
-            int pLength = Short.toUnsignedInt(Shorts.fromByteArray(Arrays.copyOfRange(pBytes, 2, 4)));
-            byte[] packetBuffer = Arrays.copyOfRange(pReturned.getData(), 0, (pLength));
+        //validate the source. If invalid, drop the current packet.
+        if (!StdDaemon.validateOSPFSource(pSource))
+            return;
 
-            //Only accept packets that are the encrypted protocol version (v4 in this artefact).
-            if (packetBuffer[0] != 0x04)
-                continue;
+        //region SCRAPE NEIGHBOUR
+        //RID is read before decrypt, as the header is never encrypted.
+        PacketView header = rxChannel.packetView.wrap(packet);
+        int neighbourRID = header.getRID();
+        NeighbourNode neighbour = NeighbourNode.getNeighbourNodeByRID(neighbourRID);
+        //endregion SCRAPE NEIGHBOUR
+
+        /*AEAD packets carry a checksum of 0, their tag authenticates the whole packet on decrypt instead. Every other
+        packet, including the DH PubKey, must have a valid checksum.*/
+        byte pType = header.getType();
+        boolean isAuthenticated = pType != 0x06 && pType != 0x07 && neighbour != null && neighbour.enParam != null &&
+                neighbour.enParam.suite.isAEAD();
+        if (!isAuthenticated && !StdDaemon.isChecksumValid(packet))
+            return;
 
-            //validate the data. If invalid, packetBuffer will be null so skip over current packet (loop).
-            packetBuffer = StdDaemon.validateOSPFHeader(packetBuffer, pSource);
-            if (packetBuffer == null)
-                continue;
+        //Try to decrypt the data. TryDecryptBytes only decrypts packets not DH PubKey. Reject packet on null return/
+        packet = tryDecryptBytes(rxChannel, neighbour, packet, pSource);
+        if (packet == null)
+            return;
+        //endregion VALIDATE
 
-            //Try to decrypt the data. TryDecryptBytes only decrypts packets not DH PubKey. Reject packet on null return/
-            packetBuffer = tryDecryptBytes(packetBuffer, pSource);
-            if (packetBuffer == null)
-                continue;
-            //endregion VALIDATE
-
-
-            //region SCRAPE NEIGHBOUR
-            //RID in bytes 4,5,6,7 to string. Using IPAddress class to convert bytes to the RID, easy peasy.
-            IPAddressString neighbourRID = new IPAddressNetwork.IPAddressGenerator().from(
-                    Arrays.copyOfRange(packetBuffer, 4, 8)
-            ).toAddressString();
-            NeighbourNode neighbour = NeighbourNode.getNeighbourNodeByRID(neighbourRID);
-            //endregion
-
-
-            switch (packetBuffer[1]) {
-                case 0x01 -> {
-                    if (neighbour != null)
-                        processHelloPacket(neighbour, neighbourRID, packetBuffer);
-                }
-                case 0x02 -> {
-                    assert neighbour != null;
-                    StdDaemon.processDBDPacket(neighbour, packetBuffer);
-                }
-                case 0x06 -> processDHPubKeyPacket(neighbour, neighbourRID, pSource, packetBuffer);
+        switch (pType) {
+            case 0x01 -> {
+                if (neighbour != null)
+                    processHelloPacket(neighbour, rxChannel.helloView.wrap(packet));
+            }
+            case 0x02 -> {
+                assert neighbour != null;
+                StdDaemon.processDBDPacket(neighbour, rxChannel, packet);
             }
+            case 0x03 -> Flooding.processLSRequest(neighbour, packet);
+            case 0x04 -> Flooding.processLSUpdate(neighbour, rxChannel, packet);
+            case 0x05 -> Flooding.processLSAck(neighbour, rxChannel, packet);
+            case 0x06 -> processDHPubKeyPacket(neighbour, neighbourRID, pSource, packet);
+            case 0x07 -> processSessionResumePacket(neighbour, neighbourRID, packet);
         }
     }
 
     /**<p><h1>EncDaemon Process Hello Packet</h1></p>
-     * <p>Processes a validated hello packet received on the multicast socket. The method scrapes the known neighbours
+     * <p>Processes a validated hello packet received on an interface channel. The method scrapes the known neighbours
      * list, and manipulates the neighbour on this node in the configuration and neighbours table.</p>
      * <p>This method differs from the StdDaemon as for encryption, neighbours have to exist before, and so never
      * start off as null. Also, the 2WayReceived method called is different for encryption.</p>
      * @param neighbour scraped neighbour to manipulate, from NeighbourNode.getNeighbourNodeByRID
-     * @param neighbourRID scraped neighbour RID from buffer
-     * @param packetBuffer raw, but manipulated and validated  packet buffer
+     * @param hello view over the validated, decrypted hello packet
      */
-    private static void processHelloPacket(@NotNull NeighbourNode neighbour, @NotNull IPAddressString neighbourRID,
-                                   byte @NotNull [] packetBuffer) {
-        int pLength = packetBuffer.length;
-
+    private static void processHelloPacket(@NotNull NeighbourNode neighbour, @NotNull HelloView hello) {
         //region SCRAPE KNOWN RIDS
-        //Gather known RIDs from the hello packet
-        List<IPAddressString> reportedKnownRIDs = new ArrayList<>();
-        if (pLength > 44) {
-            if ((pLength - 44) %4 != 0) {
-                //Not allowed, number of bytes after should be a multiple of 4 bytes. Ignore packet
-                System.err.println("Neighbour Node reported adjacent neighbours incorrectly");
-                return;
-            }
-
-            //Number of 4 byte pairs after the first 44 hello header bytes.
-            int knownNeighboursListLength = (pLength - 44) / 4;
-
-            //Loop through each 4 bytes after BDR RID, which are all recently known adjacent RIDs.
-            for (int i = 0; i < knownNeighboursListLength; i++) {
-                int curByteOffset = 44 + (i*4);
-                reportedKnownRIDs.add(new IPAddressNetwork.IPAddressGenerator().from(
-                        Arrays.copyOfRange(packetBuffer, curByteOffset, curByteOffset+4)
-                ).toAddressString());
-            }
+        //Not allowed, number of bytes after should be a multiple of 4 bytes. Ignore packet
+        if (!hello.isNeighboursListValid()) {
+            System.err.println("Neighbour Node reported adjacent neighbours incorrectly");
+            return;
         }
         //endregion SCRAPE KNOWN RIDS
 
+        //Neighbours must agree on the hello and dead intervals, otherwise the hello is ignored.
+        if (!HelloScheduler.areIntervalsMatching(hello)) {
+            System.err.println("Neighbour Node reported a different hello or dead interval");
+            return;
+        }
+
         if (neighbour.getState() == ExternalStates.DOWN) {
-            //Treat priority byte as string, parse string -> int
-            neighbour.priority = Integer.parseUnsignedInt(packetBuffer[31] + "");
+            neighbour.priority = hello.getPriority();
 
-            Config.thisNode.knownNeighbours.add(neighbourRID);
+            Config.thisNode.addKnownNeighbour(neighbour.getRID());
 
-            Launcher.printToUser("New Adjacency for node '" + neighbourRID + "'");
+            Launcher.printToUser("New Adjacency for node '" + neighbour.getRIDString() + "'");
 
             neighbour.setState(ExternalStates.INIT);
 
@@ -260,39 +352,37 @@ class EncDaemon {
         }
 
         //Update neighbour parameters for each received hello packet
-        neighbour.knownNeighbours = reportedKnownRIDs;
+        neighbour.setKnownNeighbours(hello);
         neighbour.resetInactiveTimer();
 
         /*If in init state and this neighbour reports to know of this current node, this is the conditions for the
         2WayReceived event. Trigger it*/
-        if (neighbour.getState() == ExternalStates.INIT && neighbour.knownNeighbours.contains(Config.thisNode.getRID()))
+        if (neighbour.getState() == ExternalStates.INIT && neighbour.isKnownNeighbour(Config.thisNode.getRID()))
             StdDaemon.evTwoWayReceived(neighbour);
     }
 
     /**<p><h1>Process Diffie-Hellman PubKey Packet</h1></p>
-     * <p>Processes a validated DH PubKey packet received on the multicast socket. The method creates a neighbour if
+     * <p>Processes a validated DH PubKey packet received on an interface channel. The method creates a neighbour if
      * it was not yet created, and receives the reported public key. This is used to complete the DHExchange for the
      * RouterInterface, which will itself create the secrets used in ciphers.</p>
      * @param neighbour scraped neighbour to manipulate, from NeighbourNode.getNeighbourNodeByRID or null
      * @param neighbourRID scraped neighbour RID from buffer
      * @param pSource ip address of packet source, used to create a new neighbour node and link RouterInterface
-     * @param packetBuffer raw, but manipulated and validated  packet buffer
+     * @param packet validated packet buffer
      */
-    private static void processDHPubKeyPacket(NeighbourNode neighbour, @NotNull IPAddressString neighbourRID,
-                                      @NotNull IPAddress pSource, byte @NotNull [] packetBuffer) {
-        /*Check first that there already isn't a key being processed for the interface. If there is, processing the
-        packet will be ineffective, making the key a second time, and sending extra hello packets*/
+    private static void processDHPubKeyPacket(NeighbourNode neighbour, int neighbourRID,
+                                      int pSource, @NotNull ByteBuffer packet) {
+        /*Check first that the neighbour doesn't already have a secret, or a key being processed. If it does,
+        processing the packet will be ineffective, making the key a second time, and sending extra hello packets.
+        Other neighbours on the interface are processed independently.*/
         RouterInterface rInt = RouterInterface.getInterfaceByIPNetwork(pSource);
         if (rInt == null)
             return;
-        if (rInt.dhExchange.flagProcessingKey)
+        if (neighbour != null && (neighbour.enParam != null || rInt.dhExchange.isProcessingKey(neighbourRID)))
             return;
 
         if (neighbour == null) {
-            neighbour = new NeighbourNode(neighbourRID, pSource);
-
-
-            Config.neighboursTable.add(neighbour);
+            neighbour = Config.neighboursTable.putIfAbsent(new NeighbourNode(neighbourRID, pSource));
 
             /*This is a new packet from an unknown neighbour node. send a DH packet immediately with this
             node's public key, so it can guarantee to generate the secret key this cycle.
@@ -304,95 +394,132 @@ class EncDaemon {
             sendDHPubKey();
         }
 
-        Launcher.printToUser("New DH solicitation for reported node '" + neighbour.getRID() + "'");
+        Launcher.printToUser("New DH solicitation for reported node '" + neighbour.getRIDString() + "'");
 
         /*The neighbour isn't null now, so this node knows which public key to use. A key was received, so
-        this node can calculate the final DH secret.*/
-        neighbour.rIntOwner.dhExchange.receiveDHKey(neighbour, packetBuffer);
-
-        //Not in OSPF spec to send an extra packet on receiving one from a down neighbour.
-        if (neighbour.getState() == ExternalStates.DOWN)
-            EncDaemon.sendHelloPackets();
+        this node can calculate the final DH secret. The secret is made off this thread, so packets on the interface
+        keep being processed until it is ready.*/
+        NeighbourNode keyNeighbour = neighbour;
+        keyNeighbour.rIntOwner.dhExchange.receiveDHKey(keyNeighbour, packet).thenAccept(isInstalled -> {
+            //Not in OSPF spec to send an extra packet on receiving one from a down neighbour. Hellos are encrypted, so
+            //sent once the secret is set.
+            if (isInstalled && keyNeighbour.getState() == ExternalStates.DOWN)
+                EncDaemon.sendHelloPackets();
+        });
     }
 
-    /**<p><h1>Make Hello Packet</h1></p>
-     * <p>From a generic byte buffer (treated as unsigned), return a hello packet. The packet includes corrected values
-     * based on this node's RID, neighbours RIDs, updating the length and internet checksum.</p>
-     * <p>This node's rid is derived from Config.thisNode.rid, the RIDs of neighbours are derived from
-     * Config.neighboursTable. The router IDs from each NeighbourNode.rid</p>
-     * <p>This version is specific for encryption, and encrypts the data payload past the header.</p>
-     * @return the completed hello packet in bytes.
-     * @param neighbour the neighbour node being communicated with, required for the encryption
+    /**<p><h1>Process Session Resume Packet</h1></p>
+     * <p>Processes a validated Session Resume packet received on an interface channel. Only packets for this node, from
+     * a down neighbour with no key, a cached session and a valid proof, are processed. A replayed packet can't change
+     * the key of a working adjacency.</p>
+     * <p>Only one of resumption and the DH exchange may set the key of a neighbour, so a request is not answered while a
+     * DH secret is derived for the neighbour. DHExchange drops a secret while the session is resuming.</p>
+     * <p>A request is only answered once this node has seen the neighbour go down. It is answered with a response
+     * holding a new challenge nonce, and no key is set. If both nodes sent a request at once, only the request of the
+     * higher RID is answered, so both make the same key. A response is only accepted for the last request this node
+     * sent. It sets the resumed key, and is confirmed. A confirm is only accepted for a challenge this node sent since
+     * the neighbour went down, and sets the resumed key.</p>
+     * @param neighbour scraped neighbour, from NeighbourNode.getNeighbourNodeByRID or null
+     * @param neighbourRID scraped neighbour RID from buffer
+     * @param packet validated packet buffer
      */
-    private static byte[] makeHelloPacket(NeighbourNode neighbour) {
-        //Generic buffer that will be updated with specific values.
-        byte[] ospfBuffer = {
-                //GENERIC OSPF HEADER
-                0x04,//version
-                0x01,//message type
-                0x00, 0x2c,//packet length
-                (byte) 0xc0, (byte) 0xa8, 0x01, 0x01,//source router rid (dotted decimal)
-                0x00, 0x00, 0x00, 0x00,//area id (dotted decimal)
-                0x00, 0x00,//checksum
-                0x00, 0x00,//Auth type//0x00, 0x01
-                0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00,//Auth Data//0x63, 0x69, 0x73, 0x63, 0x6f, 0x00, 0x00, 0x00//"Cisco"
-
-                //OSPF HELLO PACKET HEADER
-                (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00,//Network Mask, p2p networks equal to 0.0.0.0.
-                0x00, 0x0a,//hello interval//10
-                0x00,//options
-                0x01,//router priority
-                0x00, 0x00, 0x00, 0x28,//router dead interval//40
-                0x00, 0x00, 0x00, 0x00,//DR
-                0x00, 0x00, 0x00, 0x00,//BDR
-        };
-
-        //Update router ID (4, 5, 6, 7)
-        try {
-            byte[] rid = Config.thisNode.getRIDBytes();
-            ospfBuffer[4] = rid[0];
-            ospfBuffer[5] = rid[1];
-            ospfBuffer[6] = rid[2];
-            ospfBuffer[7] = rid[3];
-        } catch (Exception ex)  {
-            handleDaemonError("Error when creating an OSPF packet: Substituting in router ID.", ex);
-        }
+    private static void processSessionResumePacket(NeighbourNode neighbour, int neighbourRID,
+                                                   @NotNull ByteBuffer packet) {
+        int thisRID = Config.thisNode.getRID();
+        if (neighbour == null || packet.limit() < SessionCache.PACKET_LENGTH || packet.getInt(24) != thisRID)
+            return;
+        if (neighbour.enParam != null || neighbour.getState() != ExternalStates.DOWN)
+            return;
+
+        SessionCache.Session session = SessionCache.get(neighbourRID, neighbour.rIntOwner);
+        if (session == null)
+            return;
 
-        //Update Network Mask? (24, 25, 26, 27)
-        //not for this experiment
+        byte message = packet.get(28);
+        byte[] requestNonce = new byte[SessionCache.NONCE_LENGTH];
+        byte[] responseNonce = new byte[SessionCache.NONCE_LENGTH];
+        byte[] proof = new byte[SessionCache.PROOF_LENGTH];
+        packet.get(32, requestNonce);
+        packet.get(48, responseNonce);
+        packet.get(64, proof);
 
-        //Append neighbours to the data buffer
-        for (NeighbourNode n: Config.neighboursTable) {
-            //Skip over non-adjacent nodes
-            if (n.getState() == ExternalStates.DOWN)
-                continue;
+        //Neighbour does not hold the cached secret, or the packet was changed.
+        if (!session.isProofValid(proof, message, neighbourRID, thisRID, requestNonce, responseNonce))
+            return;
 
-            ospfBuffer = Bytes.concat(ospfBuffer, n.getRIDBytes());
+        synchronized (session) {
+            if (message == SessionCache.RESUME_REQUEST) {
+                //Don't answer a request from before this node saw the neighbour go down, or losing to its own.
+                if (!session.isExpiring() || neighbour.rIntOwner.dhExchange.isProcessingKey(neighbourRID))
+                    return;
+                if (session.pendingNonce != null && Integer.compareUnsigned(thisRID, neighbourRID) > 0)
+                    return;
+
+                session.pendingNonce = null;
+                responseNonce = SessionCache.makeNonce();
+                session.addChallenge(requestNonce, responseNonce);
+                sendSessionResumePacket(neighbour, SessionCache.RESUME_RESPONSE, requestNonce, responseNonce,
+                        session.makeProof(SessionCache.RESUME_RESPONSE, thisRID, neighbourRID, requestNonce,
+                                responseNonce));
+            } else if (message == SessionCache.RESUME_RESPONSE) {
+                //Only the response to the last request sent is accepted.
+                if (session.pendingNonce == null || !Arrays.equals(requestNonce, session.pendingNonce))
+                    return;
+
+                session.pendingNonce = null;
+                session.confirmRequestNonce = requestNonce;
+                session.confirmResponseNonce = responseNonce;
+                session.confirmsSent = 0;
+                sendSessionConfirm(neighbour, session);
+                installResumedKey(neighbour, session.deriveKey(thisRID, neighbourRID, requestNonce, responseNonce),
+                        session.suite);
+            } else if (message == SessionCache.RESUME_CONFIRM) {
+                //Only a confirm of a challenge this node sent is accepted, so a replayed confirm sets no key.
+                if (!session.takeChallenge(requestNonce, responseNonce))
+                    return;
+
+                session.pendingNonce = null;
+                installResumedKey(neighbour, session.deriveKey(neighbourRID, thisRID, requestNonce, responseNonce),
+                        session.suite);
+            }
         }
+    }
+
+    /**<p><h1>Install Resumed Key</h1></p>
+     * <p>Set the EncryptionParameters of a neighbour from a resumed session. A DH agreement still running for the
+     * neighbour is discarded, so it does not replace the resumed key. The cached session stops expiring, as the
+     * neighbour is back.</p>
+     * @param neighbour neighbour the session was resumed with
+     * @param key resumed key
+     * @param suite cipher suite of the cached session
+     */
+    private static void installResumedKey(NeighbourNode neighbour, SecretKey key, CipherSuite suite) {
+        neighbour.rIntOwner.dhExchange.resetNeighbour(neighbour.getRID());
+        neighbour.enParam = new EncryptionParameters(key, suite);
+        SessionCache.stopExpiry(neighbour);
+        Launcher.printToUser("Resumed session with '" + neighbour.getRIDString() + "'");
 
-        //Update packet length (2, 3), Update Checksum (12, 13). Encrypt data portion
-        return updateChecksumAndLength(neighbour.enParam.encrypt(ospfBuffer));
+        //As for a DH secret, hellos are sent straight away to a down neighbour.
+        if (neighbour.getState() == ExternalStates.DOWN)
+            EncDaemon.sendHelloPackets();
     }
 
     /**<p><h1>Try to Decrypt Packet Buffer</h1></p>
      * <p>Method attempts decrypting a provided packet buffer, assuming data starts after the known OSPF header. The
-     * method attempts to validate and retrieve factors required for decrypting, including a NeighbourNode</p>
-     * <p>The method will return either the starting buffer for a DH PubKey packet, null </p>
-     * @param data the packet buffer to operate on. Requires the standard OSPF header structure
+     * method attempts to validate factors required for decrypting, including the NeighbourNode</p>
+     * <p>The method will return either the starting buffer for a DH PubKey packet, the decrypt buffer of the channel
+     * holding the decrypted packet, or null </p>
+     * @param rxChannel the channel the packet was received on, owning the decrypt buffer
+     * @param neighbour the neighbour scraped from the packet header, or null if not known
+     * @param packet the packet buffer to operate on. Requires the standard OSPF header structure
      * @param pSource the packet source IP address
      * @return the full decrypted packet or null for invalid parameters or conditions
      */
-    private static byte[] tryDecryptBytes(byte[] data, IPAddress pSource) {
-
-        //Skip data already in plaintext (DH PubKey packet)
-        if (data[1] == 0x06)
-            return data;
-
-        //Get neighbour
-        IPAddressString neighbourRID = new IPAddressNetwork.IPAddressGenerator().from(
-                Arrays.copyOfRange(data, 4, 8)
-        ).toAddressString();
-        NeighbourNode neighbour = NeighbourNode.getNeighbourNodeByRID(neighbourRID);
+    private static ByteBuffer tryDecryptBytes(InterfaceChannel rxChannel, NeighbourNode neighbour, ByteBuffer packet,
+                                              int pSource) {
+        //Skip data already in plaintext (DH PubKey and Session Resume packets)
+        if (packet.get(1) == 0x06 || packet.get(1) == 0x07)
+            return packet;
 
         //If neighbour doesn't exist, and the packet was not a DH PubKey, then reject the packet returning null.
         if (neighbour == null)
@@ -406,8 +533,12 @@ class EncDaemon {
         if (neighbour.enParam == null)
             return null;
 
-        //Finally, perform the decrypt on a packet that should be valid.
-        return neighbour.enParam.decrypt(data);
+        //Too short to hold the IV and tag of the cipher suite, so can't be decrypted.
+        if (packet.limit() < neighbour.enParam.getMinimumLength())
+            return null;
+
+        //Finally, perform the decrypt on a packet that should be valid. An AEAD tag mismatch also returns null.
+        return neighbour.enParam.decrypt(packet, rxChannel.decryptBuffer);
     }
     //endregion
 }
@@ -1,67 +1,224 @@
 package com.mws.ospf;
 
-import com.google.common.primitives.Bytes;
-
 import javax.crypto.*;
-import java.io.IOException;
-import java.security.AlgorithmParameters;
+import java.nio.ByteBuffer;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
-import java.util.Arrays;
+import java.security.SecureRandom;
+import java.util.List;
 
 import static com.mws.ospf.StdDaemon.handleDaemonError;
 
 /**<p><h1>Encryption Parameters</h1></p>
- * <p>Class to store a secret key derived from Diffie-Hellman. Provides methods to use the key in encryption and
- * decryption of byte buffers, for each individual NeighbourNode.</p>
+ * <p>Class to store a secret key derived from Diffie-Hellman, and the cipher suite negotiated with the neighbour.
+ * Provides methods to use the key in encryption and decryption of byte buffers, for each individual NeighbourNode.</p>
+ * <p>Each object keeps its own encrypt and decrypt Cipher, looked up once when the key is made, rather than once per
+ * packet. A Cipher is not thread safe, so each is locked while in use. Decrypts only happen on the worker of the
+ * neighbour's interface, so the decrypt lock is never contended.</p>
+ * <p>The IV is sent raw after the OSPF header, and is generated per packet by a DRBG kept per thread. For an AEAD
+ * suite, the OSPF header is authenticated as associated data and the tag is on the end of the packet. The packet
+ * checksum is then left as 0, as the tag already covers the whole packet.</p>
+ * <p>Several packets can be encrypted in one call, for one neighbour or the same packet for several neighbours. Each
+ * Cipher is locked once per batch rather than once per packet, and the packets are encrypted back to back into one
+ * output arena. Encrypt calls, packets and time are counted in Stat.</p>
  */
 class EncryptionParameters {
+    //region STATIC CONSTANTS
+    static final int MAX_OVERHEAD = 32;//Most bytes any suite adds to a packet: IV and padding, or IV and tag
+    private static final ThreadLocal<SecureRandom> ivRandom = ThreadLocal.withInitial(() -> {
+        try {
+            return SecureRandom.getInstance("DRBG");
+        } catch (NoSuchAlgorithmException ex) {
+            return new SecureRandom();
+        }
+    });
+    //endregion STATIC CONSTANTS
+
     //region OBJECT PROPERTIES
+    final CipherSuite suite;
     private final SecretKey sharedSecret;
+    private final Cipher encryptCipher;
+    private final Cipher decryptCipher;
+    private final byte[] encryptIV;//Guarded by encryptCipher
+    private final byte[] decryptIV;//Guarded by decryptCipher
     //endregion OBJECT PROPERTIES
 
+    //region STATIC METHODS
+    /**<p><h1>Get Arena Size</h1></p>
+     * @param packets plaintext packets to be encrypted into an arena
+     * @param copies number of times each packet is encrypted
+     * @return bytes needed in an arena for every encrypted packet
+     */
+    static int getArenaSize(List<ByteBuffer> packets, int copies) {
+        int size = 0;
+        for (ByteBuffer packet: packets)
+            size += packet.limit() + MAX_OVERHEAD;
+        return size * copies;
+    }
+
+    /**<p><h1>Encrypt Packet for Neighbours</h1></p>
+     * <p>Encrypt the same plaintext packet once for each of several neighbours, back to back into an arena. Used for
+     * the hello fan-out, where the packet is the same for every neighbour on an interface.</p>
+     * @param packet a packet buffer containing the OSPF header and data, from index 0 to the limit
+     * @param enParams encryption parameters of each neighbour
+     * @param arena buffer to encrypt into, from its position, with room for getArenaSize bytes
+     * @param out list the encrypted packets are added to, each a slice of the arena, in the order of enParams
+     * @return out
+     */
+    static List<ByteBuffer> encryptBatch(ByteBuffer packet, List<EncryptionParameters> enParams, ByteBuffer arena,
+                                         List<ByteBuffer> out) {
+        long startNanos = System.nanoTime();
+        for (EncryptionParameters enParam: enParams) {
+            synchronized (enParam.encryptCipher) {
+                out.add(enParam.encryptIntoArena(packet, arena));
+            }
+        }
+        Stat.recordEncrypt(enParams.size(), System.nanoTime() - startNanos);
+        return out;
+    }
+    //endregion STATIC METHODS
+
     //region OBJECT METHODS
     /**<p><h1>Encryption Parameters</h1></p>
      * <p>Constructs an encryption parameters object with the specified SecretKey. The key is locked down, being private
-     * and final, only exposed to class methods.</p>
-     * @param aesKey the shared AES secret
+     * and final, only exposed to class methods. The ciphers used with the key are looked up here, once.</p>
+     * <p>The method handles its own exceptions.</p>
+     * @param key the shared secret, for the key algorithm of the suite
+     * @param suite cipher suite negotiated with the neighbour
+     */
+    public EncryptionParameters(SecretKey key, CipherSuite suite) {
+        this.suite = suite;
+        this.sharedSecret = key;
+        this.encryptIV = new byte[suite.ivLength];
+        this.decryptIV = new byte[suite.ivLength];
+
+        Cipher encrypt = null;
+        Cipher decrypt = null;
+        try {
+            encrypt = Cipher.getInstance(suite.transformation);
+            decrypt = Cipher.getInstance(suite.transformation);
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException ex) {
+            handleDaemonError("UNLIKELY EXCEPTION: Encryption: NoSuchAlgorithm / NoSuchPadding \"" +
+                    suite.transformation + "\"", ex);
+        }
+        this.encryptCipher = encrypt;
+        this.decryptCipher = decrypt;
+    }
+
+    /**<p><h1>Get Data Offset</h1></p>
+     * @return index of the encrypted data in a packet, after the OSPF header and IV
      */
-    public EncryptionParameters(SecretKey aesKey) {
-        this.sharedSecret = aesKey;
+    int getDataOffset() {
+        return StdDaemon.HEADER_LENGTH + suite.ivLength;
+    }
+
+    /**<p><h1>Get Minimum Length</h1></p>
+     * @return length of the shortest packet that could be decrypted, with no data
+     */
+    int getMinimumLength() {
+        return getDataOffset() + suite.tagLength;
     }
 
     /**<p><h1>Encrypt Data with Key</h1></p>
-     * <p>Method converts a packets data from cleartext to AES ciphertext, using a key and a generated IV parameter.
+     * <p>Method converts a packets data from cleartext to ciphertext, using a key and a generated IV parameter.
      * The method expects there to be an OSPF header, and will try to encrypt only the data payload section.</p>
+     * <p>The packet is encrypted straight into the provided output buffer, after a copy of the header and the raw IV.
+     * For an AEAD suite, the length of the output is set before encrypting, as the header is authenticated, and the
+     * checksum is left as 0. Otherwise the packet length and checksum of the output are updated in place after. The
+     * packet buffer position is left at 0, so the same plaintext can be encrypted again for another neighbour.</p>
+     * <p>The method handles its own exceptions.</p>
+     * @param packet a packet buffer containing the OSPF header and data to be encrypted with the secret key, from
+     *               index 0 to the limit
+     * @param out buffer to write the encrypted packet into. Overwritten from index 0. Must not be the packet buffer
+     * @return out, holding the original packet encrypted with the secret key, ready to send. After the header is the
+     * IV for decrypting the message
+     */
+    ByteBuffer encrypt(ByteBuffer packet, ByteBuffer out) {
+        long startNanos = System.nanoTime();
+        ByteBuffer encrypted;
+        synchronized (encryptCipher) {
+            encrypted = encryptLocked(packet, out);
+        }
+        Stat.recordEncrypt(1, System.nanoTime() - startNanos);
+        return encrypted;
+    }
+
+    /**<p><h1>Encrypt Batch with Key</h1></p>
+     * <p>Encrypt several packets for this neighbour, back to back into an arena. The Cipher is locked once for the
+     * whole batch, so the packets are not interleaved with other encrypts for the neighbour.</p>
+     * @param packets packet buffers each containing the OSPF header and data, from index 0 to the limit
+     * @param arena buffer to encrypt into, from its position, with room for getArenaSize bytes
+     * @param out list the encrypted packets are added to, each a slice of the arena, in the order of packets
+     * @return out
+     */
+    List<ByteBuffer> encryptBatch(List<ByteBuffer> packets, ByteBuffer arena, List<ByteBuffer> out) {
+        long startNanos = System.nanoTime();
+        synchronized (encryptCipher) {
+            for (ByteBuffer packet: packets)
+                out.add(encryptIntoArena(packet, arena));
+        }
+        Stat.recordEncrypt(packets.size(), System.nanoTime() - startNanos);
+        return out;
+    }
+
+    /**<p><h1>Encrypt into Arena</h1></p>
+     * <p>Encrypt a packet into the arena from its position, then move the arena position past it. Callers must hold
+     * the encrypt lock.</p>
+     * @param packet a packet buffer containing the OSPF header and data, from index 0 to the limit
+     * @param arena buffer to encrypt into, from its position
+     * @return a slice of the arena holding the encrypted packet
+     */
+    private ByteBuffer encryptIntoArena(ByteBuffer packet, ByteBuffer arena) {
+        ByteBuffer encrypted = encryptLocked(packet, arena.slice());
+        arena.position(arena.position() + encrypted.limit());
+        return encrypted;
+    }
+
+    /**<p><h1>Encrypt with Key, Locked</h1></p>
+     * <p>Encrypt a packet, as in encrypt. Callers must hold the encrypt lock.</p>
      * <p>The method handles its own exceptions.</p>
-     * @param packet a packet budder containing the OSPF header and data to be encrypted with the AES secret key
-     * @return the original packet encrypted with AES and the secret key. Appended in the first 18 bytes is also the IV
-     * parameter for decrypting the message
+     * @param packet a packet buffer containing the OSPF header and data, from index 0 to the limit
+     * @param out buffer to write the encrypted packet into. Overwritten from index 0
+     * @return out, holding the encrypted packet, ready to send
      */
-    byte[] encrypt(byte[] packet) {
+    private ByteBuffer encryptLocked(ByteBuffer packet, ByteBuffer out) {
         try {
-            //Split packet into predefined blocks of packet. Blocks include OSPF header and packet
-            byte[] ospfHeader = Arrays.copyOf(packet, StdDaemon.HEADER_LENGTH);
-            byte[] data = Arrays.copyOfRange(packet, StdDaemon.HEADER_LENGTH, packet.length);
-            Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-            cipher.init(Cipher.ENCRYPT_MODE, sharedSecret);
-
-            byte[] aesParams = cipher.getParameters().getEncoded();
-            data = cipher.doFinal(data);
-            return Bytes.concat(ospfHeader, aesParams, data);
-        } catch (NoSuchAlgorithmException | NoSuchPaddingException ex) {
-            // Ex on code:  Cipher.getInstance("AES/CBC/PKCS5Padding");
-            StdDaemon.handleDaemonError("UNLIKELY EXCEPTION: Encryption: NoSuchAlgorithm / NoSuchPadding  \"AES/CBC/PKCS5Padding\"", ex);
-        } catch (InvalidKeyException ex) {
-            // Ex on code:  cipherEncrypt.init(Cipher.ENCRYPT_MODE, aesKey);
-            StdDaemon.handleDaemonError("Encryption: Invalid Key provided to cipher", ex);
+            ivRandom.get().nextBytes(encryptIV);
+            encryptCipher.init(Cipher.ENCRYPT_MODE, sharedSecret, suite.makeParameterSpec(encryptIV));
+
+            //Blocks are the OSPF header, the IV, then the encrypted packet data
+            out.clear();
+            out.put(0, packet, 0, StdDaemon.HEADER_LENGTH);
+            if (suite.isAEAD()) {
+                //Header is final before encrypting, so the tag covers it as it is sent.
+                int packetLength = getMinimumLength() + packet.limit() - StdDaemon.HEADER_LENGTH;
+                out.putShort(2, (short) packetLength);
+                out.putShort(12, (short) 0);
+                encryptCipher.updateAAD(out.limit(StdDaemon.HEADER_LENGTH));
+                out.limit(out.capacity());
+            }
+            out.position(StdDaemon.HEADER_LENGTH);
+            out.put(encryptIV);
+            packet.position(StdDaemon.HEADER_LENGTH);
+            encryptCipher.doFinal(packet, out);
+            packet.position(0);
+
+            //The tag protects AEAD packets, so skip the checksum pass.
+            if (suite.isAEAD())
+                return out.flip();
+
+            //Update packet length (2, 3), Update Checksum (12, 13)
+            return PacketCodec.finishPacket(out);
+        } catch (InvalidKeyException | InvalidAlgorithmParameterException ex) {
+            // Ex on code:  encryptCipher.init(Cipher.ENCRYPT_MODE, sharedSecret, iv);
+            StdDaemon.handleDaemonError("Encryption: Invalid Key or IV provided to cipher", ex);
         } catch (IllegalBlockSizeException | BadPaddingException ex) {
             //Data encrypting is bad.
             StdDaemon.handleDaemonError("Encryption: Illegal block size or bad padding", ex);
-        } catch (IOException ex) {
-            // Ex on code:  cipher.getParameters().getEncoded();
-            StdDaemon.handleDaemonError("Encryption: Exception on encoding AES parameters", ex);
+        } catch (ShortBufferException ex) {
+            // Ex on code:  encryptCipher.doFinal(packet, out);
+            StdDaemon.handleDaemonError("Encryption: Output buffer too small for the encrypted packet", ex);
         } catch (Exception ex) {
             StdDaemon.handleDaemonError("Encryption: Unexpected Exception", ex);
         }
@@ -70,42 +227,53 @@ class EncryptionParameters {
     }
 
     /**<p><h1>Decrypt Data with Key</h1></p>
-     * <p>Method converts AES ciphertext to plaintext, using a key. The method expects the standard OSPF header, and the
-     * first 18 bits to include an encoded IV parameter, from the encryption method of the neighbour node, to point at
-     * where to start decryption.</p>
+     * <p>Method converts ciphertext to plaintext, using a key. The method expects the standard OSPF header, and the
+     * bytes after it to be the raw IV from the encryption method of the neighbour node.</p>
+     * <p>The packet is decrypted straight into the provided output buffer, which is reused for every packet, so no
+     * buffer is allocated for the plaintext. The packet buffer position is left at 0.</p>
+     * <p>A packet that fails authentication for an AEAD suite, or has bad padding for CBC, is dropped by returning
+     * null. It was either damaged, not sent by the neighbour, or encrypted with a different key to this node's.</p>
      * <p>The method handles its own exceptions.</p>
-     * @param packet a packet buffer containing an OSPF header, IV parameters and encrypted packet to be decrypted with
-     *               the AES secret key
-     * @return the original packet decrypted, with standard OSPF header and trailing decrypted packet
+     * @param packet a packet buffer containing an OSPF header, IV and encrypted packet to be decrypted with the secret
+     *               key, from index 0 to the limit
+     * @param out buffer to write the decrypted packet into. Overwritten from index 0
+     * @return out, containing the standard OSPF header and trailing decrypted packet from index 0 to the limit, or null
+     * if the packet failed authentication
      */
-    byte[] decrypt(byte[] packet) {
+    ByteBuffer decrypt(ByteBuffer packet, ByteBuffer out) {
         try {
-            AlgorithmParameters aesParams = AlgorithmParameters.getInstance("AES");
-            //Split packet into predefined blocks of packet. Blocks include OSPF header, IV params and encrypted packet
-            byte[] ospfHeader = Arrays.copyOf(packet, StdDaemon.HEADER_LENGTH);
-            aesParams.init(Arrays.copyOfRange(packet, StdDaemon.HEADER_LENGTH, 42));
-            byte[] encryptedData = Arrays.copyOfRange(packet, 42, packet.length);
+            synchronized (decryptCipher) {
+                int packetLength = packet.limit();
+                packet.get(StdDaemon.HEADER_LENGTH, decryptIV);
+                decryptCipher.init(Cipher.DECRYPT_MODE, sharedSecret, suite.makeParameterSpec(decryptIV));
+                if (suite.isAEAD()) {
+                    decryptCipher.updateAAD(packet.limit(StdDaemon.HEADER_LENGTH));
+                    packet.limit(packetLength);
+                }
 
-            Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-            cipher.init(Cipher.DECRYPT_MODE, sharedSecret, aesParams);
-
-            //return buffer as if no encryption took place.
-            return Bytes.concat(ospfHeader, cipher.doFinal(encryptedData));
-        } catch (NoSuchAlgorithmException ex) {
-            // Ex on code:  AlgorithmParameters.getInstance("AES");
-            // Ex on code:  Cipher.getInstance("AES/CBC/PKCS5Padding");
-            handleDaemonError("UNLIKELY EXCEPTION: Decryption: NoSuchAlgorithm \"AES\"", ex);
-        } catch (NoSuchPaddingException ex) {
-            // Ex on code:  Cipher.getInstance("AES/CBC/PKCS5Padding");
-            handleDaemonError("UNLIKELY EXCEPTION: Decryption: NoSuchPadding \"PKCS5Padding\"", ex);
+                //Copy the header, then decrypt the rest in after it. Return buffer as if no encryption took place.
+                out.clear();
+                out.put(0, packet, 0, StdDaemon.HEADER_LENGTH);
+                out.position(StdDaemon.HEADER_LENGTH);
+                packet.position(getDataOffset());
+                decryptCipher.doFinal(packet, out);
+                packet.position(0);
+            }
+            return out.flip();
+        } catch (AEADBadTagException ex) {
+            packet.position(0);
+            System.err.println("Decryption: Packet failed authentication, dropped");
+            return null;
         } catch (IllegalBlockSizeException | BadPaddingException ex) {
-            // Ex on code:  cipherDecrypt.doFinal(packet);
-            handleDaemonError("Decryption: Illegal block size or bad padding when decrypting buffer", ex);
-        } catch (IOException ex) {
-            // Ex on code:  aesParams.init()
-            StdDaemon.handleDaemonError("Decryption: Exception on decoding AES parameters", ex);
+            // Ex on code:  decryptCipher.doFinal(packet, out);
+            packet.position(0);
+            System.err.println("Decryption: Illegal block size or bad padding, packet dropped");
+            return null;
+        } catch (ShortBufferException ex) {
+            // Ex on code:  decryptCipher.doFinal(packet, out);
+            handleDaemonError("Decryption: Output buffer too small for the decrypted packet", ex);
         } catch (InvalidAlgorithmParameterException | InvalidKeyException ex) {
-            // Ex on code:  cipher.init()
+            // Ex on code:  decryptCipher.init()
             StdDaemon.handleDaemonError("Decryption: init cipher", ex);
         } catch (Exception ex) {
             StdDaemon.handleDaemonError("Decryption: Unexpected Exception", ex);
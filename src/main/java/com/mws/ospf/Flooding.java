@@ -0,0 +1,480 @@
+package com.mws.ospf;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.mws.ospf.StdDaemon.HEADER_LENGTH;
+import static com.mws.ospf.StdDaemon.MTU;
+
+/*      Stripped LSR packet, repeated for each LSA requested
+         +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+         |                          LS type                              |
+         +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+         |                       Link State ID                           |
+         +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+         |                     Advertising Router                        |
+         +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+
+        Stripped LSU packet
+         +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+         |                            # LSAs                             |
+         +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+         |                                                               |
+         +-                                                            +-+
+         |                             LSAs                              |
+         +-                                                            +-+
+         |                              ...                              |
+
+        Stripped LSAck packet
+         +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+         |                                                               |
+         +-                                                             -+
+         |                             A                                 |
+         +-                 Link State Advertisement                    -+
+         |                           Header                              |
+         +-                                                             -+
+         |                              ...                              |
+ */
+
+/**<p><h1>Flooding</h1></p>
+ * <p>The flooding procedure of RFC 2328 sections 10.9 and 13, shared by both daemons. Handles Link State Request (type
+ * 3), Link State Update (type 4) and Link State Acknowledgment (type 5) packets.</p>
+ * <p>Once the DBD exchange is done, a neighbour in Loading is sent a request for the LSAs on its request list, packed
+ * up to the MTU. The next request is sent once every LSA in the last is received, until the request list is empty and
+ * the neighbour is Full.</p>
+ * <p>A received LSA more recent than the LSDB is installed, then flooded to every other neighbour in Exchange or later.
+ * The LSAs of one update are flooded together, packed into as few updates as fit the MTU. A flooded LSA stays on the
+ * retransmission list of the neighbour until it is acknowledged, and is resent by the LS rxmt timer of the neighbour.
+ * Receiving the same instance back is taken as an implied acknowledgment.</p>
+ * <p>Acknowledgments are delayed, so the acknowledgments of several updates are bundled into as few packets as fit the
+ * MTU.</p>
+ * <p>The flooding state of a neighbour is guarded by the neighbour. The lock is never held while using the LSDB, or
+ * while locking another neighbour.</p>
+ */
+class Flooding {
+    //region STATIC CONSTANTS
+    static final int LSR_ENTRY_LENGTH = 12;
+    static final int LSU_HEADER_LENGTH = 4;
+    static final long ACK_DELAY_MS = 1000;//Less than the rxmt interval, RFC 2328 section 13.5
+    static final long MIN_LS_ARRIVAL_MS = 1000;//Least time between accepting instances of an LSA, RFC 2328 appendix B
+    private static final int MAX_LSR_ENTRIES = (MTU - HEADER_LENGTH) / LSR_ENTRY_LENGTH;
+    private static final int MAX_ACK_ENTRIES = (MTU - HEADER_LENGTH) / RLSA.LSA_HEADER_LENGTH;
+    //endregion STATIC CONSTANTS
+
+    //region STATIC METHODS
+    /**<p><h1>Originate Local LSA</h1></p>
+     * <p>Set up the local LSA in the LSDB, then flood it to every neighbour in Exchange or later. The LSDB schedules the
+     * routes to be calculated.</p>
+     */
+    static void originateLocalRLSA() {
+        flood(List.of(Config.lsdb.setupLocalRLSA()), null);
+    }
+
+    /**<p><h1>Add Requests</h1></p>
+     * <p>Add the LSAs described in a received DBD packet to the request list of the neighbour. Only LSAs missing from
+     * the LSDB, or more recent than the LSDB instance, are requested, RFC 2328 section 10.6.</p>
+     * @param neighbour neighbour that sent the DBD packet
+     * @param headers LSA headers from the DBD packet
+     */
+    static void addRequests(NeighbourNode neighbour, List<RLSA> headers) {
+        List<RLSA> requests = new ArrayList<>(headers.size());
+        for (RLSA header: headers) {
+            RLSA current = Config.lsdb.get(header.getKey());
+            if (current == null || header.compareInstance(current) > 0)
+                requests.add(header);
+        }
+
+        synchronized (neighbour) {
+            neighbour.lsaRequestList.addAll(requests);
+        }
+    }
+
+    /**<p><h1>Send Link State Request</h1></p>
+     * <p>Send a request to a neighbour in Loading, for as many LSAs from the start of its request list as fit the MTU.
+     * The packet is kept for retransmission. With an empty request list, the neighbour is Full instead.</p>
+     * @param neighbour neighbour to request LSAs from
+     */
+    static void sendRequest(NeighbourNode neighbour) {
+        byte[] packetBuffer = null;
+        synchronized (neighbour) {
+            neighbour.lsrOutstanding.clear();
+            neighbour.lastSentLSR = null;
+
+            if (!neighbour.lsaRequestList.isEmpty()) {
+                List<RLSA> requests = neighbour.lsaRequestList.subList(0,
+                        Math.min(MAX_LSR_ENTRIES, neighbour.lsaRequestList.size()));
+                for (RLSA request: requests)
+                    neighbour.lsrOutstanding.add(request.getKey());
+
+                //Encode into this thread's transmit buffer, then keep a copy for retransmission.
+                packetBuffer = PacketCodec.toArray(PacketCodec.encodeLSRequest(PacketCodec.getTxBuffer(), requests));
+                neighbour.lastSentLSR = packetBuffer;
+            }
+        }
+
+        if (packetBuffer == null) {
+            evLoadingDone(neighbour);
+        } else {
+            StdDaemon.sendPacketToNeighbour(neighbour, packetBuffer);
+            neighbour.startLSRxmtTimer();
+        }
+    }
+
+    /**<p><h1>Process Link State Request Packet</h1></p>
+     * <p>Process a validated link state request packet. Every requested LSA in the LSDB is sent back, in updates packed
+     * up to the MTU. LSAs sent for a request are not added to the retransmission list, as the neighbour retransmits the
+     * request instead.</p>
+     * @param neighbour neighbour that sent the request
+     * @param packet validated packet buffer, decrypted for the EncDaemon
+     */
+    static void processLSRequest(NeighbourNode neighbour, ByteBuffer packet) {
+        //Requests are only valid once the DBD exchange has started, RFC 2328 section 10.7.
+        if (neighbour.getState().value < ExternalStates.EXCHANCE.value)
+            return;
+
+        List<RLSA> lsas = new ArrayList<>();
+        for (int offset = HEADER_LENGTH; offset + LSR_ENTRY_LENGTH <= packet.limit(); offset += LSR_ENTRY_LENGTH) {
+            LSAKey key = new LSAKey((byte) packet.getInt(offset), packet.getInt(offset + 4), packet.getInt(offset + 8));
+            RLSA lsa = Config.lsdb.get(key);
+
+            //BadLSReq. The neighbour will retransmit, and the LSA may be in the LSDB by then.
+            if (lsa == null) {
+                Launcher.printToUser("Neighbour " + neighbour.getRIDString() + " requested an LSA not in the LSDB: " +
+                        key);
+                continue;
+            }
+            lsas.add(lsa);
+        }
+
+        sendUpdates(neighbour, lsas, false);
+    }
+
+    /**<p><h1>Process Link State Update Packet</h1></p>
+     * <p>Process a validated link state update packet, following RFC 2328 section 13. Each LSA more recent than the
+     * LSDB is installed, acknowledged, and flooded to every other neighbour. An LSA the neighbour should not have sent,
+     * as the LSDB instance is more recent, is answered with the LSDB instance.</p>
+     * <p>A MaxAge LSA not in the LSDB is acknowledged straight away and discarded, unless a neighbour is still in
+     * Exchange or Loading, and a newer instance arriving within MinLSArrival of the LSDB instance is discarded without
+     * an acknowledgment, RFC 2328 section 13 steps 4 and 5 (a).</p>
+     * <p>Received LSAs are taken off the request list of the neighbour. Once every LSA in the last request is received,
+     * the next request is sent.</p>
+     * @param neighbour neighbour that sent the update
+     * @param rxChannel channel the packet was received on, owning the views to read it with
+     * @param packet validated packet buffer, decrypted for the EncDaemon
+     */
+    static void processLSUpdate(NeighbourNode neighbour, InterfaceChannel rxChannel, ByteBuffer packet) {
+        //Updates are only accepted from neighbours in Exchange or later, RFC 2328 section 13.
+        if (neighbour.getState().value < ExternalStates.EXCHANCE.value)
+            return;
+        if (packet.limit() < HEADER_LENGTH + LSU_HEADER_LENGTH)
+            return;
+
+        //region SCRAPE LSAS
+        //new RLSA self-validates, as in a DBD packet. Only router LSAs are understood, others are skipped.
+        List<RLSA> received = new ArrayList<>();
+        int noLSAs = packet.getInt(HEADER_LENGTH);
+        int offset = HEADER_LENGTH + LSU_HEADER_LENGTH;
+        try {
+            for (int i = 0; i < noLSAs && offset < packet.limit(); i++) {
+                LSAHeaderView lsaView = rxChannel.lsaView.wrap(packet, offset);
+                if (offset + RLSA.LSA_HEADER_LENGTH > packet.limit() || !lsaView.isLengthValid())
+                    throw new IllegalArgumentException("The LSA length is invalid");
+
+                if (lsaView.getLSType() == RLSA.LS_TYPE)
+                    received.add(new RLSA(lsaView));
+                offset += lsaView.getLength();
+            }
+        } catch (ArithmeticException | IllegalArgumentException ex) {
+            //Keep the LSAs before the invalid LSA. The neighbour retransmits the rest, as they are not acknowledged.
+            Launcher.printToUser("An R-LSA in a received LSU packet was invalid at offset " + offset + ": " +
+                    ex.getMessage());
+        }
+        //endregion SCRAPE LSAS
+
+        //region SCREEN LSAS
+        //Checked against the current snapshot. A race with another interface installing the same LSA only changes
+        //which copy is discarded, as installing checks again under the LSDB lock.
+        boolean isAnyExchanging = false;
+        for (NeighbourNode other: Config.neighboursTable) {
+            if (other.getState() == ExternalStates.EXCHANCE || other.getState() == ExternalStates.LOADING) {
+                isAnyExchanging = true;
+                break;
+            }
+        }
+
+        List<RLSA> accepted = new ArrayList<>(received.size());
+        List<RLSA> directAcks = new ArrayList<>();
+        long nowMs = RLSA.nowMs();
+        for (RLSA lsa: received) {
+            RLSA current = Config.lsdb.get(lsa.getKey());
+            if (current == null && lsa.getAge() >= RLSA.MAX_AGE && !isAnyExchanging) {
+                //Nothing to flush, so acknowledge it and drop it, rather than install and flood it.
+                directAcks.add(lsa);
+            } else if (current != null && current.advertisingRouter != Config.thisNode.getRID() &&
+                    nowMs - current.getArrivalMs() < MIN_LS_ARRIVAL_MS && lsa.compareInstance(current) > 0) {
+                //Too soon after the last instance. Not acknowledged, so the neighbour sends it again later.
+                continue;
+            } else {
+                accepted.add(lsa);
+            }
+        }
+        //endregion SCREEN LSAS
+
+        //region INSTALL LSAS
+        List<RLSA> floodLSAs = new ArrayList<>();
+        List<RLSA> originatedLSAs = new ArrayList<>();
+        List<RLSA> newerLSAs = new ArrayList<>();
+        List<RLSA> acks = new ArrayList<>();
+        int impliedAcks = 0;
+        RLSA[] currents = Config.lsdb.installAllIfNewer(accepted);
+        for (int i = 0; i < currents.length; i++) {
+            RLSA lsa = accepted.get(i);
+            RLSA current = currents[i];
+
+            if (current == null) {
+                //Installed. A newer instance of the local LSA was originated before a restart, RFC 2328 section 13.4.
+                //Originate the local LSA again, past its sequence number, to replace it everywhere.
+                if (lsa.advertisingRouter == Config.thisNode.getRID())
+                    originatedLSAs.add(Config.lsdb.setupLocalRLSA(lsa.lsSeqNumber));
+                else
+                    floodLSAs.add(lsa);
+                acks.add(lsa);
+            } else if (lsa.compareInstance(current) == 0) {
+                //Same instance. If flooded to the neighbour, this is an implied acknowledgment.
+                synchronized (neighbour) {
+                    if (neighbour.lsaRxmtList.remove(lsa.getKey()) != null)
+                        impliedAcks++;
+                    else
+                        acks.add(lsa);
+                }
+            } else {
+                //The LSDB instance is more recent. Send it back, without adding it to the retransmission list.
+                newerLSAs.add(current);
+            }
+        }
+        Stat.recordAcked(impliedAcks);
+        //endregion INSTALL LSAS
+
+        //region REQUEST LIST
+        //LSAs discarded for MinLSArrival stay requested, as LSAs sent for a request are not retransmitted.
+        boolean isRequestDone;
+        synchronized (neighbour) {
+            for (RLSA lsa: accepted) {
+                LSAKey key = lsa.getKey();
+                neighbour.lsaRequestList.removeIf(request ->
+                        request.getKey().equals(key) && lsa.compareInstance(request) >= 0);
+                neighbour.lsrOutstanding.remove(key);
+            }
+            isRequestDone = neighbour.lastSentLSR != null && neighbour.lsrOutstanding.isEmpty();
+        }
+        //endregion REQUEST LIST
+
+        sendAcks(neighbour, directAcks);
+        queueAcks(neighbour, acks);
+        sendUpdates(neighbour, newerLSAs, false);
+        flood(floodLSAs, neighbour);
+        flood(originatedLSAs, null);
+
+        if (isRequestDone && neighbour.getState() == ExternalStates.LOADING)
+            sendRequest(neighbour);
+    }
+
+    /**<p><h1>Process Link State Acknowledgment Packet</h1></p>
+     * <p>Process a validated link state acknowledgment packet. Each acknowledged LSA is taken off the retransmission
+     * list of the neighbour, if the instance matches.</p>
+     * @param neighbour neighbour that sent the acknowledgment
+     * @param rxChannel channel the packet was received on, owning the views to read it with
+     * @param packet validated packet buffer, decrypted for the EncDaemon
+     */
+    static void processLSAck(NeighbourNode neighbour, InterfaceChannel rxChannel, ByteBuffer packet) {
+        if (neighbour.getState().value < ExternalStates.EXCHANCE.value)
+            return;
+
+        int acked = 0;
+        synchronized (neighbour) {
+            for (int offset = HEADER_LENGTH; offset + RLSA.LSA_HEADER_LENGTH <= packet.limit();
+                 offset += RLSA.LSA_HEADER_LENGTH) {
+                LSAHeaderView ack = rxChannel.lsaView.wrap(packet, offset);
+                LSAKey key = new LSAKey(ack.getLSType(), ack.getLSID(), ack.getAdvertisingRouter());
+
+                //Sequence number and checksum identify the instance. The ack's age is not compared.
+                RLSA lsa = neighbour.lsaRxmtList.get(key);
+                if (lsa != null && lsa.lsSeqNumber == ack.getSeqNumber() && lsa.getChecksum() == ack.getChecksum()) {
+                    neighbour.lsaRxmtList.remove(key);
+                    acked++;
+                }
+            }
+        }
+        Stat.recordAcked(acked);
+    }
+
+    /**<p><h1>Flood LSAs</h1></p>
+     * <p>Flood LSAs to every neighbour in Exchange or later, other than the neighbour they were received from. Each LSA
+     * is added to the retransmission list of the neighbour, replacing an older instance, then all are sent in updates
+     * packed up to the MTU.</p>
+     * @param lsas LSAs to flood, the instances in the LSDB
+     * @param receivedFrom neighbour the LSAs were received from, or null for LSAs originated by this node
+     */
+    static void flood(List<RLSA> lsas, NeighbourNode receivedFrom) {
+        if (lsas.isEmpty())
+            return;
+
+        for (NeighbourNode neighbour: Config.neighboursTable) {
+            if (neighbour == receivedFrom || neighbour.getState().value < ExternalStates.EXCHANCE.value)
+                continue;
+
+            synchronized (neighbour) {
+                for (RLSA lsa: lsas)
+                    neighbour.lsaRxmtList.put(lsa.getKey(), lsa);
+            }
+            sendUpdates(neighbour, lsas, false);
+            neighbour.startLSRxmtTimer();
+        }
+    }
+
+    /**<p><h1>Retransmit</h1></p>
+     * <p>Task of the LS rxmt timer of a neighbour. Resends the last request packet, if any LSA in it is still
+     * outstanding, and every LSA on the retransmission list. The timer is only started by requests and floods, not by
+     * acknowledgments or replies to requests, so other traffic to the neighbour never holds off retransmission. With
+     * nothing to resend, or the neighbour gone below Exchange, the timer is cancelled.</p>
+     * @param neighbour neighbour to retransmit to
+     */
+    static void retransmit(NeighbourNode neighbour) {
+        byte[] lastSentLSR;
+        List<RLSA> rxmtLSAs;
+        synchronized (neighbour) {
+            lastSentLSR = neighbour.lastSentLSR;
+            rxmtLSAs = new ArrayList<>(neighbour.lsaRxmtList.values());
+        }
+
+        if ((lastSentLSR == null && rxmtLSAs.isEmpty()) ||
+                neighbour.getState().value < ExternalStates.EXCHANCE.value) {
+            neighbour.timerLSRxmt.cancel();
+            return;
+        }
+
+        if (lastSentLSR != null)
+            StdDaemon.sendPacketToNeighbour(neighbour, lastSentLSR);
+        sendUpdates(neighbour, rxmtLSAs, true);
+    }
+
+    /**<p><h1>Queue Acknowledgments</h1></p>
+     * <p>Queue received LSAs to be acknowledged to a neighbour. The acknowledgments are sent by the ack timer of the
+     * neighbour, started by the first queued LSA, or straight away once a packet of acknowledgments is queued.</p>
+     * @param neighbour neighbour the LSAs were received from
+     * @param lsas LSAs to acknowledge
+     */
+    private static void queueAcks(NeighbourNode neighbour, List<RLSA> lsas) {
+        if (lsas.isEmpty())
+            return;
+
+        synchronized (neighbour) {
+            boolean isFirst = neighbour.pendingAcks.isEmpty();
+            neighbour.pendingAcks.addAll(lsas);
+            if (neighbour.pendingAcks.size() >= MAX_ACK_ENTRIES)
+                neighbour.timerAck.schedule(0);
+            else if (isFirst)
+                neighbour.timerAck.schedule(ACK_DELAY_MS);
+        }
+    }
+
+    /**<p><h1>Send Delayed Acknowledgments</h1></p>
+     * <p>Task of the ack timer of a neighbour. Sends every queued acknowledgment, in as few packets as fit the MTU.</p>
+     * @param neighbour neighbour to acknowledge LSAs to
+     */
+    static void sendDelayedAcks(NeighbourNode neighbour) {
+        List<RLSA> acks;
+        synchronized (neighbour) {
+            if (neighbour.pendingAcks.isEmpty())
+                return;
+            acks = new ArrayList<>(neighbour.pendingAcks);
+            neighbour.pendingAcks.clear();
+        }
+
+        //The neighbour went down while the acknowledgments were delayed.
+        if (neighbour.getState().value < ExternalStates.EXCHANCE.value)
+            return;
+        sendAcks(neighbour, acks);
+    }
+
+    /**<p><h1>Send Acknowledgments</h1></p>
+     * <p>Acknowledge LSAs to a neighbour now, in as few packets as fit the MTU.</p>
+     * @param neighbour neighbour to acknowledge LSAs to
+     * @param acks LSAs to acknowledge
+     */
+    private static void sendAcks(NeighbourNode neighbour, List<RLSA> acks) {
+        if (acks.isEmpty())
+            return;
+
+        List<byte[]> packetBuffers = new ArrayList<>();
+        for (int i = 0; i < acks.size(); i += MAX_ACK_ENTRIES) {
+            List<RLSA> packetAcks = acks.subList(i, Math.min(i + MAX_ACK_ENTRIES, acks.size()));
+            packetBuffers.add(PacketCodec.toArray(PacketCodec.encodeLSAck(PacketCodec.getTxBuffer(), packetAcks)));
+        }
+        sendPackets(neighbour, packetBuffers);
+    }
+
+    /**<p><h1>Send Link State Updates</h1></p>
+     * <p>Send LSAs to a neighbour, packed into as few updates as fit the MTU. An LSA too large for the MTU on its own
+     * is sent alone.</p>
+     * @param neighbour neighbour to send the LSAs to
+     * @param lsas LSAs to send
+     * @param isRetransmit true if the LSAs are resent from the retransmission list, for statistics
+     */
+    private static void sendUpdates(NeighbourNode neighbour, List<RLSA> lsas, boolean isRetransmit) {
+        if (lsas.isEmpty())
+            return;
+
+        List<byte[]> packetBuffers = new ArrayList<>();
+        int maxNoData = MTU - HEADER_LENGTH - LSU_HEADER_LENGTH;
+        int packetStart = 0;
+        int packetData = 0;
+        for (int i = 0; i < lsas.size(); i++) {
+            int length = lsas.get(i).getLength();
+            if (i > packetStart && packetData + length > maxNoData) {
+                packetBuffers.add(encodeLSUpdate(lsas.subList(packetStart, i)));
+                packetStart = i;
+                packetData = 0;
+            }
+            packetData += length;
+        }
+        packetBuffers.add(encodeLSUpdate(lsas.subList(packetStart, lsas.size())));
+
+        Stat.recordFlood(lsas.size(), packetBuffers.size(), isRetransmit);
+        sendPackets(neighbour, packetBuffers);
+    }
+
+    /**<p><h1>Encode Link State Update</h1></p>
+     * @param lsas LSAs to send in the packet
+     * @return the packet, copied out of this thread's transmit buffer
+     */
+    private static byte[] encodeLSUpdate(List<RLSA> lsas) {
+        return PacketCodec.toArray(PacketCodec.encodeLSUpdate(PacketCodec.getTxBuffer(), lsas));
+    }
+
+    /**<p><h1>Send Packets</h1></p>
+     * <p>Send packets to a neighbour, as one burst when there is more than one.</p>
+     * @param neighbour neighbour to send the packets to
+     * @param packetBuffers packets to send
+     */
+    private static void sendPackets(NeighbourNode neighbour, List<byte[]> packetBuffers) {
+        if (packetBuffers.size() == 1)
+            StdDaemon.sendPacketToNeighbour(neighbour, packetBuffers.get(0));
+        else
+            StdDaemon.sendPacketsToNeighbour(neighbour, packetBuffers);
+    }
+
+    /**<p><h1>Loading Done Event</h1></p>
+     * <p>Once every LSA on the request list of a neighbour in Loading is received, the neighbour is Full.</p>
+     * @param neighbour neighbour that has had the LoadingDone event triggered
+     */
+    private static void evLoadingDone(NeighbourNode neighbour) {
+        //Quick sanity test
+        if (neighbour.getState() != ExternalStates.LOADING)
+            return;
+
+        neighbour.setState(ExternalStates.FULL);
+    }
+    //endregion STATIC METHODS
+}
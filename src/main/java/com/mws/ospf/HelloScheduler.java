@@ -0,0 +1,92 @@
+package com.mws.ospf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**<p><h1>Hello Scheduler</h1></p>
+ * <p>Schedules the periodic hello of each enabled RouterInterface on its own ProtocolTimer, so hellos from each
+ * interface are not sent in the same instant. The first hellos are spread over the jitter window, in interface order,
+ * then each interface sends every hello interval, plus or minus a random jitter. Over time, interfaces, and nodes
+ * started at the same second, drift apart rather than sending in bursts.</p>
+ * <p>The hello and dead intervals are the values encoded in the hello header, and checked against received hellos.</p>
+ */
+class HelloScheduler {
+    //region STATIC CONSTANTS
+    static final int HELLO_INTERVAL = 10;//Seconds, sent in the hello header
+    static final int ROUTER_DEAD_INTERVAL = 40;//Seconds, sent in the hello header
+    static final int DEFAULT_JITTER_MS = 1000;
+    //endregion STATIC CONSTANTS
+
+    //region STATIC PROPERTIES
+    private static final List<ProtocolTimer> helloTimers = new ArrayList<>();
+    //endregion STATIC PROPERTIES
+
+    //region STATIC METHODS
+    /**<p><h1>Start Hello Scheduler</h1></p>
+     * <p>Create and start a hello timer for each enabled interface. Each timer runs on the timer task executor.</p>
+     * @param sendHello daemon method to send the periodic packets out of an interface
+     */
+    static synchronized void start(Consumer<RouterInterface> sendHello) {
+        List<RouterInterface> enabledInterfaces = new ArrayList<>();
+        for (RouterInterface rInt: Config.thisNode.interfaceList) {
+            if (rInt.isEnabled)
+                enabledInterfaces.add(rInt);
+        }
+
+        //Interface i sends its first hello in its own slice of the jitter window.
+        int jitterMs = Config.helloJitterMs;
+        int interfaceCount = enabledInterfaces.size();
+        for (int i = 0; i < interfaceCount; i++) {
+            RouterInterface rInt = enabledInterfaces.get(i);
+            ProtocolTimer[] helloTimer = new ProtocolTimer[1];
+            helloTimer[0] = new ProtocolTimer(() -> {
+                sendHello.accept(rInt);
+                helloTimer[0].schedule(nextHelloDelay());
+            }, TimerService.taskExecutor);
+
+            long sliceMs = jitterMs / interfaceCount;
+            helloTimer[0].schedule(i * sliceMs + randomMs(sliceMs));
+            helloTimers.add(helloTimer[0]);
+        }
+    }
+
+    /**<p><h1>Stop Hello Scheduler</h1></p>
+     * <p>Cancel every hello timer. Safe to call if the scheduler was never started.</p>
+     */
+    static synchronized void stop() {
+        for (ProtocolTimer helloTimer: helloTimers)
+            helloTimer.cancel();
+        helloTimers.clear();
+    }
+
+    /**<p><h1>Next Hello Delay</h1></p>
+     * @return the hello interval plus or minus a random jitter, in milliseconds
+     */
+    private static long nextHelloDelay() {
+        int jitterMs = Config.helloJitterMs;
+        return HELLO_INTERVAL * 1000L - jitterMs + randomMs(2L * jitterMs);
+    }
+
+    /**<p><h1>Random Milliseconds</h1></p>
+     * @param boundMs upper bound, inclusive
+     * @return a random delay from 0 to boundMs
+     */
+    private static long randomMs(long boundMs) {
+        if (boundMs <= 0)
+            return 0;
+        return ThreadLocalRandom.current().nextLong(boundMs + 1);
+    }
+
+    /**<p><h1>Are Hello Intervals Matching</h1></p>
+     * <p>A hello is only accepted from a neighbour with the same hello and dead intervals as this node, as RFC 2328
+     * section 10.5 requires.</p>
+     * @param hello view over a received hello packet
+     * @return true if both intervals match this node's
+     */
+    static boolean areIntervalsMatching(HelloView hello) {
+        return hello.getHelloInterval() == HELLO_INTERVAL && hello.getDeadInterval() == ROUTER_DEAD_INTERVAL;
+    }
+    //endregion STATIC METHODS
+}
@@ -0,0 +1,124 @@
+package com.mws.ospf;
+
+import java.nio.ByteBuffer;
+
+/**<p><h1>Hello Template</h1></p>
+ * <p>A cached, pre-checksummed hello packet for a single RouterInterface. The packet is encoded once when the daemon
+ * starts. After that, only the neighbours list is patched, when a neighbour on the interface leaves or enters the
+ * down state. Sending a hello copies the finished packet into a transmit buffer, without encoding anything.</p>
+ * <p>The header checksum is updated with the incremental method of RFC 1624, from the 16 bit words that change,
+ * rather than summing the whole packet again. A removed neighbour is replaced by the last neighbour in the list, so the
+ * list never has to be shifted.</p>
+ * <p>Only neighbours that are owned by this interface are listed, as the RFC expects of a hello sent on a network.</p>
+ */
+class HelloTemplate {
+    //region OBJECT PROPERTIES
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(PacketCodec.TX_BUFFER_SIZE);
+    private int length;
+    private int checksum;
+    //endregion OBJECT PROPERTIES
+
+    //region OBJECT METHODS
+    /**<p><h1>Hello Template Constructor</h1></p>
+     * <p>Encode the hello for an interface with no neighbours listed.</p>
+     * @param version OSPF version byte, 0x02 or 0x04
+     */
+    HelloTemplate(byte version) {
+        PacketCodec.encodeHello(buffer, version);
+        length = buffer.limit();
+        checksum = buffer.getShort(12) & 0xffff;
+    }
+
+    /**<p><h1>Add Neighbour</h1></p>
+     * <p>Append a neighbour RID to the end of the neighbours list, patching the length and checksum.</p>
+     * @param rid neighbour RID to list
+     */
+    synchronized void addNeighbour(int rid) {
+        if (indexOf(rid) != -1)
+            return;
+
+        buffer.limit(length + 4);
+        buffer.putInt(length, rid);
+        updateChecksum(0, rid);
+        setLength(length + 4);
+    }
+
+    /**<p><h1>Remove Neighbour</h1></p>
+     * <p>Remove a neighbour RID from the neighbours list, moving the last listed RID into its place, and patching the
+     * length and checksum.</p>
+     * @param rid neighbour RID to remove
+     */
+    synchronized void removeNeighbour(int rid) {
+        int offset = indexOf(rid);
+        if (offset == -1)
+            return;
+
+        int lastOffset = length - 4;
+        int lastRID = buffer.getInt(lastOffset);
+
+        //Removed slot takes the last RID, then the last slot is dropped from the packet
+        buffer.putInt(offset, lastRID);
+        updateChecksum(rid, lastRID);
+        updateChecksum(lastRID, 0);
+        setLength(lastOffset);
+        buffer.limit(length);
+    }
+
+    /**<p><h1>Write Hello</h1></p>
+     * <p>Copy the finished hello packet into a buffer from index 0, ready to send or encrypt.</p>
+     * @param out buffer to copy into
+     * @return out, flipped, holding the hello packet
+     */
+    synchronized ByteBuffer writeTo(ByteBuffer out) {
+        out.clear();
+        out.put(0, buffer, 0, length);
+        return out.limit(length);
+    }
+
+    /**<p><h1>Index of RID</h1></p>
+     * @param rid RID to find in the neighbours list
+     * @return buffer index of the RID, or -1 if it is not listed
+     */
+    private int indexOf(int rid) {
+        for (int offset = HelloView.HELLO_HEADER_LENGTH; offset < length; offset += 4) {
+            if (buffer.getInt(offset) == rid)
+                return offset;
+        }
+        return -1;
+    }
+
+    /**<p><h1>Set Packet Length</h1></p>
+     * <p>Update the packet length field, patching the checksum for the change.</p>
+     * @param newLength new packet length in bytes
+     */
+    private void setLength(int newLength) {
+        updateChecksumWord(length, newLength);
+        length = newLength;
+        buffer.putShort(2, (short) length);
+    }
+
+    /**<p><h1>Update Checksum for RID</h1></p>
+     * <p>Patch the checksum for a 4 byte field changing value. A field that is added or removed counts as 0.</p>
+     * @param oldValue previous value of the field
+     * @param newValue new value of the field
+     */
+    private void updateChecksum(int oldValue, int newValue) {
+        updateChecksumWord(oldValue >>> 16, newValue >>> 16);
+        updateChecksumWord(oldValue & 0xffff, newValue & 0xffff);
+    }
+
+    /**<p><h1>Update Checksum for Word</h1></p>
+     * <p>RFC 1624 equation 3, HC' = ~(~HC + ~m + m'). Patches the checksum for one 16 bit word changing from m to m',
+     * then stores the new checksum in the packet.</p>
+     * @param oldWord previous 16 bit word, m
+     * @param newWord new 16 bit word, m'
+     */
+    private void updateChecksumWord(int oldWord, int newWord) {
+        int sum = (~checksum & 0xffff) + (~oldWord & 0xffff) + (newWord & 0xffff);
+        sum = (sum & 0xffff) + (sum >> 16);
+        sum = (sum & 0xffff) + (sum >> 16);
+        checksum = ~sum & 0xffff;
+        buffer.putShort(12, (short) checksum);
+    }
+    //endregion OBJECT METHODS
+}
@@ -0,0 +1,77 @@
+package com.mws.ospf;
+
+import java.nio.ByteBuffer;
+
+/**<p><h1>Hello Packet View</h1></p>
+ * <p>Flyweight view over an OSPF hello packet. Reads the hello header and the list of known neighbour RIDs in place.</p>
+ */
+class HelloView extends PacketView {
+    //region STATIC CONSTANTS
+    static final int HELLO_HEADER_LENGTH = 44;//OSPF header + hello header, before the neighbours list.
+    //endregion STATIC CONSTANTS
+
+    //region OBJECT METHODS
+    @Override
+    HelloView wrap(ByteBuffer buffer) {
+        super.wrap(buffer);
+        return this;
+    }
+
+    /**<p><h1>Get Hello Interval</h1></p>
+     * @return hello interval in seconds, bytes 28 and 29
+     */
+    int getHelloInterval() {
+        return buffer.getShort(28) & 0xffff;
+    }
+
+    /**<p><h1>Get Router Priority</h1></p>
+     * @return router priority, byte 31
+     */
+    int getPriority() {
+        return buffer.get(31) & 0xff;
+    }
+
+    /**<p><h1>Get Router Dead Interval</h1></p>
+     * @return router dead interval in seconds, bytes 32 to 35
+     */
+    int getDeadInterval() {
+        return buffer.getInt(32);
+    }
+
+    /**<p><h1>Is Neighbours List Valid</h1></p>
+     * <p>The neighbours list after the hello header must be a whole number of 4 byte RIDs.</p>
+     * @return true if the packet length leaves a whole number of RIDs after the hello header
+     */
+    boolean isNeighboursListValid() {
+        return length() >= HELLO_HEADER_LENGTH && (length() - HELLO_HEADER_LENGTH) % 4 == 0;
+    }
+
+    /**<p><h1>Get Neighbour Count</h1></p>
+     * @return number of known neighbour RIDs listed in the packet
+     */
+    int getNeighbourCount() {
+        return (length() - HELLO_HEADER_LENGTH) / 4;
+    }
+
+    /**<p><h1>Get Neighbour RID</h1></p>
+     * @param index index into the neighbours list
+     * @return the neighbour RID at the index
+     */
+    int getNeighbourRID(int index) {
+        return buffer.getInt(HELLO_HEADER_LENGTH + (index * 4));
+    }
+
+    /**<p><h1>Is Neighbour Listed</h1></p>
+     * <p>Search the neighbours list for a RID, without copying the list out of the buffer.</p>
+     * @param rid RID to look for
+     * @return true if the RID is in the neighbours list
+     */
+    boolean isNeighbourListed(int rid) {
+        for (int i = 0; i < getNeighbourCount(); i++) {
+            if (getNeighbourRID(i) == rid)
+                return true;
+        }
+        return false;
+    }
+    //endregion OBJECT METHODS
+}
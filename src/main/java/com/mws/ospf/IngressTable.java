@@ -0,0 +1,126 @@
+package com.mws.ospf;
+
+import com.google.common.primitives.Ints;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**<p><h1>Ingress Table</h1></p>
+ * <p>Precomputed classifier for the source address of a received packet, built from every RouterInterface. Addresses
+ * are held as 32 bit ints, so classifying a packet compares ints and creates no objects.</p>
+ * <p>Local addresses are a sorted array, searched to drop packets this node sent itself. Interface networks are a
+ * table of network and mask pairs, sorted longest prefix first, so the first match is the longest prefix match.</p>
+ * <p>The table is immutable. It is rebuilt when the interfaces change, which is only when the config is read.</p>
+ */
+class IngressTable {
+    //region STATIC CONSTANTS
+    static final IngressTable EMPTY = new IngressTable(List.of());
+    //endregion STATIC CONSTANTS
+
+    //region STATIC METHODS
+    /**<p><h1>Prefix Length to Mask</h1></p>
+     * @param prefixLength network prefix length, 0 to 32
+     * @return network mask for the prefix length
+     */
+    private static int toMask(int prefixLength) {
+        return prefixLength == 0 ? 0 : -1 << (32 - prefixLength);
+    }
+
+    /**<p><h1>Address of Interface</h1></p>
+     * @param rInt interface with an IPv4 address
+     * @return the interface IPv4 address as an int
+     */
+    private static int addressOf(RouterInterface rInt) {
+        return Ints.fromByteArray(rInt.addrIPv4.getBytes());
+    }
+
+    /**<p><h1>Prefix Length of Interface</h1></p>
+     * @param rInt interface with an IPv4 address
+     * @return the interface network prefix length, or 32 if the address has no prefix
+     */
+    private static int prefixLengthOf(RouterInterface rInt) {
+        Integer prefixLength = rInt.addrIPv4.getNetworkPrefixLength();
+        return prefixLength == null ? 32 : prefixLength;
+    }
+    //endregion STATIC METHODS
+
+    //region OBJECT PROPERTIES
+    private final int[] localAddresses;
+    private final RouterInterface[] localInterfaces;
+    private final int[] networks;
+    private final int[] masks;
+    private final RouterInterface[] networkInterfaces;
+    //endregion OBJECT PROPERTIES
+
+    //region OBJECT METHODS
+    /**<p><h1>Ingress Table Constructor</h1></p>
+     * <p>Build the classifier from the IPv4 address and prefix of each interface. Interfaces without an IPv4 address
+     * are skipped. Where two interfaces share a network or address, the first interface is kept.</p>
+     * @param interfaces every router interface, in the order they were created
+     */
+    IngressTable(List<RouterInterface> interfaces) {
+        List<RouterInterface> ipv4Interfaces = new ArrayList<>();
+        for (RouterInterface rInt: interfaces) {
+            if (rInt.addrIPv4 != null)
+                ipv4Interfaces.add(rInt);
+        }
+
+        //region LOCAL ADDRESSES
+        RouterInterface[] byAddress = ipv4Interfaces.toArray(new RouterInterface[0]);
+        //Stable sort, so the first created interface is first for equal addresses.
+        Arrays.sort(byAddress, Comparator.comparingInt(IngressTable::addressOf));
+
+        localAddresses = new int[byAddress.length];
+        localInterfaces = new RouterInterface[byAddress.length];
+        for (int i = 0; i < byAddress.length; i++) {
+            localAddresses[i] = addressOf(byAddress[i]);
+            localInterfaces[i] = byAddress[i];
+        }
+        //endregion LOCAL ADDRESSES
+
+        //region NETWORKS
+        RouterInterface[] byPrefix = ipv4Interfaces.toArray(new RouterInterface[0]);
+        Arrays.sort(byPrefix, Comparator.comparingInt(IngressTable::prefixLengthOf).reversed());
+
+        networks = new int[byPrefix.length];
+        masks = new int[byPrefix.length];
+        networkInterfaces = new RouterInterface[byPrefix.length];
+        for (int i = 0; i < byPrefix.length; i++) {
+            masks[i] = toMask(prefixLengthOf(byPrefix[i]));
+            networks[i] = addressOf(byPrefix[i]) & masks[i];
+            networkInterfaces[i] = byPrefix[i];
+        }
+        //endregion NETWORKS
+    }
+
+    /**<p><h1>Get Interface by Local Address</h1></p>
+     * @param address IPv4 address as an int
+     * @return the interface assigned the address, or null if the address is not local to this node
+     */
+    RouterInterface getInterfaceByAddress(int address) {
+        int i = Arrays.binarySearch(localAddresses, address);
+        if (i < 0)
+            return null;
+
+        //Binary search may land on any equal address, so step back to the first created interface.
+        while (i > 0 && localAddresses[i - 1] == address)
+            i--;
+        return localInterfaces[i];
+    }
+
+    /**<p><h1>Get Interface by Network</h1></p>
+     * <p>Longest prefix match of an address against the network of each interface.</p>
+     * @param address IPv4 address as an int
+     * @return the interface with the longest matching network, or null if no interface network holds the address
+     */
+    RouterInterface getInterfaceByNetwork(int address) {
+        for (int i = 0; i < networks.length; i++) {
+            if ((address & masks[i]) == networks[i])
+                return networkInterfaces[i];
+        }
+        return null;
+    }
+    //endregion OBJECT METHODS
+}
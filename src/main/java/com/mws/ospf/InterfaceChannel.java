@@ -0,0 +1,266 @@
+package com.mws.ospf;
+
+import com.google.common.primitives.Ints;
+import com.sun.management.ThreadMXBean;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**<p><h1>Interface Channel</h1></p>
+ * <p>A non-blocking multicast channel for a single RouterInterface. The channel is joined to the OSPF multicast group
+ * on its own interface only, and owns a single worker thread which decodes and processes the packets received on it.
+ * A slow packet on one interface (a large DBD, or a decrypt) only holds up that interface's worker.</p>
+ * <p>Reads are performed by the PacketEngine selector thread, straight into a pooled direct buffer, which is queued for
+ * the worker. The worker reads the packet in place through the flyweight views owned by this channel, and returns the
+ * buffer to the pool once the packet is processed. In the steady state nothing is allocated per packet by the channel
+ * itself. The bytes the worker does allocate are measured per packet, and reported in the statistics.</p>
+ * <p>If every pooled buffer is in use the datagram is dropped and counted, as OSPF already copes with loss through
+ * retransmission.</p>
+ * <p>Sending uses a separate blocking channel, bound to the interface address with the multicast interface set once
+ * at construction. Any thread may send, and a batch of packets is always sent without other packets in between.</p>
+ */
+class InterfaceChannel {
+    //region STATIC CONSTANTS
+    static final int RX_BUFFER_SIZE = 4000;
+    static final int RX_POOL_SIZE = 128;
+    private static final ThreadMXBean threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    //endregion STATIC CONSTANTS
+
+    //region OBJECT PROPERTIES
+    final RouterInterface rInt;
+    private final DatagramChannel channel;
+    private final DatagramChannel txChannel;
+    private final InetSocketAddress groupAddr;
+    private final PacketHandler packetHandler;
+    private final BufferPool rxPool = new BufferPool(RX_POOL_SIZE, RX_BUFFER_SIZE);
+    private final ArrayBlockingQueue<PacketBuffer> rxQueue = new ArrayBlockingQueue<>(RX_POOL_SIZE);
+    private final ByteBuffer discardBuffer = ByteBuffer.allocateDirect(RX_BUFFER_SIZE);
+    private final Thread threadWorker;
+
+    //Worker owned. Only used on the worker thread, so they are reused without locking.
+    final PacketView packetView = new PacketView();
+    final HelloView helloView = new HelloView();
+    final DBDView dbdView = new DBDView();
+    final LSAHeaderView lsaView = new LSAHeaderView();
+    final ByteBuffer decryptBuffer = ByteBuffer.allocateDirect(RX_BUFFER_SIZE);
+    private InetAddress lastSource;//The channel reuses the source object while the sender is unchanged.
+    private int lastSourceAddress;
+
+    //Statistics. Each is only written by one thread.
+    volatile long rxDropped = 0;
+    volatile long rxPackets = 0;
+    volatile long rxAllocatedBytes = 0;
+    //endregion OBJECT PROPERTIES
+
+    //region OBJECT METHODS
+    /**<p><h1>Interface Channel Constructor</h1></p>
+     * <p>Opens a datagram channel for the provided interface, binds it to the OSPF port, and joins the multicast group
+     * on that interface. The channel is left in non-blocking mode, ready to be registered with a selector. The worker
+     * thread is started straight away, and waits for packets.</p>
+     * @param rInt the router interface this channel receives for
+     * @param groupAddr the OSPF multicast group address and port
+     * @param packetHandler daemon method called on the worker thread for each received packet
+     * @throws IOException if the channel could not be opened, bound or joined to the group
+     */
+    InterfaceChannel(RouterInterface rInt, InetSocketAddress groupAddr, PacketHandler packetHandler)
+            throws IOException {
+        this.rInt = rInt;
+        this.groupAddr = groupAddr;
+        this.packetHandler = packetHandler;
+
+        //Every interface channel shares the OSPF port, so address reuse must be set before binding.
+        NetworkInterface netInt = rInt.toNetworkInterface();
+        channel = DatagramChannel.open(StandardProtocolFamily.INET);
+        channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        channel.bind(new InetSocketAddress(groupAddr.getPort()));
+        channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, netInt);
+        channel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, 1);
+        channel.join(groupAddr.getAddress(), netInt);
+        channel.configureBlocking(false);
+
+        //Send channel, bound once to this interface's address. The output interface never needs to be set again.
+        txChannel = DatagramChannel.open(StandardProtocolFamily.INET);
+        txChannel.bind(new InetSocketAddress(rInt.addrIPv4.toInetAddress(), 0));
+        txChannel.setOption(StandardSocketOptions.IP_MULTICAST_IF, netInt);
+        txChannel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, 1);
+
+        //Single worker thread, so packets on one interface are still processed in the order they arrived.
+        threadWorker = new Thread(this::workerThread, "Thread-Receive-" + rInt.getName());
+        threadWorker.start();
+    }
+
+    /**<p><h1>Register with Selector</h1></p>
+     * <p>Register this channel for read events with the PacketEngine selector. This object is attached to the key, so
+     * the selector thread can find the channel to read from.</p>
+     * @param selector the selector to register with
+     * @throws ClosedChannelException if the channel was closed before registering
+     */
+    void register(Selector selector) throws ClosedChannelException {
+        channel.register(selector, SelectionKey.OP_READ, this);
+    }
+
+    /**<p><h1>Read Datagrams</h1></p>
+     * <p>Called by the selector thread when the channel is readable. Drains every datagram waiting on the channel into
+     * pooled buffers, passing each one onto the worker queue. Never blocks.</p>
+     * @throws IOException if the channel read fails
+     */
+    void read() throws IOException {
+        while (true) {
+            PacketBuffer pBuffer = rxPool.acquire();
+
+            //Every buffer is waiting on the worker. Still drain the datagram from the channel, then drop it.
+            if (pBuffer == null) {
+                discardBuffer.clear();
+                if (channel.receive(discardBuffer) == null)
+                    return;
+                rxDropped++;
+                continue;
+            }
+
+            SocketAddress source = channel.receive(pBuffer.buffer);
+            if (source == null) {
+                rxPool.release(pBuffer);
+                return;
+            }
+
+            pBuffer.buffer.flip();
+            pBuffer.source = ((InetSocketAddress) source).getAddress();
+
+            //Queue is the same size as the pool, so there is always room for an acquired buffer.
+            rxQueue.offer(pBuffer);
+        }
+    }
+
+    /**<p><h1>Worker Thread</h1></p>
+     * <p>Thread method, takes received buffers from the queue in order, decodes and processes each, then returns the
+     * buffer to the pool. Records the bytes allocated on this thread while processing each packet. Runs until the
+     * thread is interrupted.</p>
+     */
+    private void workerThread() {
+        while (!Thread.currentThread().isInterrupted()) {
+            PacketBuffer pBuffer;
+            try {
+                pBuffer = rxQueue.take();
+            } catch (InterruptedException ex) {
+                return;
+            }
+
+            long allocatedBefore = threadBean.getCurrentThreadAllocatedBytes();
+            try {
+                decodePacket(pBuffer);
+            } catch (RuntimeException ex) {
+                //A malformed packet should not stop the interface from receiving.
+                Launcher.printToUser("Exception processing a packet received on " + rInt.getName());
+                ex.printStackTrace();
+            } finally {
+                rxPool.release(pBuffer);
+            }
+            rxAllocatedBytes += threadBean.getCurrentThreadAllocatedBytes() - allocatedBefore;
+            rxPackets++;
+        }
+    }
+
+    /**<p><h1>Decode Packet</h1></p>
+     * <p>First stage on the worker thread. Converts the source address to an int, and drops packets that did not come
+     * from this channel's network. Remaining packets are passed onto the daemon packet handler.</p>
+     * <p>A neighbour sends many packets in a row, and the channel returns the same source object for each, so the
+     * converted address of the last source is reused when the source object is the same.</p>
+     * @param pBuffer received packet buffer and source address
+     */
+    private void decodePacket(PacketBuffer pBuffer) {
+        if (pBuffer.source != lastSource) {
+            if (!(pBuffer.source instanceof Inet4Address))
+                return;
+            lastSourceAddress = Ints.fromByteArray(pBuffer.source.getAddress());
+            lastSource = pBuffer.source;
+        }
+        int pSource = lastSourceAddress;
+
+        /*Group traffic is delivered to every socket bound to the OSPF port, not only the socket joined on the receiving
+        interface. Only handle packets from this channel's own network, the owning channel will handle the rest.*/
+        if (RouterInterface.getInterfaceByIPNetwork(pSource) != rInt)
+            return;
+
+        packetHandler.handlePacket(this, pBuffer.buffer, pSource);
+    }
+
+    /**<p><h1>Get Allocation per Packet</h1></p>
+     * <p>Average bytes allocated by the worker thread while processing a received packet.</p>
+     * @return bytes allocated per packet, or 0 if no packets have been received
+     */
+    double getAllocatedBytesPerPacket() {
+        long packets = rxPackets;
+        if (packets == 0)
+            return 0;
+        return (double) rxAllocatedBytes / packets;
+    }
+
+    /**<p><h1>Send Packet</h1></p>
+     * <p>Send a single packet buffer to the OSPF multicast group out of this interface. Thread safe.</p>
+     * @param packetBuffer complete packet buffer to send
+     * @throws IOException if the send fails
+     */
+    void send(byte[] packetBuffer) throws IOException {
+        synchronized (txChannel) {
+            txChannel.send(ByteBuffer.wrap(packetBuffer), groupAddr);
+        }
+    }
+
+    /**<p><h1>Send Packet Buffer</h1></p>
+     * <p>Send an encoded packet to the OSPF multicast group out of this interface, from the buffer position to the
+     * limit. The buffer position is left unchanged, so the same buffer can be sent out of several interfaces. Thread
+     * safe.</p>
+     * @param packet buffer holding the complete packet
+     * @throws IOException if the send fails
+     */
+    void send(ByteBuffer packet) throws IOException {
+        synchronized (txChannel) {
+            sendUnlocked(packet);
+        }
+    }
+
+    /**<p><h1>Send Packet Batch</h1></p>
+     * <p>Send a batch of packet buffers to the OSPF multicast group out of this interface, in list order. The send lock
+     * is held for the whole batch, so packets sent by other threads are not interleaved with the batch. Thread safe.</p>
+     * @param packets buffers each holding a complete packet
+     * @throws IOException if a send fails, in which case the rest of the batch is not sent
+     */
+    void send(List<ByteBuffer> packets) throws IOException {
+        synchronized (txChannel) {
+            for (ByteBuffer packet : packets)
+                sendUnlocked(packet);
+        }
+    }
+
+    /**<p><h1>Send Without Lock</h1></p>
+     * <p>Send a packet buffer, then restore its position. Callers must hold the send lock.</p>
+     * @param packet buffer holding the complete packet
+     * @throws IOException if the send fails
+     */
+    private void sendUnlocked(ByteBuffer packet) throws IOException {
+        int position = packet.position();
+        txChannel.send(packet, groupAddr);
+        packet.position(position);
+    }
+
+    /**<p><h1>Close Channel</h1></p>
+     * <p>Stops the worker thread and closes the datagram channels. Exceptions on close are ignored, as this is only
+     * called when the daemon is stopping.</p>
+     */
+    void close() {
+        threadWorker.interrupt();
+        try {
+            channel.close();
+            txChannel.close();
+        } catch (IOException ignored) {}
+    }
+    //endregion OBJECT METHODS
+}
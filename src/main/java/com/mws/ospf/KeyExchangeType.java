@@ -0,0 +1,57 @@
+package com.mws.ospf;
+
+/**<p><h1>Key Exchange Types</h1></p>
+ * <p>An enumerable list of the key agreements used to make the shared secret with a neighbour. The code of each type is
+ * sent in the key size field of the DH PubKey packet, so both neighbours can check they use the same agreement.</p>
+ * <p>For finite field Diffie-Hellman the code is the key size, 2048, as in the original packet. X25519 uses 25519.</p>
+ */
+enum KeyExchangeType {
+    /**<p><h1>Diffie-Hellman 2048</h1></p>
+     * <p>Finite field Diffie-Hellman with a 2048 bit key. The public key is sent x509 encoded.</p>
+     */
+    DH_2048(2048, "DH"),
+    /**<p><h1>X25519</h1></p>
+     * <p>Elliptic curve Diffie-Hellman on Curve25519. The public key is sent as the raw 32 byte u coordinate.</p>
+     */
+    X25519(25519, "X25519");
+
+    static final int X25519_KEY_LENGTH = 32;
+
+    final int code;//Sent in the key size field of the DH PubKey packet
+    final String algorithm;//KeyPairGenerator, KeyAgreement and KeyFactory algorithm
+
+    /**<p><h1>Key Exchange Type Constructor</h1></p>
+     * @param code value of the type in the key size field of the DH PubKey packet
+     * @param algorithm JCE algorithm name
+     */
+    KeyExchangeType(int code, String algorithm) {
+        this.code = code;
+        this.algorithm = algorithm;
+    }
+
+    /**<p><h1>Convert ENUM to String</h1></p>
+     * <p>Convert enum type to string, based on the specific enum. Useful for storage in a file.</p>
+     * @return a text string that represents the string value.
+     */
+    @Override
+    public String toString() {
+        return switch (this) {
+            case DH_2048 -> "DH-2048";
+            case X25519 -> "X25519";
+        };
+    }
+
+    /**<p><h1>From String</h1></p>
+     * <p>Map of a string value to a key exchange type ENUM. Values identical to that returned by toString()</p>
+     * @param type String value to map to a KeyExchangeType ENUM
+     * @return the associated ENUM KeyExchangeType
+     * @throws IllegalArgumentException parameter type is not valid
+     */
+    static KeyExchangeType fromString(String type) {
+        for (KeyExchangeType keyExchangeType: values()) {
+            if (keyExchangeType.toString().equals(type))
+                return keyExchangeType;
+        }
+        throw new IllegalArgumentException("Unexpected value: " + type);
+    }
+}
@@ -0,0 +1,136 @@
+package com.mws.ospf;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**<p><h1>Key Pair Pool</h1></p>
+ * <p>Bounded pool of key pairs generated ahead of time, for the key exchange type in the config. A DHExchange takes a
+ * key pair from the pool, rather than generating one itself, so re-keying after a neighbour goes down does not wait
+ * for a keygen.</p>
+ * <p>Key pairs are generated on a background executor, with a thread per core, up to the pool capacity. Each take
+ * queues a refill, so the pool is kept full. When the pool is empty, a take waits for the next key pair being made,
+ * rather than generating one more. At startup, the key pairs of every interface are generated in parallel.</p>
+ * <p>Timer tasks must not wait for a keygen, as they share one thread, so they poll the pool instead of taking.</p>
+ * <p>A key pair is only ever handed out once.</p>
+ */
+class KeyPairPool {
+    //region STATIC CONSTANTS
+    static final int SPARE_KEY_PAIRS = 2;//Ready for re-keying, past one key pair per interface
+    //endregion STATIC CONSTANTS
+
+    //region STATIC PROPERTIES
+    private static volatile BlockingQueue<KeyPair> keyPairs;
+    private static ExecutorService keygenExecutor;
+    private static KeyExchangeType keyExchangeType;
+    private static int capacity;
+    private static int pendingKeyPairs = 0;//Queued or generating. Guarded by KeyPairPool.class
+    //endregion STATIC PROPERTIES
+
+    //region STATIC METHODS
+    /**<p><h1>Start Key Pair Pool</h1></p>
+     * <p>Create the pool and begin filling it in the background, for the key exchange type in the config. Does
+     * nothing if the pool was already started.</p>
+     * @param capacity most key pairs held at once, at least 1
+     */
+    static synchronized void start(int capacity) {
+        if (keyPairs != null)
+            return;
+
+        KeyPairPool.capacity = Math.max(1, capacity);
+        keyExchangeType = Config.keyExchangeType;
+        keyPairs = new ArrayBlockingQueue<>(KeyPairPool.capacity);
+
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), KeyPairPool.capacity);
+        keygenExecutor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "Thread-KeyPair-Pool");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        refill();
+    }
+
+    /**<p><h1>Take Key Pair</h1></p>
+     * <p>Take a key pair from the pool, waiting for one to be made if the pool is empty. The pool is started with a
+     * capacity of 1 if it was not already started.</p>
+     * @return a key pair, for the key exchange type in the config, never handed out before
+     */
+    static KeyPair take() {
+        if (keyPairs == null)
+            start(1);
+
+        KeyPair keyPair = keyPairs.poll();
+        if (keyPair == null) {
+            refill();
+            try {
+                keyPair = keyPairs.take();
+            } catch (InterruptedException ex) {
+                //Can't wait for the pool, so make one on this thread instead.
+                Thread.currentThread().interrupt();
+                keyPair = generateKeyPair();
+            }
+        }
+
+        refill();
+        return keyPair;
+    }
+
+    /**<p><h1>Poll Key Pair</h1></p>
+     * <p>Take a key pair from the pool if one is ready, without waiting. A refill is queued either way. The pool is
+     * started with a capacity of 1 if it was not already started.</p>
+     * @return a key pair never handed out before, or null if the pool is empty
+     */
+    static KeyPair poll() {
+        if (keyPairs == null)
+            start(1);
+
+        KeyPair keyPair = keyPairs.poll();
+        refill();
+        return keyPair;
+    }
+
+    /**<p><h1>Refill Pool</h1></p>
+     * <p>Queue a keygen for each free space in the pool not already being filled.</p>
+     */
+    private static synchronized void refill() {
+        while (keyPairs.size() + pendingKeyPairs < capacity) {
+            pendingKeyPairs++;
+            keygenExecutor.execute(() -> {
+                KeyPair keyPair = generateKeyPair();
+                synchronized (KeyPairPool.class) {
+                    pendingKeyPairs--;
+                    keyPairs.offer(keyPair);
+                }
+            });
+        }
+    }
+
+    /**<p><h1>Generate Key Pair</h1></p>
+     * <p>Generate one key pair for the key exchange type of the pool.</p>
+     * <p>Manually handles exceptions.</p>
+     * @return a new key pair
+     */
+    private static KeyPair generateKeyPair() {
+        try {
+            KeyPairGenerator kpg = KeyPairGenerator.getInstance(keyExchangeType.algorithm);
+
+            //X25519 has a fixed key size, so only DH is initialised with one.
+            if (keyExchangeType == KeyExchangeType.DH_2048)
+                kpg.initialize(keyExchangeType.code);
+            return kpg.generateKeyPair();
+        } catch (NoSuchAlgorithmException ex) {
+            // Ex on code:  KeyPairGenerator.getInstance(keyExchangeType.algorithm);
+            StdDaemon.handleDaemonError("UNLIKELY EXCEPTION: NoSuchAlgorithm \"" + keyExchangeType.algorithm + "\"",
+                    ex);
+        } catch (Exception ex) {
+            StdDaemon.handleDaemonError("KeyPairPool: Unexpected exception", ex);
+        }
+        return null;
+    }
+    //endregion STATIC METHODS
+}
@@ -0,0 +1,27 @@
+package com.mws.ospf;
+
+/**<p><h1>LSA Change</h1></p>
+ * <p>One change to the LSDB, logged by the LSDB with the snapshot version it made. Readers such as SPF ask the LSDB
+ * for the changes since the version they last saw, and only work on the LSAs that changed.</p>
+ * @param version version of the LSDB snapshot published by the change
+ * @param type type of change
+ * @param oldLSA instance replaced or removed, or null if the LSA was added
+ * @param newLSA instance added, or null if the LSA was removed
+ */
+record LSAChange(long version, Type type, RLSA oldLSA, RLSA newLSA) {
+    /**<p><h1>Get LSA Key</h1></p>
+     * @return the key of the LSA that changed
+     */
+    LSAKey getKey() {
+        return newLSA != null ? newLSA.getKey() : oldLSA.getKey();
+    }
+
+    /**<p><h1>LSA Change Types</h1></p>
+     * <p>An enumerable list of the ways an LSA in the LSDB can change.</p>
+     */
+    enum Type {
+        ADDED,
+        REPLACED,
+        MAX_AGED
+    }
+}
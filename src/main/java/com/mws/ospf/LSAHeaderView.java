@@ -0,0 +1,150 @@
+package com.mws.ospf;
+
+import java.nio.ByteBuffer;
+
+import static com.mws.ospf.LinkData.LINK_DATA_SIZE;
+import static com.mws.ospf.RLSA.LSA_HEADER_LENGTH;
+
+/**<p><h1>LSA Header View</h1></p>
+ * <p>Flyweight view over an LSA held in a ByteBuffer at a given offset, such as one of the LSA headers listed in a DBD
+ * packet. Reads the LSA header, and router LSA link data if present, in place.</p>
+ */
+class LSAHeaderView {
+    //region OBJECT PROPERTIES
+    private ByteBuffer buffer;
+    private int offset;
+    //endregion OBJECT PROPERTIES
+
+    //region OBJECT METHODS
+    /**<p><h1>Wrap Buffer</h1></p>
+     * <p>Point this view at an LSA starting at the given buffer index.</p>
+     * @param buffer buffer holding the LSA
+     * @param offset index of the first byte of the LSA header
+     * @return this view
+     */
+    LSAHeaderView wrap(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+        return this;
+    }
+
+    /**<p><h1>Get LS Age</h1></p>
+     * @return LS age in seconds, as received
+     */
+    int getAge() {
+        return buffer.getShort(offset) & 0xffff;
+    }
+
+    /**<p><h1>Get LS Type</h1></p>
+     * @return LS type byte, 1 for a router LSA
+     */
+    byte getLSType() {
+        return buffer.get(offset + 3);
+    }
+
+    /**<p><h1>Get Link State ID</h1></p>
+     * @return link state ID, the originating RID for a router LSA
+     */
+    int getLSID() {
+        return buffer.getInt(offset + 4);
+    }
+
+    /**<p><h1>Get Advertising Router</h1></p>
+     * @return RID of the router that originated the LSA
+     */
+    int getAdvertisingRouter() {
+        return buffer.getInt(offset + 8);
+    }
+
+    /**<p><h1>Get LS Sequence Number</h1></p>
+     * @return LS sequence number
+     */
+    int getSeqNumber() {
+        return buffer.getInt(offset + 12);
+    }
+
+    /**<p><h1>Get LS Checksum</h1></p>
+     * @return fletcher checksum reported in the header
+     */
+    int getChecksum() {
+        return buffer.getShort(offset + 16) & 0xffff;
+    }
+
+    /**<p><h1>Get LSA Length</h1></p>
+     * @return LSA length reported in the header, including the header
+     */
+    int getLength() {
+        return buffer.getShort(offset + 18) & 0xffff;
+    }
+
+    /**<p><h1>Is Length Valid</h1></p>
+     * <p>Check the LSA header fits in the buffer, and that the length it reports is at least a header and does not run
+     * past the buffer limit. Must be checked before trusting any other field.</p>
+     * @return true if the whole reported LSA is inside the buffer
+     */
+    boolean isLengthValid() {
+        if (offset + LSA_HEADER_LENGTH > buffer.limit())
+            return false;
+        return getLength() >= LSA_HEADER_LENGTH && offset + getLength() <= buffer.limit();
+    }
+
+    /**<p><h1>Is Header Valid</h1></p>
+     * <p>Check the LSA header fits in the buffer, and that the length it reports is at least a header. For a header
+     * listed without its LSA, as in a DBD packet, where the reported length is of an LSA not in the buffer.</p>
+     * @return true if the header is inside the buffer
+     */
+    boolean isHeaderValid() {
+        return offset + LSA_HEADER_LENGTH <= buffer.limit() && getLength() >= LSA_HEADER_LENGTH;
+    }
+
+    /**<p><h1>Get Number of Links</h1></p>
+     * <p>Router LSA number of links field. Only valid when the LSA is longer than the header.</p>
+     * @return number of links reported
+     */
+    int getLinkCount() {
+        return buffer.getShort(offset + 22) & 0xffff;
+    }
+
+    /**<p><h1>Get Link ID</h1></p>
+     * @param index link index
+     * @return link ID of the link, a neighbour RID for p2p links
+     */
+    int getLinkID(int index) {
+        return buffer.getInt(linkOffset(index));
+    }
+
+    /**<p><h1>Get Link Data</h1></p>
+     * @param index link index
+     * @return link data of the link
+     */
+    int getLinkData(int index) {
+        return buffer.getInt(linkOffset(index) + 4);
+    }
+
+    /**<p><h1>Get Link Metric</h1></p>
+     * @param index link index
+     * @return link metric, an unsigned short
+     */
+    int getLinkMetric(int index) {
+        return buffer.getShort(linkOffset(index) + 10) & 0xffff;
+    }
+
+    /**<p><h1>Is Checksum Correct</h1></p>
+     * <p>Calculate the fletcher checksum over the LSA in place and compare it to the checksum field. LS age and the
+     * checksum field itself are treated as 0, the same as RLSA does when making the checksum. The buffer is not
+     * modified.</p>
+     * @return true if the checksum field matches the LSA data
+     */
+    boolean isChecksumCorrect() {
+        return getChecksum() == RLSA.fletcherChecksum16(buffer, offset, getLength());
+    }
+
+    /**<p><h1>Link Offset</h1></p>
+     * @param index link index
+     * @return buffer index of the start of a link data entry
+     */
+    private int linkOffset(int index) {
+        return offset + LSA_HEADER_LENGTH + 4 + (index * LINK_DATA_SIZE);
+    }
+    //endregion OBJECT METHODS
+}
@@ -0,0 +1,15 @@
+package com.mws.ospf;
+
+/**<p><h1>LSA Key</h1></p>
+ * <p>Identifies an LSA in the LSDB, by the three fields RFC 2328 section 12.1 uses to tell LSAs apart: LS type, Link
+ * State ID and Advertising Router. Two instances of the same LSA, with different sequence numbers, have equal keys.</p>
+ * @param lsType LS type, 1 for a router LSA
+ * @param lsID Link State ID
+ * @param advertisingRouter RID of the router that originated the LSA
+ */
+record LSAKey(byte lsType, int lsID, int advertisingRouter) {
+    @Override
+    public String toString() {
+        return lsType + ", " + Node.ridToString(lsID) + ", " + Node.ridToString(advertisingRouter);
+    }
+}
@@ -2,54 +2,161 @@ package com.mws.ospf;
 
 import com.google.common.primitives.Ints;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Map;
+import java.util.PriorityQueue;
 
 /**<p><h1>LSDB</h1></p>
  * <p>The Link-State Database. Stores all data for the node, derived from itself and from </p>
+ * <p>LSAs are indexed by their LSAKey, so looking up, adding, replacing and removing an LSA are each O(1). The index
+ * keeps LSAs in the order they were first added. A newer instance of an LSA replaces the old one in place, so the
+ * order only changes when an LSA is removed. The local LSA is added first, so is first in the order.</p>
+ * <p>LSAs are not aged by a periodic scan. The age of an LSA is worked out from a timestamp when it is read, and a
+ * queue ordered by the time each LSA reaches MaxAge drives a single timer, set for the earliest. Between LSAs reaching
+ * MaxAge, the LSDB does no work however many LSAs it holds. An LSA replaced or removed stays in the queue, and is
+ * skipped when it reaches the head. Every LSA in the LSDB has one queue entry, so the rest are stale, and the queue is
+ * compacted once stale entries outnumber the LSAs, keeping it within twice the size of the LSDB however much churn.
+ * </p>
+ * <p>Changes are made under the LSDB lock, as the LSDB is changed by the interface workers and the timer tasks. Each
+ * operation publishes a new immutable Snapshot, with a higher version. Readers, such as the DBD exchange and the UI,
+ * take the current snapshot without locking, and see every LSA as of one version, however the LSDB changes while they
+ * read. Copying the index is O(n), so the LSAs of one LSU packet are installed together, and publish one snapshot.
+ * </p>
+ * <p>Each change is also logged as an LSAChange, added, replaced or MaxAged, with the version it published. A reader
+ * that keeps its own state, such as SPF, asks for the changes since the version it last saw, rather than walking every
+ * LSA again. The log is bounded, so a reader too far behind is told to start over.</p>
  */
 class LSDB {
+    //region STATIC CONSTANTS
+    static final int CHANGE_LOG_SIZE = 1024;
+    //endregion STATIC CONSTANTS
+
     //region OBJECT PROPERTIES
-    /**<p><h1>Router LSA List</h1></p>
-     *<p>Stores a list of router LSAs known to this node. The first item (index 0) will always be the local LSA data</p>
+    /**<p><h1>Router LSA Index</h1></p>
+     *<p>Stores the router LSAs known to this node, keyed by LSA key, in the order they were added.</p>
      */
-     List<RLSA> routerLSAs = new ArrayList<>();
-    private final Timer ageTimer = new Timer("LSDB-Age-Timer");
+    private final LinkedHashMap<LSAKey, RLSA> routerLSAs = new LinkedHashMap<>();
+    private RLSA localRLSA;
+    private volatile Snapshot snapshot = new Snapshot(0, List.of(), Map.of());
+    private final ArrayDeque<LSAChange> changeLog = new ArrayDeque<>(CHANGE_LOG_SIZE);
+    private long version = 0;//Number of changes logged. Published with the next snapshot
+    private int unpublishedChanges = 0;
+    private final PriorityQueue<RLSA> maxAgeQueue = new PriorityQueue<>(Comparator.comparingLong(RLSA::getMaxAgeAtMs));
+    private final ProtocolTimer maxAgeTimer = new ProtocolTimer(this::expireMaxAgeLSAs, TimerService.taskExecutor);
     //endregion OBJECT PROPERTIES
 
     //region OBJECT METHODS
     /**<p><h1>Construct Link-State DataBase</h1></p>
-     * <p>Construct a LSDB object. Sets up the first local LSA, and sets up the aging timer.</p>
+     * <p>Construct a LSDB object. Sets up the first local LSA, which also sets the MaxAge timer.</p>
      */
     public LSDB() {
         setupLocalRLSA();
+    }
+
+    /**<p><h1>Expire MaxAge LSAs</h1></p>
+     * <p>Timer task for the MaxAge timer. Removes every LSA that has reached MaxAge, then sets the timer for the next
+     * LSA to reach MaxAge.</p>
+     * <p>The local RLSA should not be blindly deleted, so the LSDB remove method resets the local RLSA. The new local
+     * RLSA is flooded once the LSDB lock is released. Every LSA expired in one pass is published in one snapshot.</p>
+     */
+    private void expireMaxAgeLSAs() {
+        RLSA originatedRLSA = null;
+        synchronized (this) {
+            long nowMs = RLSA.nowMs();
+            while (!maxAgeQueue.isEmpty() && maxAgeQueue.peek().getMaxAgeAtMs() <= nowMs) {
+                RLSA lsa = maxAgeQueue.poll();
+
+                //Skip LSAs already replaced or removed.
+                if (routerLSAs.get(lsa.getKey()) != lsa)
+                    continue;
 
-        //Setup timer, age all LSAs every second, starting in 1 second
-        ageTimer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                for (RLSA lsa: routerLSAs) {
-                    lsa.ageLSA();
-                }
+                boolean isLocal = lsa == localRLSA;
+                removeLSA(lsa);
+                if (isLocal)
+                    originatedRLSA = localRLSA;
             }
-        },1000,1000);
+            scheduleMaxAgeTimer();
+            publish();
+        }
+
+        if (originatedRLSA != null)
+            Flooding.flood(List.of(originatedRLSA), null);
+    }
+
+    /**<p><h1>Schedule MaxAge Timer</h1></p>
+     * <p>Set the MaxAge timer for the LSA at the head of the queue, or cancel it if the queue is empty.</p>
+     */
+    private void scheduleMaxAgeTimer() {
+        RLSA head = maxAgeQueue.peek();
+        if (head == null)
+            maxAgeTimer.cancel();
+        else
+            maxAgeTimer.schedule(Math.max(0, head.getMaxAgeAtMs() - RLSA.nowMs()));
+    }
+
+    /**<p><h1>Add to MaxAge Queue</h1></p>
+     * <p>Queue an LSA to be removed at MaxAge. The timer is only reset if the LSA is the new head of the queue. Called
+     * after the LSA is put in the index.</p>
+     * @param lsa LSA added to the LSDB
+     */
+    private void queueMaxAge(RLSA lsa) {
+        maxAgeQueue.add(lsa);
+        if (maxAgeQueue.size() - routerLSAs.size() > routerLSAs.size()) {
+            compactMaxAgeQueue();
+            return;
+        }
+        if (maxAgeQueue.peek() == lsa)
+            scheduleMaxAgeTimer();
+    }
+
+    /**<p><h1>Compact MaxAge Queue</h1></p>
+     * <p>Remove the entries of LSAs replaced or removed from the queue, in one pass, then set the timer for the new
+     * head. Run once stale entries outnumber the LSAs, so the cost is spread over the changes that made them.</p>
+     */
+    private void compactMaxAgeQueue() {
+        maxAgeQueue.removeIf(lsa -> routerLSAs.get(lsa.getKey()) != lsa);
+        scheduleMaxAgeTimer();
     }
 
     /**<p><h1>Setup the Local LSA</h1></p>
      * <p>Set up the LSA that represents this node's data. Method will create an LSA if it was not already existing, or
      * remake it and replace it if it now contains new data.</p>
+     * <p>The new LSA is not flooded. Use Flooding.originateLocalRLSA to set up and flood it.</p>
+     * @return the new local LSA
      */
-     void setupLocalRLSA() {
+     synchronized RLSA setupLocalRLSA() {
+        return setupLocalRLSA(RLSA.INITIAL_SEQUENCE_NUMBER - 1);
+    }
+
+    /**<p><h1>Setup the Local LSA After Sequence Number</h1></p>
+     * <p>Set up the LSA that represents this node's data, with a sequence number past both the current local LSA and
+     * a sequence number seen from another node. Used when a neighbour floods an instance of the local LSA newer than
+     * the LSDB copy, such as one originated before this node restarted, RFC 2328 section 13.4.</p>
+     * @param seenSeqNumber sequence number the new LSA must be past
+     * @return the new local LSA
+     */
+     synchronized RLSA setupLocalRLSA(int seenSeqNumber) {
+        originateLocalRLSA(seenSeqNumber);
+        publish();
+        return localRLSA;
+    }
+
+    /**<p><h1>Originate the Local LSA</h1></p>
+     * <p>Make a new local LSA, past a sequence number, and put it in the index, without publishing. Called under the
+     * LSDB lock.</p>
+     * @param seenSeqNumber sequence number the new LSA must be past
+     */
+    private void originateLocalRLSA(int seenSeqNumber) {
         //Set sequence number. For first time local R-LSA, this is the initial sequence number. If the local R-LSA already
-        //exists, use that incremented. Also remove the old localRLSA, which is about to be overridden.
-        int lsSeqNumber = RLSA.INITIAL_SEQUENCE_NUMBER;
-        if (!routerLSAs.isEmpty()) {
-            lsSeqNumber = routerLSAs.get(0).lsSeqNumber;
-            lsSeqNumber++;
-            routerLSAs.remove(0);
-        }
+        //exists, use that incremented. The old localRLSA is replaced in place, under the same key.
+        int lsSeqNumber = seenSeqNumber;
+        if (localRLSA != null)
+            lsSeqNumber = Math.max(lsSeqNumber, localRLSA.lsSeqNumber);
+        lsSeqNumber++;
 
         List<LinkData> linkData = new ArrayList<>();
         //Construct LinkData per neighbour that is not down.
@@ -59,29 +166,183 @@ class LSDB {
             if (neighbour.getState().value <= ExternalStates.INIT.value)
                 continue;
 
-            //Calculate interface cost, store int in metric buffer. Remake buffer as a subset of the original, containing
-            //the last two octets, only copying the short from the int.
-            byte[] metric = Ints.toByteArray(neighbour.rIntOwner.getCost());
-            metric = new byte[] {metric[2], metric[3]};
-
+            //Link ID is the neighbour RID, link data the neighbour interface address, metric the interface cost.
             LinkData localLinkData = new LinkData(
-                neighbour.getRID(), neighbour.ipAddress.toAddressString(), metric
+                neighbour.getRID(), Ints.fromByteArray(neighbour.ipAddress.getBytes()), neighbour.rIntOwner.getCost()
             );
             linkData.add(localLinkData);
         }
 
-        routerLSAs.add(0, new RLSA(lsSeqNumber, linkData));
+        localRLSA = new RLSA(lsSeqNumber, linkData);
+        putLSA(localRLSA);
+    }
+
+    /**<p><h1>Log Change</h1></p>
+     * <p>Log a change with the next version, dropping the oldest change once the log is full. The change is seen by
+     * readers once published. Called under the LSDB lock, after every change to the index.</p>
+     * @param type type of change
+     * @param oldLSA instance replaced or removed, or null
+     * @param newLSA instance added, or null
+     */
+    private void logChange(LSAChange.Type type, RLSA oldLSA, RLSA newLSA) {
+        if (changeLog.size() == CHANGE_LOG_SIZE)
+            changeLog.removeFirst();
+        changeLog.addLast(new LSAChange(++version, type, oldLSA, newLSA));
+        unpublishedChanges++;
+    }
+
+    /**<p><h1>Publish Snapshot</h1></p>
+     * <p>Copy the LSA index into a new snapshot, at the version of the last change logged, make it the current
+     * snapshot, and schedule the routes to be calculated. Does nothing if no change was logged since the last snapshot.
+     * Called under the LSDB lock, once at the end of each operation.</p>
+     */
+    private void publish() {
+        if (unpublishedChanges == 0)
+            return;
+
+        snapshot = new Snapshot(version, List.copyOf(routerLSAs.values()), Map.copyOf(routerLSAs));
+        SPF.schedule(unpublishedChanges);
+        unpublishedChanges = 0;
+    }
+
+    /**<p><h1>Get Changes Since</h1></p>
+     * <p>Get the current snapshot, and every change made after a version, in order. Both are taken under the LSDB
+     * lock, so the changes lead exactly from the version to the snapshot.</p>
+     * @param version snapshot version last seen by the reader
+     * @return the current snapshot and the changes since version. The changes are null if the log no longer reaches
+     * back to version, so the reader must start over from the snapshot
+     */
+    synchronized ChangeSet getChangesSince(long version) {
+        Snapshot current = snapshot;
+        if (version > current.version)
+            return new ChangeSet(current, null);
+
+        //The log holds consecutive versions, one per change, up to the current one.
+        int count = (int) (current.version - version);
+        if (count > changeLog.size())
+            return new ChangeSet(current, null);
+
+        List<LSAChange> changes = new ArrayList<>(count);
+        for (LSAChange change: changeLog) {
+            if (change.version() > version)
+                changes.add(change);
+        }
+        return new ChangeSet(current, changes);
+    }
+
+    /**<p><h1>Get Snapshot</h1></p>
+     * <p>Get the current snapshot of the LSDB. Does not lock, and the snapshot never changes.</p>
+     * @return the current snapshot
+     */
+    Snapshot snapshot() {
+        return snapshot;
+    }
+
+    /**<p><h1>Get LSA</h1></p>
+     * <p>Looks up the LSA in the current snapshot, without locking.</p>
+     * @param key key of the LSA
+     * @return the instance of the LSA in the LSDB, or null if it is not in the LSDB
+     */
+    RLSA get(LSAKey key) {
+        return snapshot.get(key);
+    }
+
+    /**<p><h1>Put LSA</h1></p>
+     * <p>Add an LSA to the index, replacing the instance of the same LSA already in the index, if any, without
+     * publishing. A replaced LSA keeps its place in the order. Called under the LSDB lock.</p>
+     * @param lsa LSA to add
+     */
+    private void putLSA(RLSA lsa) {
+        RLSA replaced = routerLSAs.put(lsa.getKey(), lsa);
+        queueMaxAge(lsa);
+        logChange(replaced == null ? LSAChange.Type.ADDED : LSAChange.Type.REPLACED, replaced, lsa);
+    }
+
+    /**<p><h1>Install LSAs if Newer</h1></p>
+     * <p>Add the LSAs of a received LSU packet to the LSDB, each only if it is more recent than the instance already
+     * in the LSDB, RFC 2328 section 13.1. The checks and the puts are one step, so two interfaces receiving the same
+     * LSA can't install an older instance over a newer one. Each LSA installed is logged as a change, and all of them
+     * are published in one snapshot.</p>
+     * @param lsas received LSAs
+     * @return for each LSA, in order, null if it was installed, otherwise the instance in the LSDB, which is the same
+     * or more recent
+     */
+    synchronized RLSA[] installAllIfNewer(List<RLSA> lsas) {
+        RLSA[] currents = new RLSA[lsas.size()];
+        for (int i = 0; i < currents.length; i++) {
+            RLSA lsa = lsas.get(i);
+            RLSA current = routerLSAs.get(lsa.getKey());
+            if (current != null && lsa.compareInstance(current) <= 0)
+                currents[i] = current;
+            else
+                putLSA(lsa);
+        }
+        publish();
+        return currents;
     }
 
     /**<p><h1>Remove LSA</h1></p>
-     * <p>Removes an LSA from the LSA list, typically when the LSA ages itself to max age and wants to remove itself.</p>
+     * <p>Removes an LSA from the LSDB, typically when the LSA ages itself to max age and wants to remove itself. Only
+     * the provided instance is removed, not a newer instance of the same LSA.</p>
      * @param lsa the specific LSA to remove
      */
-     void removeRLSA(RLSA lsa) {
-        routerLSAs.remove(lsa);
-        if (lsa.advertisingRouter.equals(Config.thisNode.getRID())) {
-            setupLocalRLSA();
-        }
+     synchronized void removeRLSA(RLSA lsa) {
+        removeLSA(lsa);
+        publish();
+    }
+
+    /**<p><h1>Remove LSA Without Publishing</h1></p>
+     * <p>Remove an LSA instance from the index, and log it. If it is the local LSA, a new one is originated, which is
+     * added to the end of the order. Called under the LSDB lock.</p>
+     * @param lsa the specific LSA to remove
+     */
+    private void removeLSA(RLSA lsa) {
+        if (!routerLSAs.remove(lsa.getKey(), lsa))
+            return;
+        logChange(LSAChange.Type.MAX_AGED, lsa, null);
+
+        if (lsa == localRLSA)
+            originateLocalRLSA(RLSA.INITIAL_SEQUENCE_NUMBER - 1);
+    }
+
+    /**<p><h1>Size</h1></p>
+     * @return number of LSAs in the current snapshot
+     */
+    int size() {
+        return snapshot.lsas.size();
+    }
+
+    /**<p><h1>Get Summary Snapshot</h1></p>
+     * <p>Every LSA in the current snapshot, in order. Taken for a neighbour at ExStart, as the Database summary list of
+     * RFC 2328 section 10.3, so the DBD exchange walks a list that does not change under it. Does not copy.</p>
+     * @return an unmodifiable list of every LSA, in LSDB order
+     */
+    List<RLSA> getSummarySnapshot() {
+        return snapshot.lsas;
     }
     //endregion OBJECT METHODS
-}
\ No newline at end of file
+
+    /**<p><h1>LSDB Snapshot</h1></p>
+     * <p>An immutable view of every LSA in the LSDB at one version. Versions only increase, so a reader can tell if the
+     * LSDB changed since its last snapshot by comparing versions.</p>
+     * @param version number of changes made to the LSDB before the snapshot
+     * @param lsas every LSA, in LSDB order
+     * @param index every LSA, keyed by LSA key
+     */
+    record Snapshot(long version, List<RLSA> lsas, Map<LSAKey, RLSA> index) {
+        /**<p><h1>Get LSA</h1></p>
+         * @param key key of the LSA
+         * @return the instance of the LSA in the snapshot, or null if it is not in the snapshot
+         */
+        RLSA get(LSAKey key) {
+            return index.get(key);
+        }
+    }
+
+    /**<p><h1>LSDB Change Set</h1></p>
+     * <p>A snapshot, and the changes that lead to it from a version a reader last saw.</p>
+     * @param snapshot the current snapshot
+     * @param changes every change since the version asked for, in order, or null if the log does not reach back
+     */
+    record ChangeSet(Snapshot snapshot, List<LSAChange> changes) {}
+}
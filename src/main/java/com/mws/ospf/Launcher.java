@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.net.*;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.util.Timer;
@@ -225,7 +226,33 @@ class Launcher {
             --length;
         }
 
-        return (~((sum & 0xFFFF)+(sum >> 16)))&0xFFFF;
+        //Fold carries back in until none are left. A single fold can itself carry.
+        while ((sum >> 16) != 0)
+            sum = (sum & 0xFFFF) + (sum >> 16);
+        return (~sum) & 0xFFFF;
+    }
+
+    /**<p><h1>Create IP Checksum from ByteBuffer</h1></p>
+     * <p>Creates an internet checksum over a range of a ByteBuffer, read in place using absolute gets. The buffer
+     * position and limit are not changed. Running the checksum over a packet that includes its own correct checksum
+     * field gives 0, so a received packet can be verified without clearing the field first.</p>
+     * @param buffer buffer to calculate the checksum on
+     * @param offset index of the first byte to include
+     * @param length number of bytes to include
+     * @return the internet checksum, as a long (8 bytes)
+     */
+    public static long ipChecksum(ByteBuffer buffer, int offset, int length) {
+        long sum = 0;
+        int end = offset + length;
+        int i = offset;
+        for (; i + 1 < end; i += 2)
+            sum += buffer.getShort(i) & 0xFFFF;
+        if (i < end)
+            sum += (buffer.get(i) & 0xFF) << 8;
+
+        while ((sum >> 16) != 0)
+            sum = (sum & 0xFFFF) + (sum >> 16);
+        return (~sum) & 0xFFFF;
     }
 
     /**<p><h1>Print Buffer</h1></p>
@@ -241,6 +268,20 @@ class Launcher {
         System.out.println();
     }
 
+    /**<p><h1>Print ByteBuffer</h1></p>
+     * <p>Debug method, print a ByteBuffer from index 0 to its limit to stdout, formatted as hex, each byte separated by
+     * space</p>
+     * @param buffer Buffer to print to stdout
+     */
+    public static void printBuffer(ByteBuffer buffer) {
+        System.out.print("Buffer[" + buffer.limit() + "]: ");
+        for (int i = 0; i < buffer.limit(); i++)
+        {
+            System.out.print(String.format("%02X", buffer.get(i)) + " ");
+        }
+        System.out.println();
+    }
+
     /**<p><h1>Print to User</h1></p>
      * <p>Print a message to the user. The message is manipulated to add a prompt style front tag.</p>
      * <p>The method exists to allow further processing of the message in the future, and differentiate with standard
@@ -1,8 +1,6 @@
 package com.mws.ospf;
 
-import com.google.common.primitives.Bytes;
-import inet.ipaddr.IPAddressNetwork;
-import inet.ipaddr.IPAddressString;
+import java.nio.ByteBuffer;
 
 /**<p><h1>Link Data Class</h1></p>
  * <p>Class to store link state information about a specific link on a node. Can store link state information for
@@ -14,51 +12,47 @@ class LinkData {
     //endregion STATIC CONSTANTS
 
     //region OBJECT PARAMETERS
-    private final byte[] linkID;
-    private final byte[] data;
+    private final int linkID;
+    private final int data;
     /**
-     * Assumed to be {0x01}, for p2p link.
+     * Assumed to be 0x01, for p2p link.
      */
-    private final byte[] type;
-    private final byte[] metric;
+    private final byte type;
+    private final short metric;
     //endregion OBJECT PARAMETERS
 
     //region OBJECT METHODS
     /**<p><h1>Link Data Constructor</h1></p>
-     * <p>Construct a Link Data object containing link state information for an LSA record. Data is stored in a way to
-     * easily create a buffer from it. Most of the time data should be retrieved by the makeBuffer() method.</p>
-     * @param linkID id for a specific link to relate data to
-     * @param data link state data to store, equal to four bytes in length. Can be a neighbour RID
-     * @param metric a short in byte array form, must equal 2 bytes in size
+     * <p>Construct a Link Data object containing link state information for an LSA record. Fields are held as the
+     * primitives they are encoded as, so writing an LSA never converts them.</p>
+     * @param linkID id for a specific link to relate data to, such as a neighbour RID
+     * @param data link state data to store, equal to four bytes in length. Can be a neighbour interface address
+     * @param metric link metric, must fit in an unsigned short
      */
-    public LinkData(IPAddressString linkID, IPAddressString data, byte[] metric) {
-        this.linkID = linkID.getAddress().getBytes();
-        this.data = data.getAddress().getBytes();
-        this.type = new byte[]{0x01};//p2p
-        if (metric.length != 2)
+    public LinkData(int linkID, int data, int metric) {
+        this.linkID = linkID;
+        this.data = data;
+        this.type = 0x01;//p2p
+        if (metric < 0 || metric > 0xffff)
             throw new IllegalArgumentException("Metric must be two bytes");
 
-        this.metric = metric;
+        this.metric = (short) metric;
     }
 
     /**<p><h1>Link ID Getter</h1></p>
      * <p>Get the one property link ID, in the format it is provided in to the constructor.</p>
      * @return the link ID of the object
      */
-    public IPAddressString getLinkID() {
-        return new IPAddressNetwork.IPAddressGenerator().from(
-                this.linkID
-        ).toAddressString();
+    public int getLinkID() {
+        return this.linkID;
     }
 
     /**<p><h1>Link Data Getter</h1></p>
      * <p>Get the one property link data, in the format it is provided in to the constructor.</p>
      * @return the link data of the object
      */
-    public IPAddressString getData() {
-        return new IPAddressNetwork.IPAddressGenerator().from(
-                this.data
-        ).toAddressString();
+    public int getData() {
+        return this.data;
     }
 
     /**<p><h1>Link Type Getter</h1></p>
@@ -66,7 +60,7 @@ class LinkData {
      * @return the link type property of the object
      */
     public byte getVarType() {
-        return this.type[0];
+        return this.type;
     }
 
     /**<p><h1>Link Metric Getter</h1></p>
@@ -75,7 +69,7 @@ class LinkData {
      * @return the link metric of the object
      */
     public int getMetric() {
-        return (this.metric[0] << 8 & 0xff00) | (this.metric[1] & 0xff);
+        return this.metric & 0xffff;
     }
 
     /**<p><h1>Make Link Data Buffer</h1></p>
@@ -84,19 +78,22 @@ class LinkData {
      * @return link data converted to a buffer
      */
     byte[] makeBuffer() {
-        //Represented in a different format than I usually make this method. Only #TOS is static in the method, and so
-        //the buffer can be created by concatenating all the buffers that make up this object. This saves updating
-        //variables constantly, and this class was designed about making this method as efficient as I can.
-        return Bytes.concat(
-                this.linkID, //0,1,2,3
-                this.data, //4,5,6,7
-                this.type, //8
-                new byte[] {
-                        0x00,//number of TOS //9
-                },
-                this.metric //10,11
-                //TOS ID, ignore, TOS Metric, (PER TOS ENTRY)
-        );
+        ByteBuffer buffer = ByteBuffer.allocate(LINK_DATA_SIZE);
+        writeTo(buffer);
+        return buffer.array();
+    }
+
+    /**<p><h1>Write Link Data</h1></p>
+     * <p>Encode the 12 byte link data entry into a buffer at its current position, for encoding an LSA in place.</p>
+     * @param out buffer to encode into
+     */
+    void writeTo(ByteBuffer out) {
+        out.putInt(this.linkID); //0,1,2,3
+        out.putInt(this.data); //4,5,6,7
+        out.put(this.type); //8
+        out.put((byte) 0x00);//number of TOS //9
+        out.putShort(this.metric); //10,11
+        //TOS ID, ignore, TOS Metric, (PER TOS ENTRY)
     }
     //endregion OBJECT METHODS
 }
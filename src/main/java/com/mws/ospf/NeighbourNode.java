@@ -1,13 +1,16 @@
 package com.mws.ospf;
 
+import com.google.common.primitives.Ints;
 import inet.ipaddr.IPAddress;
-import inet.ipaddr.IPAddressString;
+import inet.ipaddr.IPAddressNetwork;
 import javafx.scene.control.Tab;
 
+import java.security.KeyPair;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Set;
 
 /**<p><h1>Neighbour Node</h1></p>
  * <p>A variation of node which is a neighbour to thisNode. Contains specifics of known information about this node, and
@@ -15,20 +18,19 @@ import java.util.TimerTask;
  * <p>Static methods exist as helpers</p>
  */
 class NeighbourNode extends Node {
+    //region STATIC CONSTANTS
+    static final long RXMT_INTERVAL_MS = 5000;// "Sample value for a local area network: 5 seconds."
+    //endregion STATIC CONSTANTS
+
     //region STATIC METHODS
     /**<p><h1>Get Reference of Neighbour from RID</h1></p>
-     * <p>Searches neighbours table list to find a specific instance of a neighbour that has been previously
+     * <p>Looks up the neighbours table to find a specific instance of a neighbour that has been previously
      * created, and returns it to be referenced</p>
-     * @param rid Router ID to use as an index
-     * @return Related instance of neighbour node
+     * @param rid Router ID to use as an index, as read from a packet
+     * @return Related instance of neighbour node, or null
      */
-    public static NeighbourNode getNeighbourNodeByRID(IPAddressString rid) {
-        for (NeighbourNode n : Config.neighboursTable) {
-            if (n.getRID().equals(rid)) {
-                return n;
-            }
-        }
-        return null;
+    public static NeighbourNode getNeighbourNodeByRID(int rid) {
+        return Config.neighboursTable.get(rid);
     }
     //endregion
 
@@ -37,16 +39,22 @@ class NeighbourNode extends Node {
     private ExternalStates state = ExternalStates.DOWN;
     IPAddress ipAddress;
     final RouterInterface rIntOwner;
-    EncryptionParameters  enParam;
-    Timer timerInactivity;
-    Timer timerRxmt;
+    volatile EncryptionParameters enParam;//Set by the key agreement thread, read by the interface worker
+    final ProtocolTimer timerInactivity = new ProtocolTimer(this::expireDeadTimer, TimerService.taskExecutor);
+    final ProtocolTimer timerRxmt = new ProtocolTimer(this::expireRxmtTimer, TimerService.taskExecutor);
+    final ProtocolTimer timerLSRxmt = new ProtocolTimer(() -> Flooding.retransmit(this), TimerService.taskExecutor);
+    final ProtocolTimer timerAck = new ProtocolTimer(() -> Flooding.sendDelayedAcks(this), TimerService.taskExecutor);
     DBDPacket lastSentDBD;
     DBDPacket lastReceivedDBD;
+    //Flooding state, guarded by this neighbour. See Flooding.
     List<RLSA> lsaRequestList = new ArrayList<>();
-    int lastSentLSAIndex = 0;
+    final Set<LSAKey> lsrOutstanding = new HashSet<>();//LSAs in the last request packet not yet received
+    byte[] lastSentLSR;//Last request packet, kept for retransmission, or null
+    final LinkedHashMap<LSAKey, RLSA> lsaRxmtList = new LinkedHashMap<>();//Flooded LSAs not yet acknowledged
+    final List<RLSA> pendingAcks = new ArrayList<>();//Received LSAs to acknowledge, sent by timerAck
+    List<RLSA> dbSummaryList = List.of();//LSDB snapshot taken at ExStart, walked by the DBD exchange
+    int lastSentLSAIndex = 0;//Index of the next LSA in dbSummaryList to summarise
     boolean isMaster = false;
-    private boolean flagTimerInactRunning = false;
-    private boolean flagTimerRmxtRunning = false;
     Tab tab;
     //endregion
 
@@ -56,61 +64,44 @@ class NeighbourNode extends Node {
      * neighbour.</p>
      * <p>Will also add the neighbour to a list of all neighbour nodes, for easy searching</p>
      * @param rid the neighbour's advertised router ID
-     * @param ipAddress the neighbour's interface IP address, for unicast messaging
+     * @param ipAddress the neighbour's interface IPv4 address as an int, for unicast messaging
      */
-    public NeighbourNode(IPAddressString rid, IPAddress ipAddress) {
+    public NeighbourNode(int rid, int ipAddress) {
         super(rid);
-        this.ipAddress = ipAddress;
+        this.ipAddress = new IPAddressNetwork.IPAddressGenerator().from(Ints.toByteArray(ipAddress));
         this.rIntOwner = RouterInterface.getInterfaceByIPNetwork(ipAddress);
     }
 
     /**<p><h1>Reset Inactivity</h1></p>
-     * <p>Refreshes the activity timer on this neighbour. Clears any existing inactivity timer already running and
-     * schedules a new timer with the delay of the inactivity timer</p>
+     * <p>Refreshes the activity timer on this neighbour. Resets the inactivity timer to the full delay of the
+     * inactivity timer, whether it was running or not.</p>
      */
     void resetInactiveTimer() {
-        if (flagTimerInactRunning) {
-            timerInactivity.cancel();
-        }
-
-        timerInactivity = new Timer(this.getRID() + "-DeadTimer");
-        timerInactivity.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                expireDeadTimer();
-            }
-        }, 40*1000);
-
-        flagTimerInactRunning = true;
+        timerInactivity.schedule(HelloScheduler.ROUTER_DEAD_INTERVAL * 1000L);
     }
 
     /**<p><h1>Reset rxmt Timer</h1></p>
      * <p>Call to reset the retransmission timer, meaning that the interval for retransmission will be reset. This
-     * method is called by the send method in StdDaemomn to reset retransmission each time a packet is sent.</p>
+     * method is called by StdDaemon each time a DBD packet is sent.</p>
      */
     void resetRxmtTimer() {
-        if (flagTimerRmxtRunning)
-            timerRxmt.cancel();
-
-        timerRxmt = new Timer(this.getRID() + "-rxmtTimer");
-        timerRxmt.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                expireRxmtTimer();
-            }
-        }, 5000, 5000);// "Sample value for a local area network: 5 seconds."
+        timerRxmt.schedule(RXMT_INTERVAL_MS, RXMT_INTERVAL_MS);
+    }
 
-        flagTimerRmxtRunning = true;
+    /**<p><h1>Start LS rxmt Timer</h1></p>
+     * <p>Start the flooding retransmission timer, when a request is sent or an LSA is put on the retransmission list.
+     * A pending timer is left alone, so traffic to the neighbour never holds off retransmission.</p>
+     */
+    void startLSRxmtTimer() {
+        if (!timerLSRxmt.isPending())
+            timerLSRxmt.schedule(RXMT_INTERVAL_MS, RXMT_INTERVAL_MS);
     }
 
     /**<p><h1>Cancel rxmt Timer</h1></p>
      * <p>After the final packet has been acknowledged, cancel the rxmt retransmission timer</p>
      */
     void cancelRxmtTimer() {
-        if (flagTimerRmxtRunning) {
-            timerRxmt.cancel();
-            flagTimerRmxtRunning = false;
-        }
+        timerRxmt.cancel();
     }
 
     /**<p><h1>Get Neighbour State</h1></p>
@@ -122,37 +113,73 @@ class NeighbourNode extends Node {
     }
 
     /**<p><h1>Set Neighbour State</h1></p>
-     * <p>Set the neighbour node to a specified state</p>
+     * <p>Set the neighbour node to a specified state. Keeps the hello of the owning interface up to date.</p>
      * @param newState State to set node to
      */
     void setState(ExternalStates newState) {
-        Launcher.printToUser("Neighbour " + this.getRID() + " Statechange:  " +
+        Launcher.printToUser("Neighbour " + this.getRIDString() + " Statechange:  " +
                 this.state.toString() +
                 " -> " +
                 newState.toString());
+        ExternalStates oldState = this.state;
         this.state = newState;
 
+        //Hellos list every neighbour that is not down. Patch the interface hello when that changes.
+        if (rIntOwner.helloTemplate == null)
+            return;
+        if (oldState == ExternalStates.DOWN && newState != ExternalStates.DOWN)
+            rIntOwner.helloTemplate.addNeighbour(getRID());
+        else if (oldState != ExternalStates.DOWN && newState == ExternalStates.DOWN)
+            rIntOwner.helloTemplate.removeNeighbour(getRID());
+
+    }
+
+    /**<p><h1>Set Known Neighbours</h1></p>
+     * <p>Update the neighbours this neighbour reports to know of, from the neighbours list of a received hello. The
+     * list rarely changes between hellos, so a new array is only made when it does.</p>
+     * @param hello view over the validated hello packet
+     */
+    void setKnownNeighbours(HelloView hello) {
+        int count = hello.getNeighbourCount();
+        int[] current = knownNeighbours;
+
+        if (current.length == count) {
+            int i = 0;
+            while (i < count && current[i] == hello.getNeighbourRID(i))
+                i++;
+            if (i == count)
+                return;
+        }
+
+        int[] reportedKnownRIDs = new int[count];
+        for (int i = 0; i < count; i++)
+            reportedKnownRIDs[i] = hello.getNeighbourRID(i);
+        knownNeighbours = reportedKnownRIDs;
     }
 
     /**<p><h1>Dead Timer Expire</h1></p>
      * <p>Trigger on expiring the inactive timer. Sets the neighbour node to the down state, resetting variables</p>
      */
     private void expireDeadTimer() {
-
-        try {
-            timerInactivity.cancel();
-        } catch (IllegalStateException ignored) {}//IllegalStateException: Timer already cancelled.
-
         if (this.state.value >= ExternalStates.LOADING.value)
             Config.thisNode.neighboursDone--;
-        this.knownNeighbours.clear();
+        this.clearKnownNeighbours();
         this.setState(ExternalStates.DOWN);
         this.enParam = null;
         this.lastSentDBD = null;
         this.lastReceivedDBD = null;
+        this.dbSummaryList = List.of();
         this.lastSentLSAIndex = 0;
-        this.lsaRequestList.clear();
-        Launcher.printToUser("Dead timer expired: " + this.getRID());
+        synchronized (this) {
+            this.lsaRequestList.clear();
+            this.lsrOutstanding.clear();
+            this.lastSentLSR = null;
+            this.lsaRxmtList.clear();
+            this.pendingAcks.clear();
+        }
+        this.timerAck.cancel();
+        this.timerLSRxmt.cancel();
+        Launcher.printToUser("Dead timer expired: " + this.getRIDString());
 
         //Update neighbours on topology change
         if (Launcher.operationMode == 0x02)
@@ -160,18 +187,32 @@ class NeighbourNode extends Node {
         if (Launcher.operationMode == 0x04) {
             EncDaemon.sendHelloPackets();
 
-            //Also for encrypted nodes, begin DHKeyExchange again (Assumes p2p network)
-            this.rIntOwner.dhExchange = new DHExchange(rIntOwner);
+            /*Also for encrypted nodes, begin DHKeyExchange again. A new key pair, from the pool, is only used when no
+            other neighbour on the interface still uses the current one. Otherwise only this neighbour is reset. This
+            runs on the timer thread, so the pool is polled rather than waited on. If it is empty, the current key pair
+            is kept for this exchange.*/
+            KeyPair keyPair = null;
+            if (!this.rIntOwner.dhExchange.hasOtherNeighbours(this))
+                keyPair = KeyPairPool.poll();
+            if (keyPair == null)
+                this.rIntOwner.dhExchange.resetNeighbour(this.getRID());
+            else
+                this.rIntOwner.dhExchange = new DHExchange(rIntOwner, keyPair);
+
+            //Try to resume with the cached secret straight away, rather than wait for the DH exchange.
+            SessionCache.startExpiry(this);
+            EncDaemon.sendSessionResume(this);
         }
 
-        //Refresh the local LSA.
-        Config.lsdb.setupLocalRLSA();
+        //Refresh the local LSA, and flood it to the remaining neighbours.
+        Flooding.originateLocalRLSA();
     }
 
     /**<p><h1>rxmt Timer Expire</h1></p>
      * <p>Called on expiry of the rxmt timer. Called by the rxmt timer schedule runnable method. This method on call
      * will attempt to retransmit the last packet which has not been acknowledged.</p><p></p>
-     * <p>At this stage, only the DBD packets are retransmitted.</p>
+     * <p>DBD packets are retransmitted in ExStart and Exchange. Requests and LSAs not yet acknowledged are retransmitted
+     * by timerLSRxmt instead.</p>
      */
     private void expireRxmtTimer() {
         switch (this.getState()) {
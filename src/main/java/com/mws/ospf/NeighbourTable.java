@@ -0,0 +1,134 @@
+package com.mws.ospf;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**<p><h1>Neighbour Table</h1></p>
+ * <p>Table of every NeighbourNode known to this node, keyed by the 32 bit router ID as read from a packet. Looking up
+ * a neighbour is a hash and a short probe of an int array, with no locking and no objects created.</p>
+ * <p>The table is copy on write. Readers load a single immutable snapshot, an open addressing table kept at most half
+ * full, and never see a partly added neighbour. Adding a neighbour is rare, so writers copy the snapshot under a lock
+ * and publish the copy. Iteration is in the order neighbours were added.</p>
+ */
+class NeighbourTable implements Iterable<NeighbourNode> {
+    //region STATIC CONSTANTS
+    private static final int MIN_CAPACITY = 16;
+    //endregion STATIC CONSTANTS
+
+    //region STATIC METHODS
+    /**<p><h1>Hash RID</h1></p>
+     * <p>Spread the bits of a RID, as RIDs are often close together, for example 1.1.1.1 and 2.2.2.2.</p>
+     * @param rid router ID
+     * @return a spread hash of the RID
+     */
+    private static int hash(int rid) {
+        int h = rid * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+    //endregion STATIC METHODS
+
+    //region OBJECT PROPERTIES
+    private volatile Snapshot snapshot = new Snapshot(MIN_CAPACITY, new NeighbourNode[0]);
+    //endregion OBJECT PROPERTIES
+
+    //region OBJECT METHODS
+    /**<p><h1>Get Neighbour</h1></p>
+     * <p>Lock free lookup of a neighbour by RID.</p>
+     * @param rid router ID as read from a packet
+     * @return the neighbour with the RID, or null if it is not known
+     */
+    NeighbourNode get(int rid) {
+        return snapshot.get(rid);
+    }
+
+    /**<p><h1>Put Neighbour if Absent</h1></p>
+     * <p>Add a neighbour, unless a neighbour with the same RID was added first. Two interface workers can both try to
+     * add a new neighbour, so the neighbour that was kept is returned.</p>
+     * @param neighbour neighbour to add
+     * @return the neighbour in the table for the RID, either the provided neighbour or the one already present
+     */
+    synchronized NeighbourNode putIfAbsent(NeighbourNode neighbour) {
+        int rid = neighbour.getRID();
+        Snapshot current = snapshot;
+
+        NeighbourNode existing = current.get(rid);
+        if (existing != null)
+            return existing;
+
+        //Copy the entries with the new neighbour on the end, and rebuild the table at most half full.
+        NeighbourNode[] entries = Arrays.copyOf(current.entries, current.entries.length + 1);
+        entries[entries.length - 1] = neighbour;
+        int capacity = current.keys.length;
+        while (entries.length * 2 > capacity)
+            capacity *= 2;
+
+        snapshot = new Snapshot(capacity, entries);
+        return neighbour;
+    }
+
+    /**<p><h1>Size</h1></p>
+     * @return number of neighbours in the table
+     */
+    int size() {
+        return snapshot.entries.length;
+    }
+
+    /**<p><h1>Iterator</h1></p>
+     * <p>Iterates over the snapshot at the time of the call, in the order neighbours were added. Neighbours added
+     * during iteration are not seen.</p>
+     * @return iterator over every neighbour
+     */
+    @Override
+    public Iterator<NeighbourNode> iterator() {
+        return Arrays.asList(snapshot.entries).iterator();
+    }
+    //endregion OBJECT METHODS
+
+    /**<p><h1>Neighbour Table Snapshot</h1></p>
+     * <p>Immutable open addressing table, with linear probing. Keys and values are held in parallel arrays, so a probe
+     * only reads ints until the RID matches.</p>
+     */
+    private static final class Snapshot {
+        //region OBJECT PROPERTIES
+        private final int[] keys;
+        private final NeighbourNode[] values;
+        private final NeighbourNode[] entries;
+        //endregion OBJECT PROPERTIES
+
+        //region OBJECT METHODS
+        /**<p><h1>Snapshot Constructor</h1></p>
+         * <p>Build the table from every entry.</p>
+         * @param capacity table size, a power of 2 at least double the number of entries
+         * @param entries every neighbour, in the order added
+         */
+        private Snapshot(int capacity, NeighbourNode[] entries) {
+            this.keys = new int[capacity];
+            this.values = new NeighbourNode[capacity];
+            this.entries = entries;
+
+            int mask = capacity - 1;
+            for (NeighbourNode neighbour: entries) {
+                int rid = neighbour.getRID();
+                int i = hash(rid) & mask;
+                while (values[i] != null)
+                    i = (i + 1) & mask;
+                keys[i] = rid;
+                values[i] = neighbour;
+            }
+        }
+
+        /**<p><h1>Get Neighbour</h1></p>
+         * @param rid router ID
+         * @return the neighbour with the RID, or null
+         */
+        private NeighbourNode get(int rid) {
+            int mask = keys.length - 1;
+            for (int i = hash(rid) & mask; values[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == rid)
+                    return values[i];
+            }
+            return null;
+        }
+        //endregion OBJECT METHODS
+    }
+}
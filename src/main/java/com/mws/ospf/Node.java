@@ -1,18 +1,62 @@
 package com.mws.ospf;
 
+import com.google.common.primitives.Ints;
 import inet.ipaddr.IPAddressString;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**<p><h1>Node</h1></p>
  * <p>Base class for NeighbourNode and ThisNode. stores the common variables between both extend classes. Basic node
  * constraints are defined in this class.</p>
+ * <p>Router IDs are stored as the 32 bit int they are sent as. They are only converted to and from dotted decimal at
+ * the edges, the config file, the UI and log messages.</p>
  */
 abstract class Node {
+    //region STATIC PROPERTIES
+    private static final int[] NO_NEIGHBOURS = new int[0];
+    //endregion STATIC PROPERTIES
+
+    //region STATIC METHODS
+    /**<p><h1>RID to String</h1></p>
+     * <p>Convert a RID into its dotted decimal form, for display.</p>
+     * <p></p>
+     * <p>e.g. 0x01010101 -> 1.1.1.1</p>
+     * @param rid router ID, big endian
+     * @return the router ID in dotted decimal
+     */
+    static String ridToString(int rid) {
+        return (rid >>> 24) + "." + ((rid >>> 16) & 0xff) + "." + ((rid >>> 8) & 0xff) + "." + (rid & 0xff);
+    }
+
+    /**<p><h1>RID from String</h1></p>
+     * <p>Validate and convert a dotted decimal RID, such as one read from the config file or UI, to an int. Cannot
+     * be 0.0.0.0.</p>
+     * <p></p>
+     * <p>e.g. 0.0.0.1, 1.1.1.1, 200.200.200.200</p>
+     * @param rid Router ID, 4 byte dotted decimal string, cannot be 0.0.0.0
+     * @return the router ID as an int
+     * @throws IllegalArgumentException rid provided is not a 4 character string or is equal to 0.0.0.0
+     * @throws NumberFormatException rid provided cannot be parsed into a number (contains illegal characters)
+     */
+    static int ridFromString(IPAddressString rid) {
+        if (!rid.isValid())
+            throw new IllegalArgumentException("RID isn't valid");
+        if (!rid.isIPv4())
+            throw new IllegalArgumentException("RID must be IPv4");
+        if (rid.isEmpty())
+            throw new IllegalArgumentException("RID cannot be an empty IPAddressString");
+        if (rid.isPrefixed())
+            throw new IllegalArgumentException("RID should not be a prefix string");
+        if (rid.isZero())
+            throw new IllegalArgumentException("RID cannot be 0.0.0.0");
+
+        return Ints.fromByteArray(rid.getAddress().getBytes());
+    }
+    //endregion STATIC METHODS
+
     //region OBJECT PROPERTIES
-    private IPAddressString rid; //Router ID, a 32-bit integer represented in dotted decimal, identically to an IPv4 address.
-    List<IPAddressString> knownNeighbours = new ArrayList<>();
+    private volatile int rid; //Router ID, a 32-bit integer represented in dotted decimal, identically to an IPv4 address.
+    volatile int[] knownNeighbours = NO_NEIGHBOURS;//Never modified once set. Replaced as a whole on change.
     //endregion
 
     //region OBJECT METHODS
@@ -28,6 +72,17 @@ abstract class Node {
         setRID(rid);
     }
 
+    /**<p><h1>Node</h1></p>
+     * <p>Construct a generic node with a RID as read from a packet.</p>
+     * @param rid Router ID, cannot be 0.0.0.0
+     * @throws IllegalArgumentException rid provided is equal to 0.0.0.0
+     */
+    public Node(int rid) {
+        if (rid == 0)
+            throw new IllegalArgumentException("RID cannot be 0.0.0.0");
+        this.rid = rid;
+    }
+
     /**<p><h1>Set Router ID</h1></p>
      * <p>Set Router ID from a 4 byte dotted decimal string. Cannot be 0.0.0.0.</p>
      * <p></p>
@@ -37,36 +92,55 @@ abstract class Node {
      * @throws NumberFormatException rid provided cannot be parsed into a number (contains illegal characters)
      */
     public void setRID(IPAddressString rid) {
-        if (!rid.isValid())
-            throw new IllegalArgumentException("RID isn't valid");
-        if (!rid.isIPv4())
-            throw new IllegalArgumentException("RID must be IPv4");
-        if (rid.isEmpty())
-            throw new IllegalArgumentException("RID cannot be an empty IPAddressString");
-        if (rid.isPrefixed())
-            throw new IllegalArgumentException("RID should not be a prefix string");
-        if (rid.isZero())
-            throw new IllegalArgumentException("RID cannot be 0.0.0.0");
-
-        this.rid = rid;
+        this.rid = ridFromString(rid);
     }
 
     /**<p><h1>Get Router ID</h1></p>
-     * <p>Return the Router ID as stored string</p>
-     * @return The node's router ID
+     * <p>Return the Router ID. The bigger the RID, the bigger the number when compared unsigned, so compare with
+     * Integer.compareUnsigned.</p>
+     * @return The node's router ID, big endian
      */
-    public IPAddressString getRID() {
+    public int getRID() {
         return this.rid;
     }
 
-    /**<p><h1>Get RID as int</h1></p>
-     * <p>Converts the RID IPAddressString to a binary string, which is parsed to an integer, with preserved MSB and LSB.
-     * The bigger the RID, the bigger the number. The method is useful for comparing which RID is bigger.</p>
-     * @return an integer representing the RID, from a binary string
-     * @throws NumberFormatException if the node rid is not a number.
+    /**<p><h1>Get Router ID String</h1></p>
+     * <p>Return the Router ID in dotted decimal, for the config file, UI and log messages.</p>
+     * @return The node's router ID in dotted decimal
      */
-    public int getRIDAsInt() {
-        return Integer.parseInt(rid.getAddress().toBinaryString(), 2);
+    public String getRIDString() {
+        return ridToString(this.rid);
+    }
+
+    /**<p><h1>Is Known Neighbour</h1></p>
+     * @param neighbourRID RID to look for
+     * @return true if the RID is in the known neighbours
+     */
+    public boolean isKnownNeighbour(int neighbourRID) {
+        for (int known: knownNeighbours) {
+            if (known == neighbourRID)
+                return true;
+        }
+        return false;
+    }
+
+    /**<p><h1>Add Known Neighbour</h1></p>
+     * <p>Add a RID to the known neighbours, if it was not already known.</p>
+     * @param neighbourRID RID to add
+     */
+    public synchronized void addKnownNeighbour(int neighbourRID) {
+        if (isKnownNeighbour(neighbourRID))
+            return;
+
+        int[] newKnownNeighbours = Arrays.copyOf(knownNeighbours, knownNeighbours.length + 1);
+        newKnownNeighbours[newKnownNeighbours.length - 1] = neighbourRID;
+        knownNeighbours = newKnownNeighbours;
+    }
+
+    /**<p><h1>Clear Known Neighbours</h1></p>
+     */
+    public void clearKnownNeighbours() {
+        knownNeighbours = NO_NEIGHBOURS;
     }
 
     /**<p><h1>Get Known Neighbours String</h1></p>
@@ -75,25 +149,16 @@ abstract class Node {
      * @return List of known neighbours, as comma separated list.
      */
     public String getKnownNeighboursString() {
-        if (knownNeighbours.size() == 0)
+        int[] neighbours = knownNeighbours;
+        if (neighbours.length == 0)
             return "";
 
-        StringBuilder neighbours = new StringBuilder();
-        for (IPAddressString neighbour: knownNeighbours)
+        StringBuilder neighboursString = new StringBuilder();
+        for (int neighbour: neighbours)
         {
-            neighbours.append(neighbour.toString()).append(",");
+            neighboursString.append(ridToString(neighbour)).append(",");
         }
-        neighbours = new StringBuilder(neighbours.substring(0, neighbours.length() - 1));
-        return neighbours.toString();
-    }
-
-    /**<p><h1>Get RID as Bytes</h1></p>
-     * <p>Returns a 4 byte array containing the node rid in bytes</p>
-     * @return 4 byte array of the Router ID in Big Endian format
-     * @throws NumberFormatException if the node rid is not a number.
-     */
-    public byte[] getRIDBytes() {
-        return rid.getAddress().getBytes();
+        return neighboursString.substring(0, neighboursString.length() - 1);
     }
     //endregion
 }
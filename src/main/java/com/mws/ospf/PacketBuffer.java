@@ -0,0 +1,25 @@
+package com.mws.ospf;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+
+/**<p><h1>Packet Buffer</h1></p>
+ * <p>A pooled receive buffer. Holds a direct ByteBuffer that a datagram is received into, and the source address of
+ * that datagram. Packet buffers are created once by a BufferPool and reused for every packet after that.</p>
+ */
+class PacketBuffer {
+    //region OBJECT PROPERTIES
+    final ByteBuffer buffer;
+    InetAddress source;
+    //endregion OBJECT PROPERTIES
+
+    //region OBJECT METHODS
+    /**<p><h1>Packet Buffer Constructor</h1></p>
+     * <p>Allocate a direct buffer of the given capacity. Only called when a BufferPool is filled.</p>
+     * @param capacity buffer size in bytes
+     */
+    PacketBuffer(int capacity) {
+        this.buffer = ByteBuffer.allocateDirect(capacity);
+    }
+    //endregion OBJECT METHODS
+}
@@ -0,0 +1,262 @@
+package com.mws.ospf;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/*      Generic OSPF header, written by writeHeader
+         +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+         |   Version #   |     Type      |         Packet length         |
+         +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+         |                          Router ID                            |
+         +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+         |                           Area ID                             |
+         +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+         |           Checksum            |             AuType            |
+         +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+         |                       Authentication                          |
+         +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+         |                       Authentication                          |
+         +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
+ */
+
+/**<p><h1>Packet Codec</h1></p>
+ * <p>Encodes locally originated OSPF packets, shared by both daemons. Each encode method writes a whole packet into a
+ * caller supplied buffer in a single pass, from index 0, then fills in the packet length and checksum in place. The
+ * returned buffer is flipped, ready to send or encrypt.</p>
+ * <p>A direct transmit buffer is kept per thread, for packets that are sent straight away. Packets that must be kept,
+ * such as a DBD waiting on retransmission, are copied out of the buffer once encoded.</p>
+ */
+class PacketCodec {
+    //region STATIC CONSTANTS
+    static final int TX_BUFFER_SIZE = 4000;
+    private static final ThreadLocal<ByteBuffer> txBuffer =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(TX_BUFFER_SIZE));
+    private static final ThreadLocal<ByteBuffer> txArena =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(TX_BUFFER_SIZE));
+    //endregion STATIC CONSTANTS
+
+    //region STATIC METHODS
+    /**<p><h1>Get Transmit Buffer</h1></p>
+     * <p>Get the transmit buffer owned by the calling thread, cleared. The buffer is reused by the next encode on the
+     * same thread, so it must be sent before then.</p>
+     * @return the calling thread's transmit buffer
+     */
+    static ByteBuffer getTxBuffer() {
+        return txBuffer.get().clear();
+    }
+
+    /**<p><h1>Get Transmit Arena</h1></p>
+     * <p>Get the transmit arena owned by the calling thread, cleared, that batches of packets are encrypted into. The
+     * arena is replaced with a larger one when it is too small, then kept for later batches. As with the transmit
+     * buffer, the packets must be sent before the next batch on the same thread.</p>
+     * @param size bytes needed in the arena
+     * @return the calling thread's transmit arena, with at least size bytes
+     */
+    static ByteBuffer getTxArena(int size) {
+        ByteBuffer arena = txArena.get();
+        if (arena.capacity() < size) {
+            arena = ByteBuffer.allocateDirect(Math.max(size, arena.capacity() * 2));
+            txArena.set(arena);
+        }
+        return arena.clear();
+    }
+
+    /**<p><h1>Encode Hello Packet</h1></p>
+     * <p>Encode a hello packet from this node, with an empty neighbours list. This is the base packet of a
+     * HelloTemplate, which then lists the neighbours of its interface as they change.</p>
+     * <p>This node's rid is derived from Config.thisNode.rid</p>
+     * @param out buffer to encode into
+     * @param version OSPF version byte, 0x02 or 0x04
+     * @return out, holding the completed hello packet
+     */
+    static ByteBuffer encodeHello(ByteBuffer out, byte version) {
+        writeHeader(out, version, (byte) 0x01);
+
+        //OSPF HELLO PACKET HEADER
+        out.putInt(0);//Network Mask, p2p networks equal to 0.0.0.0.
+        out.putShort((short) HelloScheduler.HELLO_INTERVAL);//hello interval//10
+        out.put((byte) 0x00);//options
+        out.put((byte) 0x01);//router priority
+        out.putInt(HelloScheduler.ROUTER_DEAD_INTERVAL);//router dead interval//40
+        out.putInt(0);//DR
+        out.putInt(0);//BDR
+
+        return finishPacket(out);
+    }
+
+    /**<p><h1>Encode DBD Packet</h1></p>
+     * <p>Encode a database description packet, with the version of the current operation mode. Each LSA is written
+     * straight into the buffer after the DBD header.</p>
+     * @param out buffer to encode into
+     * @param mtu interface MTU to report
+     * @param dbdFlags I, M and MS flags
+     * @param ddSeqNo dd sequence number
+     * @param listLSAs LSAs to describe in the packet
+     * @return out, holding the completed DBD packet
+     */
+    static ByteBuffer encodeDBD(ByteBuffer out, int mtu, byte dbdFlags, int ddSeqNo, List<RLSA> listLSAs) {
+        writeHeader(out, Launcher.operationMode, (byte) 0x02);
+
+        out.putShort((short) mtu);//Interface MTU
+        out.put((byte) 0x00);//options
+        out.put(dbdFlags);//0,0,0,0,0,I,M,MS
+        out.putInt(ddSeqNo);
+
+        //Add in LSA headers, each describing the whole LSA.
+        for (RLSA lsa: listLSAs)
+            lsa.writeRLSAHeader(out);
+
+        return finishPacket(out);
+    }
+
+    /**<p><h1>Encode Link State Request Packet</h1></p>
+     * <p>Encode a link state request packet, with the version of the current operation mode. Each LSA is requested by
+     * its LS type, Link State ID and Advertising Router.</p>
+     * @param out buffer to encode into
+     * @param listLSAs LSAs to request, such as from the request list of a neighbour
+     * @return out, holding the completed link state request packet
+     */
+    static ByteBuffer encodeLSRequest(ByteBuffer out, List<RLSA> listLSAs) {
+        writeHeader(out, Launcher.operationMode, (byte) 0x03);
+
+        for (RLSA lsa: listLSAs) {
+            LSAKey key = lsa.getKey();
+            out.putInt(key.lsType());//LS type //0-3
+            out.putInt(key.lsID());//Link State ID //4-7
+            out.putInt(key.advertisingRouter());//Advertising Router //8-11
+        }
+
+        return finishPacket(out);
+    }
+
+    /**<p><h1>Encode Link State Update Packet</h1></p>
+     * <p>Encode a link state update packet, with the version of the current operation mode. Each full LSA is written
+     * straight into the buffer after the number of LSAs.</p>
+     * @param out buffer to encode into
+     * @param listLSAs LSAs to flood in the packet
+     * @return out, holding the completed link state update packet
+     */
+    static ByteBuffer encodeLSUpdate(ByteBuffer out, List<RLSA> listLSAs) {
+        writeHeader(out, Launcher.operationMode, (byte) 0x04);
+
+        out.putInt(listLSAs.size());//# LSAs //24-27
+        for (RLSA lsa: listLSAs)
+            lsa.writeRLSA(out);
+
+        return finishPacket(out);
+    }
+
+    /**<p><h1>Encode Link State Acknowledgment Packet</h1></p>
+     * <p>Encode a link state acknowledgment packet, with the version of the current operation mode. Each LSA is
+     * acknowledged by its LSA header.</p>
+     * @param out buffer to encode into
+     * @param listLSAs LSAs to acknowledge
+     * @return out, holding the completed link state acknowledgment packet
+     */
+    static ByteBuffer encodeLSAck(ByteBuffer out, List<RLSA> listLSAs) {
+        writeHeader(out, Launcher.operationMode, (byte) 0x05);
+
+        for (RLSA lsa: listLSAs)
+            lsa.writeRLSAHeader(out);
+
+        return finishPacket(out);
+    }
+
+    /**<p><h1>Encode Diffie-Hellman PubKey Packet</h1></p>
+     * <p>Encode a DH PubKey (ospfv4 type 6, new packet type) packet. Contains an OSPF header, key size, the cipher
+     * suite this node prefers and the public key.</p>
+     * @param out buffer to encode into
+     * @param keyType the key exchange type code, reported in the key size field to the neighbour
+     * @param cipherSuite the cipher suite this node prefers, negotiated with the neighbour
+     * @param encodedPubKey the encoded public key
+     * @return out, holding the completed DH PubKey packet
+     */
+    static ByteBuffer encodeDHPubKey(ByteBuffer out, int keyType, CipherSuite cipherSuite, byte[] encodedPubKey) {
+        //v 4 for encrypted OSPF, type 6, special new type for DH PubKey.
+        writeHeader(out, (byte) 0x04, (byte) 0x06);
+
+        out.putShort((short) keyType);//KeySize, the key exchange type //24,25
+        out.putShort((short) cipherSuite.code);//Cipher suite //26,27
+        out.put(encodedPubKey);//PubKey //28 onwards
+
+        return finishPacket(out);
+    }
+
+    /**<p><h1>Encode Session Resume Packet</h1></p>
+     * <p>Encode a Session Resume (ospfv4 type 7, new packet type) packet. Contains an OSPF header, the RID of the node
+     * the packet is for, the message type, the nonces of the request and the response, and a proof of the cached
+     * secret. Sent in plaintext, like the DH PubKey packet.</p>
+     * @param out buffer to encode into
+     * @param targetRID RID of the neighbour the packet is for
+     * @param message SessionCache.RESUME_REQUEST, SessionCache.RESUME_RESPONSE or SessionCache.RESUME_CONFIRM
+     * @param requestNonce nonce of the request
+     * @param responseNonce nonce of the response, all 0 in a request
+     * @param proof HMAC proof of the cached secret
+     * @return out, holding the completed Session Resume packet
+     */
+    static ByteBuffer encodeSessionResume(ByteBuffer out, int targetRID, byte message, byte[] requestNonce,
+                                          byte[] responseNonce, byte[] proof) {
+        //v 4 for encrypted OSPF, type 7, special new type for Session Resume.
+        writeHeader(out, (byte) 0x04, (byte) 0x07);
+
+        out.putInt(targetRID);//Target RID //24-27
+        out.put(message);//Message type //28
+        out.put((byte) 0);//Reserved //29
+        out.putShort((short) 0);//Reserved //30,31
+        out.put(requestNonce);//Request nonce //32-47
+        out.put(responseNonce);//Response nonce //48-63
+        out.put(proof);//Proof //64-95
+
+        return finishPacket(out);
+    }
+
+    /**<p><h1>Write OSPF Header</h1></p>
+     * <p>Clear the buffer and write the generic 24 byte OSPF header from index 0. Packet length and checksum are left
+     * as 0, to be completed by finishPacket once the packet body is written.</p>
+     * @param out buffer to encode into
+     * @param version OSPF version byte
+     * @param type OSPF packet type
+     */
+    static void writeHeader(ByteBuffer out, byte version, byte type) {
+        out.clear();
+        out.put(version);//version
+        out.put(type);//message type
+        out.putShort((short) 0);//packet length
+        out.putInt(Config.thisNode.getRID());//source router rid (dotted decimal)
+        out.putInt(0);//area id (dotted decimal)
+        out.putShort((short) 0);//checksum
+        out.putShort((short) 0);//Auth type
+        out.putLong(0);//Auth Data
+    }
+
+    /**<p><h1>Finish Packet</h1></p>
+     * <p>Completes a packet encoded into a buffer from index 0 up to the buffer position. The packet length and
+     * checksum fields are updated in place, then the buffer is flipped.</p>
+     * @param out buffer holding the encoded packet
+     * @return out, flipped, holding the completed packet
+     */
+    static ByteBuffer finishPacket(ByteBuffer out) {
+        int packetLength = out.position();
+
+        //Length in positions 2 and 3 in OSPF header
+        out.putShort(2, (short) packetLength);
+
+        //Checksum in positions 12 and 13. Clear checksum, so it won't be counted in the checksum calculation
+        out.putShort(12, (short) 0);
+        out.putShort(12, (short) Launcher.ipChecksum(out, 0, packetLength));
+
+        return out.flip();
+    }
+
+    /**<p><h1>Copy Packet</h1></p>
+     * <p>Copy an encoded packet out of a transmit buffer, for packets that must outlive the buffer.</p>
+     * @param packet flipped buffer holding the packet
+     * @return the packet as a new array
+     */
+    static byte[] toArray(ByteBuffer packet) {
+        byte[] packetBuffer = new byte[packet.remaining()];
+        packet.get(packet.position(), packetBuffer);
+        return packetBuffer;
+    }
+    //endregion STATIC METHODS
+}
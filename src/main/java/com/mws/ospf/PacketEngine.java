@@ -0,0 +1,102 @@
+package com.mws.ospf;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static com.mws.ospf.StdDaemon.handleDaemonError;
+
+/**<p><h1>Packet Engine</h1></p>
+ * <p>Non-blocking receive engine shared by both daemons. One InterfaceChannel is created per enabled RouterInterface,
+ * and all of them are registered with a single selector. The selector thread only performs reads, handing datagrams to
+ * the per-interface worker threads, which then decode and process them.</p>
+ * <p>The pipeline is: selector thread (read) -> interface worker (decode, validate, decrypt) -> daemon packet
+ * processing, still on the interface worker.</p>
+ * <p>Each RouterInterface is linked to its channel, which is also used to send packets out of that interface.</p>
+ */
+class PacketEngine {
+    //region STATIC PROPERTIES
+    static final List<InterfaceChannel> channels = new ArrayList<>();
+    private static Selector selector;
+    private static final Thread threadSelector = new Thread(PacketEngine::selectorThread, "Thread-Packet-Engine");
+    //endregion STATIC PROPERTIES
+
+    //region STATIC METHODS
+    /**<p><h1>Start Packet Engine</h1></p>
+     * <p>Creates a channel for every enabled interface, registers them with the selector and starts the selector
+     * thread. Received packets are passed to packetHandler on the worker thread of the receiving interface.</p>
+     * <p>Handles its own exceptions.</p>
+     * @param groupAddr OSPF multicast group address and port to join
+     * @param packetHandler daemon method to process a received packet buffer from a source address
+     */
+    static void start(InetSocketAddress groupAddr, PacketHandler packetHandler) {
+        try {
+            selector = Selector.open();
+
+            for (RouterInterface rInt : Config.thisNode.interfaceList) {
+                //Packets on disabled interfaces are never processed, so don't listen on them.
+                if (!rInt.isEnabled)
+                    continue;
+
+                InterfaceChannel rIntChannel = new InterfaceChannel(rInt, groupAddr, packetHandler);
+                rIntChannel.register(selector);
+                channels.add(rIntChannel);
+                rInt.channel = rIntChannel;
+            }
+        } catch (IOException ex) {
+            handleDaemonError("Packet Engine: IOException when setting up interface channels", ex);
+        }
+
+        threadSelector.start();
+    }
+
+    /**<p><h1>Selector Thread</h1></p>
+     * <p>Thread method, waits on the selector for readable channels and reads all waiting datagrams from each. Runs
+     * until the thread is interrupted or the selector is closed.</p>
+     */
+    private static void selectorThread() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                selector.select();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if (key.isValid() && key.isReadable())
+                        ((InterfaceChannel) key.attachment()).read();
+                }
+            } catch (ClosedSelectorException ex) {
+                //Engine stopped.
+                return;
+            } catch (IOException ex) {
+                handleDaemonError("Packet Engine: IOException on selector thread", ex);
+            }
+        }
+    }
+
+    /**<p><h1>Stop Packet Engine</h1></p>
+     * <p>Stops the selector thread, closes every interface channel and stops the worker threads. Safe to call if the
+     * engine was never started.</p>
+     */
+    static void stop() {
+        if (threadSelector.isAlive())
+            threadSelector.interrupt();
+
+        for (InterfaceChannel rIntChannel : channels)
+            rIntChannel.close();
+
+        if (selector != null) {
+            try {
+                selector.close();
+            } catch (IOException ignored) {}
+        }
+    }
+    //endregion STATIC METHODS
+}
@@ -0,0 +1,17 @@
+package com.mws.ospf;
+
+import java.nio.ByteBuffer;
+
+/**<p><h1>Packet Handler</h1></p>
+ * <p>Daemon method called by an InterfaceChannel worker for each received packet. The packet buffer is pooled, and is
+ * reused as soon as the handler returns, so neither the buffer nor a view over it may be kept.</p>
+ */
+@FunctionalInterface
+interface PacketHandler {
+    /**<p><h1>Handle Packet</h1></p>
+     * @param rxChannel channel the packet was received on, which owns the views to read it with
+     * @param packet received packet, from index 0 to the buffer limit
+     * @param pSource IPv4 source address of packet, as an int
+     */
+    void handlePacket(InterfaceChannel rxChannel, ByteBuffer packet, int pSource);
+}
@@ -0,0 +1,69 @@
+package com.mws.ospf;
+
+import java.nio.ByteBuffer;
+
+/**<p><h1>Packet View</h1></p>
+ * <p>A flyweight view over an OSPF packet held in a ByteBuffer. Fields are read in place from the buffer when asked
+ * for, nothing is copied out of the buffer on wrap. A view is reused for every packet by calling wrap again, and is
+ * only valid until the underlying buffer is released.</p>
+ * <p>This base view reads the generic OSPF header. HelloView and DBDView extend it with their packet bodies.</p>
+ */
+class PacketView {
+    //region OBJECT PROPERTIES
+    ByteBuffer buffer;
+    //endregion OBJECT PROPERTIES
+
+    //region OBJECT METHODS
+    /**<p><h1>Wrap Buffer</h1></p>
+     * <p>Point this view at a packet. The packet starts at index 0 of the buffer, and ends at the buffer limit.</p>
+     * @param buffer buffer holding the packet
+     * @return this view
+     */
+    PacketView wrap(ByteBuffer buffer) {
+        this.buffer = buffer;
+        return this;
+    }
+
+    /**<p><h1>Get Version</h1></p>
+     * @return OSPF version byte, 0x02 for standard and 0x04 for encrypted
+     */
+    byte getVersion() {
+        return buffer.get(0);
+    }
+
+    /**<p><h1>Get Packet Type</h1></p>
+     * @return OSPF packet type byte
+     */
+    byte getType() {
+        return buffer.get(1);
+    }
+
+    /**<p><h1>Get Packet Length</h1></p>
+     * @return packet length reported in the header, bytes 2 and 3
+     */
+    int getPacketLength() {
+        return buffer.getShort(2) & 0xffff;
+    }
+
+    /**<p><h1>Get Router ID</h1></p>
+     * @return router ID of the sending node, bytes 4 to 7
+     */
+    int getRID() {
+        return buffer.getInt(4);
+    }
+
+    /**<p><h1>Get Checksum</h1></p>
+     * @return internet checksum reported in the header, bytes 12 and 13
+     */
+    int getChecksum() {
+        return buffer.getShort(12) & 0xffff;
+    }
+
+    /**<p><h1>Get Length</h1></p>
+     * @return number of bytes in the wrapped packet
+     */
+    int length() {
+        return buffer.limit();
+    }
+    //endregion OBJECT METHODS
+}
@@ -0,0 +1,124 @@
+package com.mws.ospf;
+
+import java.util.concurrent.Executor;
+
+/**<p><h1>Protocol Timer</h1></p>
+ * <p>Handle for a single timer on the shared TimerService wheel. A timer is made once, such as per neighbour, and is
+ * then scheduled, reset and cancelled as many times as needed. None of these create a thread or an object.</p>
+ * <p>Scheduling a pending timer resets it. Once a timer is reset or cancelled, a task that expired but has not yet
+ * run will not run.</p>
+ */
+class ProtocolTimer {
+    //region OBJECT PROPERTIES
+    private final Runnable task;
+    private final Executor executor;
+
+    //Bucket links and state, guarded by the TimerService lock.
+    ProtocolTimer prev;
+    ProtocolTimer next;
+    long rounds;
+    long periodMs;
+    volatile int generation;
+    int expiredGeneration;
+    //endregion OBJECT PROPERTIES
+
+    //region OBJECT METHODS
+    /**<p><h1>Bucket Head Constructor</h1></p>
+     * <p>Empty timer used as the head of a TimerService bucket, linked to itself.</p>
+     */
+    ProtocolTimer() {
+        this.task = null;
+        this.executor = null;
+        this.prev = this.next = this;
+    }
+
+    /**<p><h1>Protocol Timer Constructor</h1></p>
+     * <p>Make a timer that runs its task on the TimerService wheel thread. Only for short tasks.</p>
+     * @param task task to run when the timer expires
+     */
+    ProtocolTimer(Runnable task) {
+        this(task, null);
+    }
+
+    /**<p><h1>Protocol Timer Constructor</h1></p>
+     * <p>Make a timer that hands its task to an executor when it expires.</p>
+     * @param task task to run when the timer expires
+     * @param executor executor to run the task on, or null for the wheel thread
+     */
+    ProtocolTimer(Runnable task, Executor executor) {
+        this.task = task;
+        this.executor = executor;
+    }
+
+    /**<p><h1>Schedule Timer</h1></p>
+     * <p>Schedule the timer to run once after a delay. Resets the timer if it is already pending.</p>
+     * @param delayMs delay before the task runs
+     */
+    void schedule(long delayMs) {
+        schedule(delayMs, 0);
+    }
+
+    /**<p><h1>Schedule Periodic Timer</h1></p>
+     * <p>Schedule the timer to run after a delay, then every period until cancelled. Resets the timer if it is already
+     * pending.</p>
+     * @param delayMs delay before the task first runs
+     * @param periodMs time between each run, or 0 to run once
+     */
+    void schedule(long delayMs, long periodMs) {
+        synchronized (TimerService.lock()) {
+            TimerService.remove(this);
+            generation++;
+            this.periodMs = periodMs;
+            TimerService.add(this, delayMs);
+        }
+    }
+
+    /**<p><h1>Cancel Timer</h1></p>
+     * <p>Stop the timer, if it is pending. The timer can be scheduled again later.</p>
+     */
+    void cancel() {
+        synchronized (TimerService.lock()) {
+            TimerService.remove(this);
+            generation++;
+            this.periodMs = 0;
+        }
+    }
+
+    /**<p><h1>Is Timer Pending</h1></p>
+     * @return true if the timer is scheduled to run
+     */
+    boolean isPending() {
+        synchronized (TimerService.lock()) {
+            return next != null;
+        }
+    }
+
+    /**<p><h1>Fire Timer</h1></p>
+     * <p>Called by the wheel thread after the timer expired. Runs the task, or hands it to the executor.</p>
+     */
+    void fire() {
+        int firedGeneration = expiredGeneration;
+        if (executor == null)
+            run(firedGeneration);
+        else
+            executor.execute(() -> run(firedGeneration));
+    }
+
+    /**<p><h1>Run Task</h1></p>
+     * <p>Runs the task, unless the timer was reset or cancelled since it expired. A task throwing must not stop the
+     * wheel, or the executor thread, so exceptions are reported and dropped.</p>
+     * @param firedGeneration generation of the timer when it expired
+     */
+    private void run(int firedGeneration) {
+        if (firedGeneration != generation)
+            return;
+
+        try {
+            task.run();
+        } catch (RuntimeException ex) {
+            Launcher.printToUser("Exception in a timer task");
+            ex.printStackTrace();
+        }
+    }
+    //endregion OBJECT METHODS
+}
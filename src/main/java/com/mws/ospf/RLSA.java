@@ -1,13 +1,7 @@
 package com.mws.ospf;
 
-import com.google.common.primitives.Bytes;
-import com.google.common.primitives.Ints;
-import com.google.common.primitives.Shorts;
-import inet.ipaddr.IPAddressNetwork;
-import inet.ipaddr.IPAddressString;
-
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 import static com.mws.ospf.LinkData.LINK_DATA_SIZE;
@@ -76,45 +70,37 @@ class RLSA {
      * </p>
      */
     static final int MAX_AGE = 3600;
+    static final int MAX_AGE_DIFF = 900;//Ages closer than this are treated as the same instance
     static final int LSA_HEADER_LENGTH = 20;
+    static final byte LS_TYPE = 0x01;//Router LSA
     //endregion STATIC CONSTANTS
 
     //region STATIC METHODS
-    /**<p><h1>Compare Checksum to Real Value</h1></p>
-     * <p>Takes the stored checksum in the LSA header and compares it to the actual value of the calculated checksum.
-     * If they match returns true, else false. Implements the fletcherChecksum16 method</p>
-     * @param lsaBuffer the LSA buffer to check
-     * @return whether the checksum field in the header matches the
-     * @throws IllegalArgumentException if the lsa buffer didn't contain an LSA header
+    /**<p><h1>Monotonic Milliseconds</h1></p>
+     * <p>Clock LSA ages are measured with. Monotonic, so a change to the system clock does not age LSAs.</p>
+     * @return milliseconds from an arbitrary origin
      */
-     private static boolean isChecksumCorrect(byte[] lsaBuffer) {
-        if (lsaBuffer.length < LSA_HEADER_LENGTH)
-            throw new IllegalArgumentException("The LSA buffer provided doesn't meet the size requirement for the LSA" +
-                    " header, and so the LSA is invalid");
-
-        //Store original checksum
-        int checksum = (((lsaBuffer[16] << 8) & 0xff00) | (lsaBuffer[17] & 0xff));
-
-        //check checksum and return if matching.
-        return checksum == fletcherChecksum16(lsaBuffer);
+    static long nowMs() {
+        return System.nanoTime() / 1_000_000;
     }
 
     /**<p><h1>Calculate Fletcher Checksum</h1></p>
-     * <p>Used the fletcher (16) algorithm to calculate a checksum for a given buffer. The checksum detects errors in
-     * the data.</p>
-     * @param buffer buffer to operate on, which the checksum is calculated for
+     * <p>Used the fletcher (16) algorithm to calculate a checksum for an LSA held in a buffer. The checksum detects
+     * errors in the data. LS age and the checksum field are treated as 0, without modifying the buffer, so the same
+     * method can make the checksum for a new LSA and check the checksum of a received LSA.</p>
+     * @param buffer buffer holding the LSA, read with absolute gets
+     * @param offset buffer index of the start of the LSA
+     * @param length number of bytes in the LSA
      * @return the calculated checksum as a short stored in an int
      */
-     private static int fletcherChecksum16(byte[] buffer) {
-        //Remove checksum and lsage from checksum calculation
-        buffer[0] = buffer[1] = buffer[16] = buffer[17] = 0;
-
+     static int fletcherChecksum16(ByteBuffer buffer, int offset, int length) {
         //Starting variables
         int C0 = 0, C1 = 0;
 
         //Loop over each 'word', 8 bits, performing checksum function. Operation performed under modulo 255, keeps vars
-        //in range of 1 byte.
-        for (byte word : buffer) {
+        //in range of 1 byte. LS age (0, 1) and checksum (16, 17) are left out of the calculation.
+        for (int i = 0; i < length; i++) {
+            byte word = (i == 0 || i == 1 || i == 16 || i == 17) ? 0 : buffer.get(offset + i);
             C0 = (C0 + word) % 255;
             C1 = (C1 + C0) % 255;
         }
@@ -122,6 +108,20 @@ class RLSA {
         //C1 + C0 in place of setting n+0 and n+1. Allows same method to make and check the checksum.
         return (((C0 << 8) & 0xff00) | C1) & 0x0000ffff;
     }
+
+    /**<p><h1>Wrap LSA Buffer</h1></p>
+     * <p>Wrap a buffer holding exactly one LSA in a view, for the byte[] constructor. The reported length must match
+     * the buffer length.</p>
+     * @param lsaBuffer the LSA buffer to wrap
+     * @return a view over the LSA
+     * @throws ArithmeticException if the length field does not match the buffer length
+     */
+    private static LSAHeaderView wrapLSABuffer(byte[] lsaBuffer) {
+        LSAHeaderView lsa = new LSAHeaderView().wrap(ByteBuffer.wrap(lsaBuffer), 0);
+        if (lsa.isLengthValid() && lsa.getLength() != lsaBuffer.length)
+            throw new ArithmeticException("The buffer length does not match the header length ");
+        return lsa;
+    }
     //endregion STATIC METHODS
 
     //region OBJECT PROPERTIES
@@ -157,8 +157,12 @@ class RLSA {
      *     detected, and at the very least the router itself should be
      *     restarted.
      * </p>
+     * <p>The age is not incremented every second. It is worked out when needed, from the age the LSA had when it was
+     * originated or received, and the time since then. LSAs reaching MaxAge are removed by the LSDB, at the time
+     * given by getMaxAgeAtMs.</p>
      */
-    private int lsAge;
+    private final int initialAge;
+    private final long ageOriginMs;//nowMs when the LSA had initialAge
     /**<p><h1>LSA lsID</h1></p>
      * <p>
      *             This field identifies the piece of the routing domain that
@@ -168,7 +172,7 @@ class RLSA {
      * </p><p></p>
      * <p>For ls type 1: The originating router's Router ID.</p>
      */
-    private final IPAddressString lsID;
+    private final int lsID;
     /**<p><h1>LSA Advertising Router</h1></p>
      * <p>
      *             The Router ID of the router that originated the LSA.  For
@@ -176,7 +180,7 @@ class RLSA {
      *             the network's Designated Router.
      * </p>
      */
-     final IPAddressString advertisingRouter;
+     final int advertisingRouter;
     /**<p><h1>LSA LS sequence number</h1></p>
      * <p>
      *             The sequence number -N (0x80000000) is reserved (and
@@ -198,6 +202,8 @@ class RLSA {
      * </p>
      */
      final int lsSeqNumber;
+    private final int lsChecksum;//Fletcher checksum over the whole LSA, as in the header
+    private final int length;//Length of the whole LSA, as in the header
      List<LinkData> links = new ArrayList<>();
     //endregion OBJECT PROPERTIES
 
@@ -214,62 +220,67 @@ class RLSA {
 
         //The time in seconds since the LSA was originated.
         //Now is originated.
-        this.lsAge = 0;
+        this.initialAge = 0;
+        this.ageOriginMs = nowMs();
         this.lsID = this.advertisingRouter = Config.thisNode.getRID();
         this.lsSeqNumber = lsSeqNumber;
+
+        //Encode the LSA once, for the checksum its header reports.
+        this.length = LSA_HEADER_LENGTH + 4 + (links.size() * LINK_DATA_SIZE);
+        ByteBuffer buffer = ByteBuffer.allocate(this.length);
+        writeRLSA(buffer);
+        this.lsChecksum = buffer.getShort(16) & 0xffff;
     }
 
     /**<p><h1>Type 1 LSA Constructor from Buffer</h1></p>
-     * <p>Construct a router LSA packet to store specified parameters. Takes all available LSA information from a
-     * received router LSA buffer. This constructor is intended for processing a router LSA from another node, where all
-     * information is reported by the adjacent node. No stored data is static from this node as it is all from
-     * another.</p>
-     * <p>The RLSA buffer can either be for a full RLSA, or for only the 20 header bytes. The full LSA is useful for
-     * the LSDB, while the header is useful for LSA request lists.</p>
+     * <p>Construct a router LSA from an LSA buffer holding exactly one LSA. Wraps the buffer and constructs from the
+     * LSA view, so both constructors share the same validation.</p>
      * @param lsaBuffer the LSA buffer from another node containing the standard LSA header
      * @throws IllegalArgumentException an invalid LSA buffer was provided
      * @throws ArithmeticException data provided was invalid. Either checksum or length fields, or the link data
      */
     public RLSA(byte[] lsaBuffer) {
-        if (lsaBuffer.length < LSA_HEADER_LENGTH)
-            throw new IllegalArgumentException("The LSA buffer provided doesn't meet the size requirement for the LSA" +
-                    " header, and so the LSA is invalid");
-
-        if (!isChecksumCorrect(lsaBuffer))
-            throw new ArithmeticException("The checksum in the provided buffer is invalid");
-        if (lsaBuffer.length != (((lsaBuffer[18] << 8) & 0xff00) | (lsaBuffer[19] & 0xff)))
-            throw new ArithmeticException("The buffer length does not match the header length ");
-
-        //LS Age 0,1
-        int lsAge = ((lsaBuffer[0] << 8) & 0xff00) | (lsaBuffer[1] & 0xff);
-        this.lsAge = (short) lsAge;
+        this(wrapLSABuffer(lsaBuffer));
+    }
 
-        //LS ID 4,5,6,7
-        this.lsID = new IPAddressNetwork.IPAddressGenerator().from(
-                Arrays.copyOfRange(lsaBuffer, 4, 8)
-        ).toAddressString();
+    /**<p><h1>Type 1 LSA Constructor from View</h1></p>
+     * <p>Construct a router LSA packet to store specified parameters. Takes all available LSA information from a
+     * received router LSA, read in place through a view. This constructor is intended for processing a router LSA from
+     * another node, where all information is reported by the adjacent node. No stored data is static from this node as
+     * it is all from another.</p>
+     * <p>The RLSA can either be a full RLSA, or only the 20 header bytes. The full LSA is useful for the LSDB, while
+     * the header is useful for LSA request lists.</p>
+     * @param lsa view over the LSA from another node, such as an LSA header in a received DBD packet
+     * @throws IllegalArgumentException the LSA length was smaller than a header, or ran past the end of the buffer
+     * @throws ArithmeticException data provided was invalid. Either checksum field, or the link data
+     */
+    public RLSA(LSAHeaderView lsa) {
+        if (!lsa.isLengthValid())
+            throw new IllegalArgumentException("The LSA length field is smaller than the LSA header, or is longer " +
+                    "than the buffer, and so the LSA is invalid");
 
-        //Advertising Router ID 8,9,10,11
-        this.advertisingRouter = new IPAddressNetwork.IPAddressGenerator().from(
-                Arrays.copyOfRange(lsaBuffer, 8, 12)
-        ).toAddressString();
+        //Checked in place, without clearing LS age in the received buffer.
+        if (!lsa.isChecksumCorrect())
+            throw new ArithmeticException("The checksum in the provided buffer is invalid");
 
-        //LS Sequence No. 12,13,14,15
-        this.lsSeqNumber = (((lsaBuffer[12] << 24) & 0xff000000) | ((lsaBuffer[13] << 16) & 0xff0000) |
-                ((lsaBuffer[14] << 8) & 0xff00) | (lsaBuffer[15] & 0xff));
+        this.initialAge = Math.min(lsa.getAge(), MAX_AGE);
+        this.ageOriginMs = nowMs();
+        this.lsID = lsa.getLSID();
+        this.advertisingRouter = lsa.getAdvertisingRouter();
+        this.lsSeqNumber = lsa.getSeqNumber();
+        this.lsChecksum = lsa.getChecksum();
+        this.length = lsa.getLength();
 
         /*All data before this point was in the 20 byte header. If there is no more data, as in the header was only
         being processed, then end here. If there is more than 20 bytes, then */
-        if (lsaBuffer.length == LSA_HEADER_LENGTH)
+        if (lsa.getLength() == LSA_HEADER_LENGTH)
             return;
 
-
-
         //Link State Information, byte 24 onwards. First check packet link state information sent is correct and was not
         //malformed by the other node.
-        int noLinks = ((lsaBuffer[22] << 8) & 0xff00) | (lsaBuffer[23] & 0xff);
+        int noLinks = lsa.getLinkCount();
 
-        int checkNoLinks = lsaBuffer.length;
+        int checkNoLinks = lsa.getLength();
         checkNoLinks -= 24;
 
         if (checkNoLinks % LINK_DATA_SIZE != 0)
@@ -277,42 +288,76 @@ class RLSA {
         if (noLinks != (checkNoLinks / LINK_DATA_SIZE))
             throw new ArithmeticException("Reported number of links doesn't match the number of links in the packet.");
 
-        //Now link state information format was verified, scrape data from the packet.
-        for (int i = 0; i < noLinks * LINK_DATA_SIZE; i += LINK_DATA_SIZE) {
-            //Create a subset of the lsaBuffer for the individual link data. Exclude first 24 bytes of header. Only copy
-            //the 12 bytes relative to the current link information.
-            byte[] linkBuffer = Arrays.copyOfRange(lsaBuffer, 24+i, 24+i+LINK_DATA_SIZE);
-
-            //Scrape all needed data from the buffer subset, combine it into a LinkData object.
-            LinkData newLinkData = new LinkData(
-                    new IPAddressNetwork.IPAddressGenerator().from(
-                            Arrays.copyOfRange(linkBuffer, i, i+4)
-                    ).toAddressString(),
-                    new IPAddressNetwork.IPAddressGenerator().from(
-                            Arrays.copyOfRange(linkBuffer, i+4, i+8)
-                    ).toAddressString(),
-                    Arrays.copyOfRange(linkBuffer, i+10, i+12)
-            );
-
-            this.links.add(newLinkData);
+        //Now link state information format was verified, scrape each link straight from the buffer.
+        for (int i = 0; i < noLinks; i++) {
+            this.links.add(new LinkData(lsa.getLinkID(i), lsa.getLinkData(i), lsa.getLinkMetric(i)));
         }
     }
 
+    /**<p><h1>Type 1 LSA Constructor from Header</h1></p>
+     * <p>Construct a router LSA from only the 20 byte header of an LSA, such as a summary in a DBD packet. The length
+     * and checksum describe the whole LSA, which is not in the buffer, so the checksum can't be checked. The LSA has no
+     * links, and is only used to identify an instance, for request lists.</p>
+     * @param header view over the LSA header
+     * @param isHeaderOnly marks the header constructor, always true
+     * @throws IllegalArgumentException the header ran past the end of the buffer, or reports a length smaller than a
+     * header
+     */
+    RLSA(LSAHeaderView header, boolean isHeaderOnly) {
+        if (!header.isHeaderValid())
+            throw new IllegalArgumentException("The LSA header runs past the end of the buffer, or reports a length " +
+                    "smaller than the LSA header");
+
+        this.initialAge = Math.min(header.getAge(), MAX_AGE);
+        this.ageOriginMs = nowMs();
+        this.lsID = header.getLSID();
+        this.advertisingRouter = header.getAdvertisingRouter();
+        this.lsSeqNumber = header.getSeqNumber();
+        this.lsChecksum = header.getChecksum();
+        this.length = header.getLength();
+    }
+
+    /**<p><h1>Get LSA Key</h1></p>
+     * @return the key identifying this LSA in the LSDB
+     */
+    LSAKey getKey() {
+        return new LSAKey(LS_TYPE, this.lsID, this.advertisingRouter);
+    }
+
     @Override
     public String toString() {
-        return this.lsID.toString() + ", " + this.advertisingRouter.toString() + ", " + this.lsSeqNumber + ", " +
-                this.lsAge;
+        return Node.ridToString(this.lsID) + ", " + Node.ridToString(this.advertisingRouter) + ", " + this.lsSeqNumber + ", " +
+                this.getAge();
+    }
+
+    /**<p><h1>Get LS Age</h1></p>
+     * <p>The age of the LSA now, in seconds, never past MaxAge.</p>
+     * @return LS age
+     */
+    int getAge() {
+        long age = initialAge + (nowMs() - ageOriginMs) / 1000;
+        return (int) Math.min(age, MAX_AGE);
+    }
+
+    /**<p><h1>Get LS Checksum</h1></p>
+     * @return fletcher checksum of the whole LSA, as reported in its header
+     */
+    int getChecksum() {
+        return lsChecksum;
     }
 
-    /**<p><h1>Age This LSA</h1></p>
-     * <p>Increments the age, which should be done every second. If the age gets too old, remove it from the LSA list.</p>
-     * <p>The local RLSA should not be blindly deleted, so the LSDB remove method resets the local RLSA</p>
+    /**<p><h1>Get Arrival Time</h1></p>
+     * @return nowMs at which the LSA was originated or received
      */
-    void ageLSA() {
-        lsAge++;
-        if (lsAge >= MAX_AGE)
-            Config.lsdb.removeRLSA(this);
+    long getArrivalMs() {
+        return ageOriginMs;
+    }
 
+    /**<p><h1>Get MaxAge Time</h1></p>
+     * @return nowMs at which the LSA reaches MaxAge
+     */
+    long getMaxAgeAtMs() {
+        return ageOriginMs + (MAX_AGE - initialAge) * 1000L;
     }
 
     /**<p><h1>Are Two LSAs Equal</h1></p>
@@ -334,65 +379,53 @@ class RLSA {
      */
     boolean isThisLSANewer(RLSA checkLSA) {
         //true if this.lsAge is newer or the same as the test. False if lsAge is newer.
-        return checkLSA.lsAge < this.lsAge;
+        return checkLSA.getAge() < this.getAge();
+    }
+
+    /**<p><h1>Compare LSA Instances</h1></p>
+     * <p>Determine which of two instances of the same LSA is more recent, following RFC 2328 section 13.1. The instance
+     * with the higher sequence number is more recent. With equal sequence numbers, the instance with the larger LS
+     * checksum is more recent. Then an instance at MaxAge is more recent, then an instance younger by more than
+     * MaxAgeDiff. Otherwise, the instances are the same.</p>
+     * @param checkLSA another instance of this LSA
+     * @return positive if this instance is more recent, negative if checkLSA is, or 0 for the same instance
+     */
+    int compareInstance(RLSA checkLSA) {
+        //Sequence numbers are signed, InitialSequenceNumber being the lowest.
+        if (this.lsSeqNumber != checkLSA.lsSeqNumber)
+            return Integer.compare(this.lsSeqNumber, checkLSA.lsSeqNumber);
+        //Checksums are unsigned 16 bit.
+        if (this.lsChecksum != checkLSA.lsChecksum)
+            return Integer.compare(this.lsChecksum, checkLSA.lsChecksum);
+
+        int thisAge = this.getAge();
+        int checkAge = checkLSA.getAge();
+        if ((thisAge == MAX_AGE) != (checkAge == MAX_AGE))
+            return thisAge == MAX_AGE ? 1 : -1;
+        if (Math.abs(thisAge - checkAge) > MAX_AGE_DIFF)
+            return Integer.compare(checkAge, thisAge);
+        return 0;
     }
 
     /**<p><h1>Get the LSA Byte Length</h1></p>
-     * <p>Returns the number of bytes for this LSA. This will be the constant header length, plus 12 bytes per link data
-     * object stored. For summary LSAs, this will only be the LSA header length as there is no link data stored. For a
-     * full LSA with link data, all data will be added</p>
-     * @return number of bytes the resulting buffer will contain
+     * <p>Returns the length of the whole LSA, as reported in its header. This will be the constant header length, the
+     * flags and number of links, plus 12 bytes per link. It is also the number of bytes writeRLSA encodes, other than
+     * for an LSA made from only a header, which has no links stored.</p>
+     * @return number of bytes in the whole LSA
      */
      int getLength() {
-        return LSA_HEADER_LENGTH + (links.size() * LINK_DATA_SIZE);
+        return length;
     }
 
     /**<p><h1>Make Router LSA Header Buffer</h1></p>
      * <p>Use the data stored in the local object to create an LSA header, conforming to the OSPF LSA 20 byte header.</p>
-     * <p>This header is used as a summary for DBD packets, or used in creation of the full router LSA. It will contain
-     * a completed length and checksum field, which should be overridden once the end buffer is complete.</p>
+     * <p>This header describes the whole LSA, with the length and checksum of the whole LSA.</p>
      * @return the router LSA header buffer
      */
     byte[] makeRLSAHeaderBuffer() {
-        byte[] buffer = {
-                0x00, 0x00,             //lsage //0,1
-                            0x00,       //options //2
-                                  0x01, //LSA Type (Router LSA) //3
-                0x00, 0x00, 0x00, 0x00, //LS ID //4,5,6,7
-                0x00, 0x00, 0x00, 0x00, //Advertising router //8,9,10,11
-                0x00, 0x00, 0x00, 0x00, //ls sequence number //12,13,14,15
-                0x00, 0x00,             //ls checksum //16,17
-                            0x00, 0x14, //length, header 20 bytes (unless overridden)//18,19
-        };
-
-        byte[] lsAgeB = Ints.toByteArray(this.lsAge);
-        buffer[0] = lsAgeB[2];
-        buffer[1] = lsAgeB[3];
-
-        //ls id
-        byte[] lsIDB = this.lsID.getAddress().getBytes();
-        buffer[4] = lsIDB[0];
-        buffer[5] = lsIDB[1];
-        buffer[6] = lsIDB[2];
-        buffer[7] = lsIDB[3];
-
-        //advertising router
-        byte[] advertisingRouterB = this.advertisingRouter.getAddress().getBytes();
-        buffer[8] = advertisingRouterB[0];
-        buffer[9] = advertisingRouterB[1];
-        buffer[10] = advertisingRouterB[2];
-        buffer[11] = advertisingRouterB[3];
-
-        //ls sequence number
-        byte[] lsSeqNumB = Ints.toByteArray(this.lsSeqNumber);
-        buffer[12] = lsSeqNumB[0];
-        buffer[13] = lsSeqNumB[1];
-        buffer[14] = lsSeqNumB[2];
-        buffer[15] = lsSeqNumB[3];
-
-        //Finally, update the length field and checksum field. Return the buffer containing the updated fields.
-        //Will be overridden anyway by makeRLSABuffer, and length will remain the same.
-        return updateLSAHChecksumAndLength(buffer);
+        ByteBuffer buffer = ByteBuffer.allocate(LSA_HEADER_LENGTH);
+        writeRLSAHeader(buffer);
+        return buffer.array();
     }
 
     /**<p><h1>Make Router LSA Buffer</h1></p>
@@ -401,54 +434,72 @@ class RLSA {
      * @return a full router LSA buffer
      */
     byte[] makeRLSABuffer() {
-        byte[] buffer = {
-                0x00, 0x00,             //0, v, b, e, 0 (ignore flags) //20,21
-                            0x00, 0x00, //number of links //22,23
-                //+ 12 bytes per link
-        };
+        ByteBuffer buffer = ByteBuffer.allocate(LSA_HEADER_LENGTH + 4 + (links.size() * LINK_DATA_SIZE));
+        writeRLSA(buffer);
+        return buffer.array();
+    }
+
+    /**<p><h1>Write Router LSA Header</h1></p>
+     * <p>Encode the 20 byte LSA header into a buffer at its current position, as used for DBD summaries and
+     * acknowledgments. The length and checksum are those of the whole LSA, so the header identifies the instance. The
+     * buffer position is moved past the header.</p>
+     * @param out buffer to encode into
+     */
+    void writeRLSAHeader(ByteBuffer out) {
+        int start = out.position();
+        putHeader(out);
+        out.putShort(start + 16, (short) this.lsChecksum);
+        out.putShort(start + 18, (short) this.length);
+    }
 
-        buffer = Bytes.concat(makeRLSAHeaderBuffer(), buffer);
+    /**<p><h1>Write Router LSA</h1></p>
+     * <p>Encode the full router LSA, the header followed by the flags, number of links and each link, into a buffer at
+     * its current position. Flags are assumed as 0. The length and checksum fields are completed in place once the
+     * LSA is written, and the buffer position is moved past the LSA.</p>
+     * @param out buffer to encode into
+     */
+    void writeRLSA(ByteBuffer out) {
+        int start = out.position();
+        putHeader(out);
 
-        //no links
+        out.putShort((short) 0);//0, v, b, e, 0 (ignore flags) //20,21
         //possible to overflow as size can be greater than the short. Not a practical issue.
-        byte[] linkNoB = Ints.toByteArray(this.links.size());
-        buffer[22] = linkNoB[2];
-        buffer[23] = linkNoB[3];
+        out.putShort((short) this.links.size());//number of links //22,23
 
         //link data (12 bytes per link).
         for (LinkData link: this.links)
-        {
-            buffer = Bytes.concat(buffer, link.makeBuffer());
-        }
+            link.writeTo(out);
 
-        //Finally, update the length field and checksum field. Return the buffer containing the updated fields.
-        return updateLSAHChecksumAndLength(buffer);
+        finishLSA(out, start);
     }
 
-    /**<p><h1>Update LSA Header Checksum and Length Fields</h1></p>
-     * <p>Updates the fields length and checksum for a given buffer. The buffer is assumed to take the format of an
-     * LSA, where the first 20 bytes conform to the standard LSA header. Checksum is in bytes 16 and 17, length is in
-     * bytes 18 and 19. The checksum used is specifically the fletcher16 checksum for LSA headers.</p>
-     * @param buffer buffer containing fields to update, which will also derive the length and checksum
-     * @return buffer containing updated checksum and length fields
+    /**<p><h1>Put LSA Header Fields</h1></p>
+     * <p>Relative puts of each LSA header field, with the checksum and length left as 0 to be completed later.</p>
+     * @param out buffer to encode into
      */
-    private byte[] updateLSAHChecksumAndLength(byte[] buffer) {
-        //check buffer to be updated contains bytes to be updated, otherwise the method was called with invalid data.
-        if (buffer.length < LSA_HEADER_LENGTH)
-            StdDaemon.handleDaemonError("RLSA update checksum method was passed an invalid buffer", null);
+    private void putHeader(ByteBuffer out) {
+        out.putShort((short) this.getAge());//lsage //0,1
+        out.put((byte) 0x00);//options //2
+        out.put(LS_TYPE);//LSA Type (Router LSA) //3
+        out.putInt(this.lsID);//LS ID //4,5,6,7
+        out.putInt(this.advertisingRouter);//Advertising router //8,9,10,11
+        out.putInt(this.lsSeqNumber);//ls sequence number //12,13,14,15
+        out.putShort((short) 0);//ls checksum //16,17
+        out.putShort((short) 0);//length //18,19
+    }
 
-        //length
+    /**<p><h1>Finish LSA Checksum and Length Fields</h1></p>
+     * <p>Updates the fields length and checksum for an LSA encoded into a buffer, from start up to the buffer position.
+     * Checksum is in bytes 16 and 17, length is in bytes 18 and 19 of the LSA. The checksum used is specifically the
+     * fletcher16 checksum for LSA headers.</p>
+     * @param out buffer the LSA was encoded into
+     * @param start buffer index of the start of the LSA
+     */
+    private static void finishLSA(ByteBuffer out, int start) {
         //could also overflow. Again, with the number of interfaces in play, not likely.
-        byte[] pLength = Shorts.toByteArray((short) buffer.length);
-        buffer[18] = pLength[0];
-        buffer[19] = pLength[1];
-
-        //Calc checksum. Take returned int, update the value in the buffer.
-        byte[] checksum = Ints.toByteArray(fletcherChecksum16(buffer));
-        buffer[16] = checksum[2];
-        buffer[17] = checksum[3];
-
-        return buffer;
+        int length = out.position() - start;
+        out.putShort(start + 18, (short) length);
+        out.putShort(start + 16, (short) fletcherChecksum16(out, start, length));
     }
     //endregion OBJECT METHODS
 }
@@ -18,39 +18,37 @@ class RouterInterface {
     //region STATIC PROPERTIES
     private static final List<RouterInterface> _RouterInterfaces = new ArrayList<>();
     private static final long REFERENCE_BANDWIDTH = InterfaceType.E100BASET.getBandwidth();
+    private static volatile IngressTable ingressTable = IngressTable.EMPTY;
     //endregion
 
     //region STATIC METHODS
+    /**<p><h1>Rebuild Ingress Table</h1></p>
+     * <p>Rebuild the lookup table used to classify received packets from all created Router Interfaces. Must be
+     * called once interfaces are created or their addresses change, which is when the config is read.</p>
+     */
+    static void rebuildIngressTable() {
+        ingressTable = new IngressTable(_RouterInterfaces);
+    }
+
     /**<p><h1>Get Interface Object by IP</h1></p>
-     * <p>Searches the internal list of all created Router Interfaces for a specific interface that
-     * matches in IP.</p>
-     * @param ip an IP address to search for
+     * <p>Looks up the ingress table for a specific interface that matches in IP.</p>
+     * @param ip an IPv4 address to search for, as an int
      * @return First RouterInterface associated with the IP, or null
      */
-    public static RouterInterface getInterfaceByIP(IPAddress ip) {
-        for(RouterInterface r: _RouterInterfaces) {
-            if (r.addrIPv4.toIPv4().equals(ip.toIPv4()))
-                return r;
-        }
-        return null;
+    public static RouterInterface getInterfaceByIP(int ip) {
+        return ingressTable.getInterfaceByAddress(ip);
     }
 
     /**<p><h1>Get Interface Object by Network Address</h1></p>
-     * <p>Searches the internal list of all created Router Interfaces for a specific interface that shares the same
-     * network address. Network addresses is a host address zeroed after CIDR prefix length. Returned interface will
-     * only be an interface that shares the same network address as the specified interface.</p>
-     * <p>The provided ip address' prefix length is not taken into account, only the CIDR prefix of the checking
-     * interface.</p>
-     * @param ip ip address to check against all interfaces for a match in network address
-     * @return a router interface object that shares the same network address as ip
+     * <p>Looks up the ingress table for a specific interface that shares the same network address. Network addresses
+     * is a host address zeroed after CIDR prefix length. Where interface networks overlap, the interface with the
+     * longest prefix is returned.</p>
+     * <p>Only the CIDR prefix of the checking interface is taken into account.</p>
+     * @param ip IPv4 address to check against all interfaces for a match in network address, as an int
+     * @return a router interface object that shares the same network address as ip, or null
      */
-    public static RouterInterface getInterfaceByIPNetwork(IPAddress ip) {
-        for (RouterInterface r: _RouterInterfaces) {
-            if (r.isAddressInNetwork(ip)) {
-                return r;
-            }
-        }
-        return null;
+    public static RouterInterface getInterfaceByIPNetwork(int ip) {
+        return ingressTable.getInterfaceByNetwork(ip);
     }
     //endregion
 
@@ -63,6 +61,8 @@ class RouterInterface {
     long bandwidth; //BW used by default OSPF calculation, derived from interface type in constructor.
     int cost = -1;
     DHExchange dhExchange;
+    InterfaceChannel channel;//Set by the PacketEngine for enabled interfaces. Used to send out this interface.
+    HelloTemplate helloTemplate;//Set by the daemon for enabled interfaces. Hello listing this interface's neighbours.
     //endregion
 
     //region OBJECT METHODS
@@ -133,17 +133,6 @@ class RouterInterface {
         return NetworkInterface.getByName(this.name);
     }
 
-    /**<p><h1>Is Address in Network</h1></p>
-     * <p>Returns whether provided IP is within the network address range of the current interface. That is, if the
-     * provided IP uses the same prefix length mask as the current interfaces IPv4, they are in the same network.</p>
-     * @param ip ip to check against the current interface's addrIPv4
-     * @return true if the network addresses match
-     */
-    private boolean isAddressInNetwork(IPAddress ip) {
-        ip = ip.setPrefixLength(addrIPv4.getNetworkPrefixLength());
-        return addrIPv4.toZeroHost().equals(ip.toZeroHost());
-    }
-
     /**<p><h1>Print Properties Test</h1></p>
      * <p>Testing method to be thrown into constructor.</p>
      */
@@ -0,0 +1,714 @@
+package com.mws.ospf;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**<p><h1>Shortest Path First</h1></p>
+ * <p>The shortest path tree calculation of RFC 2328 section 16.1, over the router LSAs of the LSDB, rooted at this node.
+ * Produces the distance, parent and next hop of every reachable router.</p>
+ * <p>Routers are numbered from 0, the root being 0, through an open addressed table of RIDs. The links of each router
+ * are held as a row of primitive arrays, so Dijkstra's algorithm runs over an indexed binary heap of router numbers,
+ * with decrease key, in O((V + E) log V), allocating nothing per router or link.</p>
+ * <p>As in the RFC, a link is only used if the router at the other end links back, and LSAs at MaxAge are not used.
+ * The next hop of a router is the link data, the neighbour interface address, of the first link on its path from this
+ * node.</p>
+ * <p>The calculation is kept between runs, and updated incrementally from the LSDB change log. Only the rows of routers
+ * whose LSA changed are rebuilt. Routers whose link from their parent in the tree is gone or costs more, and everything
+ * below them, are cut off the tree, then joined back through their best link from the rest of it. Links that may have
+ * got better are relaxed from where they start, and Dijkstra's algorithm carries on from there, only over routers whose
+ * distance changes. A full calculation is run when there is no earlier calculation, the change log does not reach back
+ * far enough, or the changes touch so much of the tree that starting over is cheaper.</p>
+ * <p>Calculations are throttled. Every LSDB change schedules a calculation, and changes made while one is scheduled
+ * join it, so a burst of changes, such as adjacencies forming, is calculated once. The first change after a quiet
+ * period waits the initial delay. Each calculation after that waits out a hold time from the last, which doubles while
+ * changes keep coming, up to the max wait, and starts over once the LSDB is quiet for a whole hold time.</p>
+ */
+class SPF {
+    //region STATIC CONSTANTS
+    static final int UNREACHABLE = Integer.MAX_VALUE;
+    static final int NO_ROUTER = -1;
+    private static final int ROOT = 0;
+    private static final int[] NO_LINKS = new int[0];
+    private static final boolean[] NO_LINKS_USED = new boolean[0];
+    static final long INITIAL_DELAY_MS = 50;//Wait after the first change, for the rest of a burst
+    static final long HOLD_MS = 200;//Least time between calculations, when changes keep coming
+    static final long MAX_WAIT_MS = 5000;//Most time between calculations, and the most the hold time backs off to
+    //endregion STATIC CONSTANTS
+
+    //region STATIC PROPERTIES
+    private static volatile Result lastResult;
+    private static SPF calculation;//Kept for incremental updates. Guarded by SPF.class
+    private static final ProtocolTimer timerSPF = new ProtocolTimer(SPF::runScheduled, TimerService.taskExecutor);
+    //Throttling state, guarded by scheduleLock, so scheduling never waits for a calculation.
+    private static final Object scheduleLock = new Object();
+    private static int pendingEvents = 0;
+    private static long holdMs = HOLD_MS;
+    private static long lastRunMs = Long.MIN_VALUE / 2;//Monotonic, from RLSA.nowMs. Never run, so the first change is quiet
+    //endregion STATIC PROPERTIES
+
+    //region STATIC METHODS
+    /**<p><h1>Schedule Calculation</h1></p>
+     * <p>Schedule the routes to be calculated for an LSDB change. If a calculation is already scheduled, the change
+     * joins it. Otherwise the calculation waits the initial delay, or, if the last calculation was within the hold
+     * time, the rest of the hold time, and the hold time doubles, up to the max wait. Called by the LSDB for every
+     * snapshot it publishes.</p>
+     * @param changes number of LSDB changes in the snapshot
+     */
+    static void schedule(int changes) {
+        synchronized (scheduleLock) {
+            boolean isScheduled = pendingEvents > 0;
+            pendingEvents += changes;
+            if (isScheduled)
+                return;
+
+            long sinceLastMs = RLSA.nowMs() - lastRunMs;
+            long delayMs;
+            if (sinceLastMs >= holdMs) {
+                //Quiet for the whole hold time, so the backoff starts over.
+                delayMs = INITIAL_DELAY_MS;
+                holdMs = HOLD_MS;
+            } else {
+                delayMs = Math.max(INITIAL_DELAY_MS, holdMs - sinceLastMs);
+                holdMs = Math.min(holdMs * 2, MAX_WAIT_MS);
+            }
+            timerSPF.schedule(delayMs);
+        }
+    }
+
+    /**<p><h1>Run Scheduled Calculation</h1></p>
+     * <p>Called by timerSPF. Take the changes waiting, so changes from now on schedule the next calculation, then
+     * calculate.</p>
+     */
+    private static void runScheduled() {
+        int events;
+        synchronized (scheduleLock) {
+            events = pendingEvents;
+            pendingEvents = 0;
+            lastRunMs = RLSA.nowMs();
+        }
+        calculate(events);
+    }
+
+    /**<p><h1>Calculate Routes</h1></p>
+     * <p>Update the calculation to the current LSDB snapshot, incrementally where it can, and keep the result. Nothing
+     * is calculated if the LSDB has not changed since the last result. The time taken, and the number of changes the
+     * calculation covered, are recorded in Stat.</p>
+     * @param events number of LSDB changes scheduled since the last calculation
+     */
+    private static synchronized void calculate(int events) {
+        Result result = lastResult;
+        LSDB.ChangeSet changeSet = Config.lsdb.getChangesSince(result == null ? -1 : result.version);
+        LSDB.Snapshot snapshot = changeSet.snapshot();
+        if (result != null && result.version == snapshot.version())
+            return;
+
+        long start = System.nanoTime();
+        int rootRID = Config.thisNode.getRID();
+        boolean isIncremental = calculation != null && calculation.rootRID == rootRID &&
+                changeSet.changes() != null && calculation.update(snapshot, changeSet.changes());
+        if (!isIncremental) {
+            calculation = new SPF(snapshot.lsas(), rootRID);
+            calculation.runFull();
+        }
+        long nanos = System.nanoTime() - start;
+
+        lastResult = calculation.makeResult(snapshot.version(), nanos, isIncremental);
+        Stat.recordSPF(isIncremental, nanos, events);
+    }
+
+    /**<p><h1>Get Last Result</h1></p>
+     * @return the last result calculated, or null if routes were never calculated
+     */
+    static Result getLastResult() {
+        return lastResult;
+    }
+    //endregion STATIC METHODS
+
+    //region OBJECT PROPERTIES
+    private final int rootRID;
+    private final RIDIndex ridIndex;
+    private final IndexedHeap candidates;
+    private int routerCount = 0;
+    private int[] rids;//Router number to RID
+    private int[][] linkTargets;//Router number at the other end of each link, per router
+    private int[][] linkCosts;//Metric of each link, per router
+    private int[][] linkData;//Link data of each link, the neighbour interface address, per router
+    private boolean[][] isLinkUsed;//Whether the router at the other end of each link links back, per router
+    private int[] distances;//Cost from the root, or UNREACHABLE
+    private int[] parents;//Router number of the parent in the tree, or NO_ROUTER
+    private int[] nextHops;
+    //endregion OBJECT PROPERTIES
+
+    //region OBJECT METHODS
+    /**<p><h1>SPF Constructor</h1></p>
+     * <p>Number the routers and build the links of every router, ready for a full calculation.</p>
+     * @param lsas router LSAs, from an LSDB snapshot
+     * @param rootRID RID of the router to calculate routes from
+     */
+    SPF(List<RLSA> lsas, int rootRID) {
+        int capacity = Math.max(16, lsas.size() + 1);
+        this.rootRID = rootRID;
+        this.ridIndex = new RIDIndex(capacity);
+        this.candidates = new IndexedHeap(capacity);
+        this.rids = new int[capacity];
+        this.linkTargets = new int[capacity][];
+        this.linkCosts = new int[capacity][];
+        this.linkData = new int[capacity][];
+        this.isLinkUsed = new boolean[capacity][];
+        this.distances = new int[capacity];
+        this.parents = new int[capacity];
+        this.nextHops = new int[capacity];
+
+        //The root is always router 0, even without an LSA, so routes can be looked up from it.
+        getOrAddRouter(rootRID);
+        for (RLSA lsa: lsas)
+            setLinks(getOrAddRouter(lsa.advertisingRouter), lsa);
+
+        for (int v = 0; v < routerCount; v++)
+            refreshLinkUsage(v);
+    }
+
+    /**<p><h1>Get or Add Router</h1></p>
+     * <p>Get the number of a router, numbering it if it is new. A new router has no links and is unreachable.</p>
+     * @param rid RID of the router
+     * @return router number
+     */
+    private int getOrAddRouter(int rid) {
+        int v = ridIndex.get(rid);
+        if (v != NO_ROUTER)
+            return v;
+
+        if (routerCount == rids.length)
+            grow(rids.length * 2);
+
+        v = routerCount++;
+        ridIndex.put(rid, v);
+        rids[v] = rid;
+        linkTargets[v] = linkCosts[v] = linkData[v] = NO_LINKS;
+        isLinkUsed[v] = NO_LINKS_USED;
+        distances[v] = UNREACHABLE;
+        parents[v] = NO_ROUTER;
+        return v;
+    }
+
+    /**<p><h1>Grow</h1></p>
+     * @param capacity number of routers to make room for
+     */
+    private void grow(int capacity) {
+        rids = Arrays.copyOf(rids, capacity);
+        linkTargets = Arrays.copyOf(linkTargets, capacity);
+        linkCosts = Arrays.copyOf(linkCosts, capacity);
+        linkData = Arrays.copyOf(linkData, capacity);
+        isLinkUsed = Arrays.copyOf(isLinkUsed, capacity);
+        distances = Arrays.copyOf(distances, capacity);
+        parents = Arrays.copyOf(parents, capacity);
+        nextHops = Arrays.copyOf(nextHops, capacity);
+        candidates.grow(capacity);
+    }
+
+    /**<p><h1>Set Links</h1></p>
+     * <p>Rebuild the links of a router from its LSA. Routers at the other end are numbered if new. Whether each link is
+     * used is left to refreshLinkUsage.</p>
+     * @param v router number
+     * @param lsa LSA of the router, or null if the router has no LSA
+     */
+    private void setLinks(int v, RLSA lsa) {
+        if (lsa == null || lsa.getAge() >= RLSA.MAX_AGE) {
+            linkTargets[v] = linkCosts[v] = linkData[v] = NO_LINKS;
+            isLinkUsed[v] = NO_LINKS_USED;
+            return;
+        }
+
+        int links = lsa.links.size();
+        int[] targets = new int[links];
+        int[] costs = new int[links];
+        int[] data = new int[links];
+        for (int e = 0; e < links; e++) {
+            LinkData link = lsa.links.get(e);
+            targets[e] = getOrAddRouter(link.getLinkID());
+            costs[e] = link.getMetric();
+            data[e] = link.getData();
+        }
+        linkTargets[v] = targets;
+        linkCosts[v] = costs;
+        linkData[v] = data;
+        isLinkUsed[v] = new boolean[links];
+    }
+
+    /**<p><h1>Refresh Link Usage</h1></p>
+     * <p>Only use links where the other router links back, RFC 2328 section 16.1 (2) (b).</p>
+     * @param v router number
+     */
+    private void refreshLinkUsage(int v) {
+        for (int e = 0; e < linkTargets[v].length; e++)
+            isLinkUsed[v][e] = hasLink(linkTargets[v][e], v);
+    }
+
+    /**<p><h1>Has Link</h1></p>
+     * @param from router number at the start of the link
+     * @param to router number at the end of the link
+     * @return true if from links to to
+     */
+    private boolean hasLink(int from, int to) {
+        for (int target: linkTargets[from]) {
+            if (target == to)
+                return true;
+        }
+        return false;
+    }
+
+    /**<p><h1>Run Full Calculation</h1></p>
+     * <p>Dijkstra's algorithm from the root, over every router.</p>
+     */
+    void runFull() {
+        Arrays.fill(distances, 0, routerCount, UNREACHABLE);
+        Arrays.fill(parents, 0, routerCount, NO_ROUTER);
+        distances[ROOT] = 0;
+        candidates.offer(ROOT, distances);
+        runDijkstra();
+    }
+
+    /**<p><h1>Run Dijkstra</h1></p>
+     * <p>Take routers from the heap in order of distance, relaxing the links of each, until the heap is empty.</p>
+     */
+    private void runDijkstra() {
+        while (!candidates.isEmpty()) {
+            int v = candidates.poll(distances);
+            for (int e = 0; e < linkTargets[v].length; e++)
+                relaxLink(v, e);
+        }
+    }
+
+    /**<p><h1>Relax Link</h1></p>
+     * <p>Make the router at the other end of a link a child of v, if the link is used and reaches it more cheaply. A
+     * router's next hop is the link data of the root's link on its path.</p>
+     * @param v router number at the start of the link
+     * @param e index of the link in the row of v
+     */
+    private void relaxLink(int v, int e) {
+        if (!isLinkUsed[v][e] || distances[v] == UNREACHABLE)
+            return;
+
+        //Long, as a path of many high metric links can pass the int range.
+        int w = linkTargets[v][e];
+        long distance = (long) distances[v] + linkCosts[v][e];
+        if (distance >= distances[w])
+            return;
+
+        distances[w] = (int) Math.min(distance, UNREACHABLE - 1);
+        parents[w] = v;
+        nextHops[w] = v == ROOT ? linkData[v][e] : nextHops[v];
+        candidates.offer(w, distances);
+    }
+
+    /**<p><h1>Relax Links To</h1></p>
+     * <p>Relax the links from one router to another.</p>
+     * @param from router number at the start of the links
+     * @param to router number at the end of the links
+     */
+    private void relaxLinksTo(int from, int to) {
+        for (int e = 0; e < linkTargets[from].length; e++) {
+            if (linkTargets[from][e] == to)
+                relaxLink(from, e);
+        }
+    }
+
+    /**<p><h1>Update Incrementally</h1></p>
+     * <p>Update the calculation for LSDB changes, only working on the part of the tree the changes affect.</p>
+     * @param snapshot LSDB snapshot the changes lead to
+     * @param changes every change since the last calculation, in order
+     * @return true if updated, or false if a full calculation is cheaper, in which case this calculation must be
+     * replaced
+     */
+    boolean update(LSDB.Snapshot snapshot, List<LSAChange> changes) {
+        //region APPLY CHANGES
+        //Only the latest LSA of each router matters, so each changed router is rebuilt once, from the snapshot.
+        BitSet changed = new BitSet();
+        for (LSAChange change: changes) {
+            LSAKey key = change.getKey();
+            if (key.lsType() == RLSA.LS_TYPE)
+                changed.set(getOrAddRouter(key.advertisingRouter()));
+        }
+        if (changed.cardinality() > routerCount / 4)
+            return false;
+
+        //Routers at the other end of an old or new link of a changed router may use their link back differently now.
+        BitSet refresh = (BitSet) changed.clone();
+        for (int v = changed.nextSetBit(0); v >= 0; v = changed.nextSetBit(v + 1)) {
+            for (int target: linkTargets[v])
+                refresh.set(target);
+            setLinks(v, snapshot.get(new LSAKey(RLSA.LS_TYPE, rids[v], rids[v])));
+            for (int target: linkTargets[v])
+                refresh.set(target);
+        }
+        for (int v = refresh.nextSetBit(0); v >= 0; v = refresh.nextSetBit(v + 1))
+            refreshLinkUsage(v);
+        //endregion APPLY CHANGES
+
+        //region CUT AFFECTED SUBTREES
+        //Only links from or to a changed router can have changed, so only those tree links are checked. Everything
+        //below a router cut off the tree is cut with it.
+        int[] firstChild = new int[routerCount];
+        int[] nextSibling = new int[routerCount];
+        Arrays.fill(firstChild, NO_ROUTER);
+        for (int v = 0; v < routerCount; v++) {
+            if (parents[v] != NO_ROUTER) {
+                nextSibling[v] = firstChild[parents[v]];
+                firstChild[parents[v]] = v;
+            }
+        }
+
+        BitSet affected = new BitSet();
+        int[] stack = new int[routerCount];
+        for (int v = 0; v < routerCount; v++) {
+            int p = parents[v];
+            if (p == NO_ROUTER || affected.get(v) || !(changed.get(p) || changed.get(v)) || isTreeLinkIntact(p, v))
+                continue;
+
+            int top = 0;
+            stack[top++] = v;
+            while (top > 0) {
+                int w = stack[--top];
+                affected.set(w);
+                for (int child = firstChild[w]; child != NO_ROUTER; child = nextSibling[child]) {
+                    if (!affected.get(child))
+                        stack[top++] = child;
+                }
+            }
+        }
+        if (affected.cardinality() > routerCount / 2)
+            return false;
+
+        for (int v = affected.nextSetBit(0); v >= 0; v = affected.nextSetBit(v + 1)) {
+            distances[v] = UNREACHABLE;
+            parents[v] = NO_ROUTER;
+        }
+        //endregion CUT AFFECTED SUBTREES
+
+        //region REJOIN AND RELAX
+        //Join each cut router back through its best link from a router still on the tree. Used links go both ways, so
+        //the routers linking to a cut router are among its own link targets.
+        for (int v = affected.nextSetBit(0); v >= 0; v = affected.nextSetBit(v + 1)) {
+            for (int target: linkTargets[v]) {
+                if (!affected.get(target))
+                    relaxLinksTo(target, v);
+            }
+        }
+
+        //Every other changed link starts or ends at a changed router still on the tree, and can only have got better.
+        //Cut routers relax their own links when taken from the heap.
+        for (int v = changed.nextSetBit(0); v >= 0; v = changed.nextSetBit(v + 1)) {
+            if (affected.get(v))
+                continue;
+
+            for (int e = 0; e < linkTargets[v].length; e++) {
+                relaxLink(v, e);
+                if (!affected.get(linkTargets[v][e]))
+                    relaxLinksTo(linkTargets[v][e], v);
+            }
+        }
+
+        runDijkstra();
+        //endregion REJOIN AND RELAX
+        return true;
+    }
+
+    /**<p><h1>Is Tree Link Intact</h1></p>
+     * <p>Check the link a router joined the tree through is still used at the same cost, and for a router joined
+     * straight to the root, with the same next hop.</p>
+     * @param p router number of the parent
+     * @param v router number of the child
+     * @return true if the tree link is unchanged
+     */
+    private boolean isTreeLinkIntact(int p, int v) {
+        for (int e = 0; e < linkTargets[p].length; e++) {
+            if (linkTargets[p][e] == v && isLinkUsed[p][e] && (long) distances[p] + linkCosts[p][e] == distances[v] &&
+                    (p != ROOT || linkData[p][e] == nextHops[v]))
+                return true;
+        }
+        return false;
+    }
+
+    /**<p><h1>Make Result</h1></p>
+     * <p>Copy the calculation into a result, which later updates do not change.</p>
+     * @param version version of the LSDB snapshot calculated
+     * @param nanos time taken by the calculation
+     * @param isIncremental true if the calculation was an incremental update
+     * @return the result
+     */
+    Result makeResult(long version, long nanos, boolean isIncremental) {
+        return new Result(version, Arrays.copyOf(rids, routerCount), ridIndex.copy(),
+                Arrays.copyOf(distances, routerCount), Arrays.copyOf(parents, routerCount),
+                Arrays.copyOf(nextHops, routerCount), nanos, isIncremental);
+    }
+    //endregion OBJECT METHODS
+
+    /**<p><h1>SPF Result</h1></p>
+     * <p>Shortest path tree and next hop table of one calculation, indexed by router number. Never modified.</p>
+     * @param version version of the LSDB snapshot the result was calculated from
+     * @param rids RID of each router
+     * @param ridIndex router number of each RID
+     * @param distances cost from the root to each router, or UNREACHABLE
+     * @param parents router number of the parent of each router in the tree, or NO_ROUTER
+     * @param nextHops neighbour interface address to send to each router through, as an int
+     * @param nanos time taken by the calculation, including building the links
+     * @param isIncremental true if the calculation was an incremental update
+     */
+    record Result(long version, int[] rids, RIDIndex ridIndex, int[] distances, int[] parents, int[] nextHops,
+                  long nanos, boolean isIncremental) {
+        /**<p><h1>Get Distance</h1></p>
+         * @param rid RID of a router
+         * @return cost from this node to the router, or UNREACHABLE
+         */
+        int getDistance(int rid) {
+            int v = ridIndex.get(rid);
+            return v == NO_ROUTER ? UNREACHABLE : distances[v];
+        }
+
+        /**<p><h1>Get Next Hop</h1></p>
+         * @param rid RID of a router
+         * @return neighbour interface address to reach the router through, as an int, or 0 if unreachable or the root
+         */
+        int getNextHop(int rid) {
+            int v = ridIndex.get(rid);
+            return v == NO_ROUTER || distances[v] == UNREACHABLE ? 0 : nextHops[v];
+        }
+
+        /**<p><h1>Get Route String</h1></p>
+         * @param rid RID of a router
+         * @return the cost and next hop to the router, for the UI and log messages
+         */
+        String getRouteString(int rid) {
+            int distance = getDistance(rid);
+            if (distance == UNREACHABLE)
+                return Node.ridToString(rid) + ": unreachable";
+            if (rid == rids[ROOT])
+                return Node.ridToString(rid) + ": this node";
+            return Node.ridToString(rid) + ": cost " + distance + " via " + Node.ridToString(getNextHop(rid));
+        }
+
+        /**<p><h1>Get Reachable Count</h1></p>
+         * @return number of routers reachable from this node, including this node
+         */
+        int getReachableCount() {
+            int count = 0;
+            for (int distance: distances) {
+                if (distance != UNREACHABLE)
+                    count++;
+            }
+            return count;
+        }
+    }
+
+    /**<p><h1>RID Index</h1></p>
+     * <p>Open addressed table from RID to router number, with linear probing. Kept at most half full, so probes stay
+     * short, doubling in size when it would be more.</p>
+     */
+    static final class RIDIndex {
+        //region OBJECT PROPERTIES
+        private int[] keys;
+        private int[] values;
+        private boolean[] isUsed;
+        private int mask;
+        private int size = 0;
+        //endregion OBJECT PROPERTIES
+
+        //region OBJECT METHODS
+        /**<p><h1>RID Index Constructor</h1></p>
+         * @param capacity RIDs held before the table grows
+         */
+        private RIDIndex(int capacity) {
+            allocate(Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) << 1);
+        }
+
+        /**<p><h1>Allocate</h1></p>
+         * @param slots number of slots, a power of 2
+         */
+        private void allocate(int slots) {
+            this.keys = new int[slots];
+            this.values = new int[slots];
+            this.isUsed = new boolean[slots];
+            this.mask = slots - 1;
+        }
+
+        /**<p><h1>Slot</h1></p>
+         * @param rid RID to find
+         * @return slot holding the RID, or the empty slot it would be put in
+         */
+        private int slot(int rid) {
+            //Spread the bits of the RID, as RIDs are often sequential addresses.
+            int hash = rid * 0x9E3779B9;
+            int i = (hash ^ hash >>> 16) & mask;
+            while (isUsed[i] && keys[i] != rid)
+                i = (i + 1) & mask;
+            return i;
+        }
+
+        /**<p><h1>Put</h1></p>
+         * <p>Add a RID not already in the table.</p>
+         * @param rid RID of a router
+         * @param v router number
+         */
+        private void put(int rid, int v) {
+            if (++size * 2 > keys.length) {
+                int[] oldKeys = keys;
+                int[] oldValues = values;
+                boolean[] oldIsUsed = isUsed;
+                allocate(keys.length * 2);
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldIsUsed[i])
+                        insert(oldKeys[i], oldValues[i]);
+                }
+            }
+            insert(rid, v);
+        }
+
+        /**<p><h1>Insert</h1></p>
+         * @param rid RID of a router
+         * @param v router number
+         */
+        private void insert(int rid, int v) {
+            int i = slot(rid);
+            keys[i] = rid;
+            values[i] = v;
+            isUsed[i] = true;
+        }
+
+        /**<p><h1>Get</h1></p>
+         * @param rid RID of a router
+         * @return router number, or NO_ROUTER
+         */
+        int get(int rid) {
+            int i = slot(rid);
+            return isUsed[i] ? values[i] : NO_ROUTER;
+        }
+
+        /**<p><h1>Copy</h1></p>
+         * @return a copy of the table, for a result
+         */
+        private RIDIndex copy() {
+            RIDIndex copy = new RIDIndex(2);
+            copy.keys = keys.clone();
+            copy.values = values.clone();
+            copy.isUsed = isUsed.clone();
+            copy.mask = mask;
+            copy.size = size;
+            return copy;
+        }
+        //endregion OBJECT METHODS
+    }
+
+    /**<p><h1>Indexed Heap</h1></p>
+     * <p>Binary min heap of router numbers, ordered by distance. The position of each router in the heap is kept, so a
+     * router already in the heap moves up when its distance falls, rather than being added again. The heap is empty
+     * between calculations, and kept for the next.</p>
+     */
+    private static final class IndexedHeap {
+        //region OBJECT PROPERTIES
+        private int[] heap;
+        private int[] positions;//Index of each router in heap, or -1
+        private int size = 0;
+        //endregion OBJECT PROPERTIES
+
+        //region OBJECT METHODS
+        /**<p><h1>Indexed Heap Constructor</h1></p>
+         * @param capacity number of routers
+         */
+        private IndexedHeap(int capacity) {
+            this.heap = new int[capacity];
+            this.positions = new int[capacity];
+            Arrays.fill(positions, -1);
+        }
+
+        /**<p><h1>Grow</h1></p>
+         * @param capacity number of routers to make room for
+         */
+        private void grow(int capacity) {
+            int oldCapacity = positions.length;
+            heap = Arrays.copyOf(heap, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+            Arrays.fill(positions, oldCapacity, capacity, -1);
+        }
+
+        /**<p><h1>Is Empty</h1></p>
+         * @return true if no router is in the heap
+         */
+        private boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**<p><h1>Offer</h1></p>
+         * <p>Add a router, or move it up if already in the heap. Its distance must not have increased.</p>
+         * @param v router number
+         * @param distances distance of each router
+         */
+        private void offer(int v, int[] distances) {
+            int i = positions[v];
+            if (i == -1) {
+                i = size++;
+                heap[i] = v;
+                positions[v] = i;
+            }
+            siftUp(i, distances);
+        }
+
+        /**<p><h1>Poll</h1></p>
+         * @param distances distance of each router
+         * @return the router with the least distance, removed from the heap
+         */
+        private int poll(int[] distances) {
+            int v = heap[0];
+            positions[v] = -1;
+            int last = heap[--size];
+            if (size > 0) {
+                heap[0] = last;
+                positions[last] = 0;
+                siftDown(0, distances);
+            }
+            return v;
+        }
+
+        /**<p><h1>Sift Up</h1></p>
+         * @param i heap index of the router to move up
+         * @param distances distance of each router
+         */
+        private void siftUp(int i, int[] distances) {
+            int v = heap[i];
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                int p = heap[parent];
+                if (distances[p] <= distances[v])
+                    break;
+                heap[i] = p;
+                positions[p] = i;
+                i = parent;
+            }
+            heap[i] = v;
+            positions[v] = i;
+        }
+
+        /**<p><h1>Sift Down</h1></p>
+         * @param i heap index of the router to move down
+         * @param distances distance of each router
+         */
+        private void siftDown(int i, int[] distances) {
+            int v = heap[i];
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && distances[heap[child + 1]] < distances[heap[child]])
+                    child++;
+                int c = heap[child];
+                if (distances[v] <= distances[c])
+                    break;
+                heap[i] = c;
+                positions[c] = i;
+                i = child;
+            }
+            heap[i] = v;
+            positions[v] = i;
+        }
+        //endregion OBJECT METHODS
+    }
+}
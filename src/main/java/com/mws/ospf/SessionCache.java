@@ -0,0 +1,314 @@
+package com.mws.ospf;
+
+import com.google.common.primitives.Ints;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**<p><h1>Session Cache</h1></p>
+ * <p>Bounded cache of the DH shared secret made with each neighbour, keyed by neighbour RID and interface. A neighbour
+ * that goes down and comes back within the time to live can resume with a key derived from the cached secret, using a
+ * Session Resume packet (ospfv4 type 7, new packet type), rather than a full DH exchange.</p>
+ * <p>A secret is cached when it is derived, and does not expire while the neighbour is up. The time to live starts when
+ * the neighbour goes down, and stops again when the session is resumed. Once full, the least recently used entry is
+ * evicted.</p>
+ * <p>Resumption is a request, a response and a confirm, each with a HMAC-SHA256 proof of the cached secret. The
+ * request carries a fresh nonce of the requester, and the response a fresh challenge nonce of the responder. The
+ * responder only sets the key once the confirm returns its challenge, so a replayed request or confirm can't set a key.
+ * Both nodes derive the new key from the cached secret and both nonces, so a key is never used twice. The cached
+ * secret itself is never sent.</p>
+ */
+class SessionCache {
+    //region STATIC CONSTANTS
+    static final int MAX_ENTRIES = 64;
+    static final long TTL_MS = 120_000;//Time a secret may be resumed after the neighbour goes down
+    static final int NONCE_LENGTH = 16;
+    static final int PROOF_LENGTH = 32;//HMAC-SHA256
+    static final int PACKET_LENGTH = 96;//Session Resume packet, header to the end of the proof
+    static final byte[] NO_NONCE = new byte[NONCE_LENGTH];//Response nonce of a request. Never modified
+    static final byte RESUME_REQUEST = 0x01;
+    static final byte RESUME_RESPONSE = 0x02;
+    private static final byte KEY_LABEL = 0x03;//Must differ from every message type, so no proof is a key
+    static final byte RESUME_CONFIRM = 0x04;
+    static final int MAX_CHALLENGES = 4;//Responses a responder keeps waiting for a confirm
+    static final int MAX_CONFIRMS = 3;//Confirms resent before a requester drops its resumed key
+    //Time a response waits for its confirm, while a DH secret for the neighbour is held back
+    static final long CHALLENGE_TIMEOUT_MS = (MAX_CONFIRMS + 1) * HelloScheduler.HELLO_INTERVAL * 1000L;
+    private static final SecureRandom nonceRandom = new SecureRandom();
+    private static final ThreadLocal<Mac> hmac = ThreadLocal.withInitial(() -> {
+        try {
+            return Mac.getInstance("HmacSHA256");
+        } catch (GeneralSecurityException ex) {
+            StdDaemon.handleDaemonError("UNLIKELY EXCEPTION: NoSuchAlgorithm \"HmacSHA256\"", ex);
+            return null;
+        }
+    });
+    //endregion STATIC CONSTANTS
+
+    //region STATIC PROPERTIES
+    //Access ordered, so the eldest entry is the least recently used. Guarded by sessions.
+    private static final LinkedHashMap<Long, Session> sessions = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Session> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    //endregion STATIC PROPERTIES
+
+    //region STATIC METHODS
+    /**<p><h1>Session Key</h1></p>
+     * @param neighbourRID RID of the neighbour
+     * @param rInt interface the neighbour is on
+     * @return map key for the neighbour on the interface
+     */
+    private static long sessionKey(int neighbourRID, RouterInterface rInt) {
+        return (long) neighbourRID << 32 | Ints.fromByteArray(rInt.addrIPv4.getBytes()) & 0xffffffffL;
+    }
+
+    /**<p><h1>Put Secret</h1></p>
+     * <p>Cache the DH shared secret made with a neighbour, replacing any older secret. The secret does not expire until
+     * the neighbour goes down.</p>
+     * @param neighbour neighbour the secret was made with
+     * @param secret DH shared secret, copied into the cache
+     * @param suite cipher suite negotiated with the neighbour
+     */
+    static void put(NeighbourNode neighbour, byte[] secret, CipherSuite suite) {
+        synchronized (sessions) {
+            sessions.put(sessionKey(neighbour.getRID(), neighbour.rIntOwner),
+                    new Session(secret.clone(), suite));
+        }
+    }
+
+    /**<p><h1>Start Expiry</h1></p>
+     * <p>Called when a neighbour goes down. Starts the time to live of its cached secret, and clears resumption state
+     * left from an earlier time the neighbour went down.</p>
+     * @param neighbour neighbour that went down
+     */
+    static void startExpiry(NeighbourNode neighbour) {
+        Session session;
+        synchronized (sessions) {
+            session = sessions.get(sessionKey(neighbour.getRID(), neighbour.rIntOwner));
+            if (session == null)
+                return;
+            session.expiresAt = RLSA.nowMs() + TTL_MS;
+        }
+
+        //Not nested in the sessions lock, which is taken while holding the session.
+        synchronized (session) {
+            session.pendingNonce = null;
+            session.challenges.clear();
+            session.confirmRequestNonce = null;
+            session.confirmResponseNonce = null;
+        }
+    }
+
+    /**<p><h1>Stop Expiry</h1></p>
+     * <p>Called when a session is resumed with a neighbour. The cached secret does not expire again until the neighbour
+     * next goes down.</p>
+     * @param neighbour neighbour the session was resumed with
+     */
+    static void stopExpiry(NeighbourNode neighbour) {
+        synchronized (sessions) {
+            Session session = sessions.get(sessionKey(neighbour.getRID(), neighbour.rIntOwner));
+            if (session != null)
+                session.expiresAt = Long.MAX_VALUE;
+        }
+    }
+
+    /**<p><h1>Get Session</h1></p>
+     * <p>Get the cached session with a neighbour, removing it if it expired.</p>
+     * @param neighbourRID RID of the neighbour
+     * @param rInt interface the neighbour is on
+     * @return the session, or null if there is none
+     */
+    static Session get(int neighbourRID, RouterInterface rInt) {
+        synchronized (sessions) {
+            long key = sessionKey(neighbourRID, rInt);
+            Session session = sessions.get(key);
+            if (session != null && session.expiresAt < RLSA.nowMs()) {
+                sessions.remove(key);
+                return null;
+            }
+            return session;
+        }
+    }
+
+    /**<p><h1>Make Nonce</h1></p>
+     * @return a new random nonce
+     */
+    static byte[] makeNonce() {
+        byte[] nonce = new byte[NONCE_LENGTH];
+        nonceRandom.nextBytes(nonce);
+        return nonce;
+    }
+    //endregion STATIC METHODS
+
+    /**<p><h1>Cached Session</h1></p>
+     * <p>A cached secret, and the resumption state with the neighbour. Resumption state is only used on the interface
+     * worker of the neighbour, its hello timer and its dead timer, so is guarded by the session.</p>
+     */
+    static final class Session {
+        //region OBJECT PROPERTIES
+        private final byte[] secret;
+        final CipherSuite suite;
+        private long expiresAt = Long.MAX_VALUE;//Monotonic, from RLSA.nowMs. Guarded by sessions
+        byte[] pendingNonce;//Nonce of the last request this node sent, or null
+        private final ArrayDeque<byte[]> challenges = new ArrayDeque<>();//Nonces of responses sent, not yet confirmed
+        byte[] confirmRequestNonce;//Nonces of the resumed key this node confirmed, while the neighbour is down, or null
+        byte[] confirmResponseNonce;
+        int confirmsSent;
+        private long lastChallengeMs;//RLSA.nowMs() of the last response sent
+        //endregion OBJECT PROPERTIES
+
+        //region OBJECT METHODS
+        /**<p><h1>Session Constructor</h1></p>
+         * @param secret DH shared secret
+         * @param suite cipher suite negotiated with the neighbour
+         */
+        Session(byte[] secret, CipherSuite suite) {
+            this.secret = secret;
+            this.suite = suite;
+        }
+
+        /**<p><h1>Is Expiring</h1></p>
+         * @return true if the time to live has started, so the neighbour went down since the secret was made or resumed
+         */
+        boolean isExpiring() {
+            synchronized (sessions) {
+                return expiresAt != Long.MAX_VALUE;
+            }
+        }
+
+        /**<p><h1>Add Challenge</h1></p>
+         * <p>Remember the nonces of a response sent, so its confirm can be matched. The oldest is dropped once
+         * MAX_CHALLENGES are kept.</p>
+         * @param requestNonce nonce of the request answered
+         * @param responseNonce challenge nonce of the response
+         */
+        void addChallenge(byte[] requestNonce, byte[] responseNonce) {
+            if (challenges.size() == MAX_CHALLENGES)
+                challenges.removeFirst();
+            challenges.addLast(joinNonces(requestNonce, responseNonce));
+            lastChallengeMs = RLSA.nowMs();
+        }
+
+        /**<p><h1>Is Resuming</h1></p>
+         * <p>Checks if a resumed key is being set with the neighbour, so a DH secret must not be set as well. That is
+         * when this node has a resumed key not yet confirmed, or sent a response in the last CHALLENGE_TIMEOUT_MS. The
+         * caller holds the session.</p>
+         * @return true if the key of the neighbour is being set by resumption
+         */
+        boolean isResuming() {
+            return confirmRequestNonce != null ||
+                    !challenges.isEmpty() && RLSA.nowMs() - lastChallengeMs < CHALLENGE_TIMEOUT_MS;
+        }
+
+        /**<p><h1>Take Challenge</h1></p>
+         * <p>Match the nonces of a confirm to a response sent. On a match every challenge is cleared, so each can only
+         * be confirmed once.</p>
+         * @param requestNonce nonce of the request from the confirm
+         * @param responseNonce nonce of the response from the confirm
+         * @return true if this node sent the response being confirmed
+         */
+        boolean takeChallenge(byte[] requestNonce, byte[] responseNonce) {
+            byte[] nonces = joinNonces(requestNonce, responseNonce);
+            for (byte[] challenge: challenges) {
+                if (Arrays.equals(challenge, nonces)) {
+                    challenges.clear();
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**<p><h1>Make Proof</h1></p>
+         * <p>HMAC of the message type, the RIDs of the sender and target, and both nonces, keyed by the cached secret.
+         * The message type and RIDs are included, so a proof can't be reflected back or sent to another node.</p>
+         * @param message RESUME_REQUEST, RESUME_RESPONSE or RESUME_CONFIRM
+         * @param senderRID RID of the node sending the packet
+         * @param targetRID RID of the node the packet is sent to
+         * @param requestNonce nonce of the request
+         * @param responseNonce nonce of the response, all 0 in a request
+         * @return the proof
+         */
+        byte[] makeProof(byte message, int senderRID, int targetRID, byte[] requestNonce, byte[] responseNonce) {
+            Mac mac = initMac(secret);
+            mac.update(message);
+            mac.update(Ints.toByteArray(senderRID));
+            mac.update(Ints.toByteArray(targetRID));
+            mac.update(requestNonce);
+            mac.update(responseNonce);
+            return mac.doFinal();
+        }
+
+        /**<p><h1>Is Proof Valid</h1></p>
+         * <p>Checks a received proof in constant time.</p>
+         * @param proof proof from the packet
+         * @param message message type from the packet
+         * @param senderRID RID of the node that sent the packet
+         * @param targetRID RID of the node the packet was sent to
+         * @param requestNonce nonce of the request
+         * @param responseNonce nonce of the response
+         * @return true if the sender has the cached secret
+         */
+        boolean isProofValid(byte[] proof, byte message, int senderRID, int targetRID, byte[] requestNonce,
+                             byte[] responseNonce) {
+            return MessageDigest.isEqual(proof,
+                    makeProof(message, senderRID, targetRID, requestNonce, responseNonce));
+        }
+
+        /**<p><h1>Derive Resumed Key</h1></p>
+         * <p>Derive the key for a resumed session, cut to the key length of the suite. Both nodes use the same
+         * requester and responder order, so make the same key.</p>
+         * @param requesterRID RID of the node that sent the request
+         * @param responderRID RID of the node that sent the response
+         * @param requestNonce nonce of the request
+         * @param responseNonce nonce of the response
+         * @return key for the EncryptionParameters of the resumed session
+         */
+        SecretKey deriveKey(int requesterRID, int responderRID, byte[] requestNonce, byte[] responseNonce) {
+            Mac mac = initMac(secret);
+            mac.update(KEY_LABEL);
+            mac.update(Ints.toByteArray(requesterRID));
+            mac.update(Ints.toByteArray(responderRID));
+            mac.update(requestNonce);
+            mac.update(responseNonce);
+            return new SecretKeySpec(mac.doFinal(), 0, suite.keyLength, suite.keyAlgorithm);
+        }
+
+        /**<p><h1>Join Nonces</h1></p>
+         * @param requestNonce nonce of the request
+         * @param responseNonce nonce of the response
+         * @return both nonces, in one array
+         */
+        private static byte[] joinNonces(byte[] requestNonce, byte[] responseNonce) {
+            byte[] nonces = Arrays.copyOf(requestNonce, NONCE_LENGTH * 2);
+            System.arraycopy(responseNonce, 0, nonces, NONCE_LENGTH, NONCE_LENGTH);
+            return nonces;
+        }
+
+        /**<p><h1>Init HMAC</h1></p>
+         * <p>Manually handles exceptions.</p>
+         * @param key HMAC key
+         * @return the HMAC of this thread, keyed
+         */
+        private static Mac initMac(byte[] key) {
+            Mac mac = hmac.get();
+            try {
+                mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            } catch (GeneralSecurityException ex) {
+                StdDaemon.handleDaemonError("SessionCache: Invalid HMAC key", ex);
+            }
+            return mac;
+        }
+        //endregion OBJECT METHODS
+    }
+}
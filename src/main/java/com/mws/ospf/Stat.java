@@ -7,6 +7,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
 
 /**<p><h1>Application Statistics</h1></p>
  * <p>Class to store, collect and process statistic information for research. Sets up a timer in the SetupStats method to
@@ -20,8 +21,26 @@ class Stat {
     private static final LinkedHashSet<Long> timeOrderedSet = new LinkedHashSet<>();
     private static final HashMap<Long, Long> cpuTime = new HashMap<>();
     private static final HashMap<Long, Long> memUsage = new HashMap<>();
-    private static final Timer timerStatUpdate = new Timer("Timer-Stat");
+    private static final ProtocolTimer timerStatUpdate =
+            new ProtocolTimer(() -> recordStat(System.currentTimeMillis()));
     private static final OperatingSystemMXBean osBean = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+    //Encrypt counters, added to by any thread. A call is one lock of a Cipher, or one batch.
+    private static final LongAdder encryptCalls = new LongAdder();
+    private static final LongAdder encryptPackets = new LongAdder();
+    private static final LongAdder encryptNanos = new LongAdder();
+    //Flooding counters, added to by any thread. Flooded LSAs include retransmissions and LSAs sent for requests.
+    private static final LongAdder floodLSAs = new LongAdder();
+    private static final LongAdder floodPackets = new LongAdder();
+    private static final LongAdder rxmtLSAs = new LongAdder();
+    private static final LongAdder ackedLSAs = new LongAdder();
+    private static volatile long tsFirstFlood = 0;
+    //SPF counters, added to by the SPF calculation.
+    private static final LongAdder spfFullRuns = new LongAdder();
+    private static final LongAdder spfFullNanos = new LongAdder();
+    private static final LongAdder spfIncrementalRuns = new LongAdder();
+    private static final LongAdder spfIncrementalNanos = new LongAdder();
+    private static final LongAdder spfFullEvents = new LongAdder();
+    private static final LongAdder spfIncrementalEvents = new LongAdder();
     //endregion STATIC PROPERTIES
 
     //region STATIC METHODS
@@ -37,12 +56,7 @@ class Stat {
         recordStat(tsStart);
 
         //Setup timer, delay and interval of pollIntervalMs. Every tick, call _RecordStat with the current milli time.
-        timerStatUpdate.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                recordStat(System.currentTimeMillis());
-            }
-        }, pollIntervalMs, pollIntervalMs);
+        timerStatUpdate.schedule(pollIntervalMs, pollIntervalMs);
     }
 
     /**<p><h1>End Statistic Gathering</h1></p>
@@ -83,6 +97,37 @@ class Stat {
             long memUConvergence = memUsage.get(tsConvergence);
             fwStats.write("Mem Usage (KB), " + (memUConvergence / 1000) + ", " + (memUStart / 1000) + ", " + ((memUConvergence - memUStart) / 1000) + System.lineSeparator());
 
+            //Receive path per interface. Allocated bytes are those allocated by the worker while processing packets.
+            fwStats.write(System.lineSeparator() + "Interface, Rx Packets, Rx Dropped, Rx Allocated (B), Rx Allocated per Packet (B)" + System.lineSeparator());
+            for (InterfaceChannel rIntChannel: PacketEngine.channels) {
+                fwStats.write(rIntChannel.rInt.getName() + ", " + rIntChannel.rxPackets + ", " + rIntChannel.rxDropped + ", " + rIntChannel.rxAllocatedBytes + ", " + String.format("%.1f", rIntChannel.getAllocatedBytesPerPacket()) + System.lineSeparator());
+            }
+
+            //Encrypt path. More packets per call means more of the cipher setup and locking was shared.
+            long calls = encryptCalls.sum();
+            long packets = encryptPackets.sum();
+            long nanos = encryptNanos.sum();
+            fwStats.write(System.lineSeparator() + "Encrypt Calls, Encrypt Packets, Packets per Call, Encrypt Time (ms), Time per Packet (us)" + System.lineSeparator());
+            fwStats.write(calls + ", " + packets + ", " + String.format("%.2f", calls == 0 ? 0 : (double) packets / calls) + ", " + (nanos / 1000000) + ", " + String.format("%.1f", packets == 0 ? 0 : nanos / 1000.0 / packets) + System.lineSeparator());
+
+            //Flooding. LSAs per second is over the time from the first LSU sent to the end of the statistics.
+            long lsas = floodLSAs.sum();
+            long lsus = floodPackets.sum();
+            long floodMs = tsFirstFlood == 0 ? 0 : Math.max(1, tsConvergence - tsFirstFlood);
+            fwStats.write(System.lineSeparator() + "LSAs Flooded, LSU Packets, LSAs per LSU, LSAs Retransmitted, LSAs Acknowledged, LSAs Flooded per Second" + System.lineSeparator());
+            fwStats.write(lsas + ", " + lsus + ", " + String.format("%.2f", lsus == 0 ? 0 : (double) lsas / lsus) + ", " + rxmtLSAs.sum() + ", " + ackedLSAs.sum() + ", " + String.format("%.1f", floodMs == 0 ? 0 : lsas * 1000.0 / floodMs) + System.lineSeparator());
+
+            //SPF. Full and incremental calculations, to compare the time each takes. Events are LSDB changes, so more
+            //events per run means more changes were coalesced into one calculation.
+            fwStats.write(System.lineSeparator() + "SPF, Runs, Events, Events per Run, Total Time (ms), Time per Run (us)" + System.lineSeparator());
+            writeSPFStats(fwStats, "Full", spfFullRuns.sum(), spfFullEvents.sum(), spfFullNanos.sum());
+            writeSPFStats(fwStats, "Incremental", spfIncrementalRuns.sum(), spfIncrementalEvents.sum(), spfIncrementalNanos.sum());
+
+            //Routers reachable in the last SPF result, including this node, to check the calculation converged.
+            SPF.Result routes = SPF.getLastResult();
+            fwStats.write(System.lineSeparator() + "Reachable Routers" + System.lineSeparator());
+            fwStats.write((routes == null ? 0 : routes.getReachableCount()) + System.lineSeparator());
+
             fwStats.close();
         } catch (IOException ex) {
             System.err.println("Saving statistics csv created IOException: " + ex.getMessage() + ": StackTrace:");
@@ -91,6 +136,70 @@ class Stat {
         }
     }
 
+    /**<p><h1>Record Encrypt</h1></p>
+     * <p>Count an encrypt call, from EncryptionParameters. Thread safe, without locking.</p>
+     * @param packets number of packets encrypted in the call
+     * @param nanos time taken by the call
+     */
+    static void recordEncrypt(int packets, long nanos) {
+        encryptCalls.increment();
+        encryptPackets.add(packets);
+        encryptNanos.add(nanos);
+    }
+
+    /**<p><h1>Record Flood</h1></p>
+     * <p>Count LSAs sent in LSU packets, from Flooding. Thread safe, without locking.</p>
+     * @param lsas number of LSAs sent
+     * @param packets number of LSU packets the LSAs were packed into
+     * @param isRetransmit true if the LSAs were resent from a retransmission list
+     */
+    static void recordFlood(int lsas, int packets, boolean isRetransmit) {
+        if (tsFirstFlood == 0)
+            tsFirstFlood = System.currentTimeMillis();
+        floodLSAs.add(lsas);
+        floodPackets.add(packets);
+        if (isRetransmit)
+            rxmtLSAs.add(lsas);
+    }
+
+    /**<p><h1>Record Acknowledged</h1></p>
+     * <p>Count LSAs acknowledged by neighbours, from Flooding. Thread safe, without locking.</p>
+     * @param lsas number of LSAs removed from retransmission lists
+     */
+    static void recordAcked(int lsas) {
+        ackedLSAs.add(lsas);
+    }
+
+    /**<p><h1>Record SPF</h1></p>
+     * <p>Count an SPF calculation, from SPF. Thread safe, without locking.</p>
+     * @param isIncremental true if the calculation was an incremental update, rather than full
+     * @param nanos time taken by the calculation
+     * @param events number of LSDB changes coalesced into the calculation
+     */
+    static void recordSPF(boolean isIncremental, long nanos, int events) {
+        if (isIncremental) {
+            spfIncrementalRuns.increment();
+            spfIncrementalNanos.add(nanos);
+            spfIncrementalEvents.add(events);
+        } else {
+            spfFullRuns.increment();
+            spfFullNanos.add(nanos);
+            spfFullEvents.add(events);
+        }
+    }
+
+    /**<p><h1>Write SPF Statistics</h1></p>
+     * @param fwStats writer of the stats csv
+     * @param name name of the row
+     * @param runs number of calculations
+     * @param events number of LSDB changes coalesced into the calculations
+     * @param nanos total time taken by the calculations
+     * @throws IOException if the writer fails
+     */
+    private static void writeSPFStats(FileWriter fwStats, String name, long runs, long events, long nanos) throws IOException {
+        fwStats.write(name + ", " + runs + ", " + events + ", " + String.format("%.2f", runs == 0 ? 0 : (double) events / runs) + ", " + String.format("%.2f", nanos / 1000000.0) + ", " + String.format("%.1f", runs == 0 ? 0 : nanos / 1000.0 / runs) + System.lineSeparator());
+    }
+
     /**<p><h1>Record Statistics Tick</h1></p>
      * <p>Method called on timerStatUpdate tick. Uses an index value provided to store data collected in arrays. The
      * timestamp index is related to the actual index in the lists via the mapListTime HashMap.</p>
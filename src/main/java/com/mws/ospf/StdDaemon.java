@@ -1,10 +1,5 @@
 package com.mws.ospf;
 
-import com.google.common.primitives.Bytes;
-import com.google.common.primitives.Shorts;
-import inet.ipaddr.IPAddress;
-import inet.ipaddr.IPAddressNetwork;
-import inet.ipaddr.IPAddressString;
 
 import java.io.IOException;
 import java.net.*;
@@ -15,7 +10,7 @@ import static com.mws.ospf.Launcher.operationMode;
 
 /**<p><h1>Standard Daemon</h1></p>
  * <p>The standard OSPF daemon process. Forms and manages standard OSPF process flow, following the OSPFv2 RFC.
- * Methods provided can be used in the encrypted daemon, such as MakeHelloPacket and DaemonErrorHandle.</p>
+ * Methods provided can be used in the encrypted daemon, such as sendPacketToNeighbour and DaemonErrorHandle.</p>
  * <p></p>
  * <p>Very code heavy class.</p>
  */
@@ -23,10 +18,7 @@ class StdDaemon {
     //region STATIC PROPERTIES
     static final int MTU = 1300;
     static final int HEADER_LENGTH = 24;
-    static MulticastSocket multicastSocket;
-    static InetSocketAddress multicastSocketAddr;
-    static Timer timerHelloSend;
-    private static final Thread threadStdMulticastListen = new Thread(StdDaemon::receiveMulticastThread, "Thread-Hello-Receive");
+    static final InetSocketAddress multicastSocketAddr = new InetSocketAddress("224.0.0.5", 25565);
     //endregion
 
     //region STATIC METHODS
@@ -42,255 +34,259 @@ class StdDaemon {
             Stat.setupStats();
 
         Config.lsdb = new LSDB();
-        setupMulticastSocket();
+
+        //Hello packets are encoded once per interface, then patched as neighbours change.
+        for (RouterInterface rInt: Config.thisNode.interfaceList) {
+            if (rInt.isEnabled)
+                rInt.helloTemplate = new HelloTemplate((byte) 0x02);
+        }
 
         //Start listening for hello packets before sending them. Should force that packets are not received before
-        threadStdMulticastListen.start();
-
-        //Create a timer for hello and set it to run instantly. Running the timer schedules further running.
-        timerHelloSend = new Timer();
-        timerHelloSend.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                sendHelloPackets();
-            }
-        }, 0, 10 * 1000);
+        PacketEngine.start(multicastSocketAddr, StdDaemon::receivePacket);
+
+        //Start a staggered hello timer per interface. Each timer reschedules itself with jitter.
+        HelloScheduler.start(StdDaemon::sendHelloPacket);
     }
 
-    /**<p><h1>Setup Multicast Socket</h1></p>
-     * <p>Sets up the static properties around the multicast socket. Sets the socket address, socket, sets TTL, and
-     * joints all interfaces to the multicast group.</p>
-     * <p>Handles its own exceptions.</p>
+    /**<p><h1>Send Hello Packets</h1></p>
+     * <p>Method used to send hello packets out of every enabled interface at once, when neighbours should hear of a
+     * change straight away.</p>
      */
-    static void setupMulticastSocket() {
-        //used for multicasting. Binds the ospf multicast address to all interfaces using this socket.
-        multicastSocket = null;
-        try {
-            multicastSocketAddr = new InetSocketAddress(InetAddress.getByName("224.0.0.5"), 25565);
-            multicastSocket = new MulticastSocket(multicastSocketAddr.getPort());
-            multicastSocket.setTimeToLive(1);
+    static void sendHelloPackets() {
+        //send packet to all enabled interfaces.
+        for (RouterInterface rInt: Config.thisNode.interfaceList) {
+            if (!rInt.isEnabled)
+                continue;
 
-            for (RouterInterface rInt : Config.thisNode.interfaceList) {
-                multicastSocket.joinGroup(multicastSocketAddr, rInt.toNetworkInterface());
-            }
-        } catch (UnknownHostException ex) {
-            //InetAddress.getByName()
-            handleDaemonError("Exception in setting up udp multicast: could not get ip address 224.0.0.5" + ex.getMessage(), ex);
-        } catch (SocketException ex) {
-            //rInt.toNetworkInterface()
-            handleDaemonError("Exception in setting up udp multicast: Interface.toNetworkInterface(): 'Throws SocketException if IOException is thrown'" + ex.getMessage(), ex);
-        } catch (IOException ex) {
-            //new MulticastSocket()
-            handleDaemonError("Exception in setting up udp multicast: IOException" + ex.getMessage(), ex);
-        } catch (Exception ex) {
-            //Uncaught exception
-            handleDaemonError("Generic exception in setting up udp multicast" + ex.getMessage(), ex);
+            sendHelloPacket(rInt);
         }
-
-        //If helloSocket was not correctly set and no exception was gotten, hard exit
-        if (multicastSocket == null)
-            handleDaemonError("", null);
     }
 
-    /**<p><h1>Send Hello Packets</h1></p>
-     * <p>Method used to send hello packets. Uses the method makeHelloPacket for the packet buffer, using
-     * multicastSocket to send to each RouterInterface. This is the timer task for timerHelloSend</p>
+    /**<p><h1>Send Hello Packet</h1></p>
+     * <p>Method used to send a hello packet out of one interface. Copies the cached hello of the RouterInterface into a
+     * transmit buffer, using the channel of the RouterInterface to send it. This is the task of the interface's hello
+     * timer</p>
+     * @param rInt enabled interface to send out of
      */
-    static void sendHelloPackets() {
-
-        //Create a datagram packet to send, send it out all network interfaces.
+    static void sendHelloPacket(RouterInterface rInt) {
         try {
-            //Make buffer and datagram packet to send
-            byte[] helloBuffer = makeHelloPacket();
-            DatagramPacket helloPacket = new DatagramPacket(helloBuffer, helloBuffer.length, multicastSocketAddr);
-
-            //send packet to all enabled interfaces.
-            for (RouterInterface rInt: Config.thisNode.interfaceList) {
-                if (!rInt.isEnabled)
-                    continue;
-
-                multicastSocket.setNetworkInterface(rInt.toNetworkInterface());
-                multicastSocket.send(helloPacket);
-            }
-        } catch (UnknownHostException ex) {
-            handleDaemonError("Std Daemon: Unknown host when creating datagram packet. Java couldn't resolve" +
-                    "the host 224.0.0.5 somehow? This shouldn't be possible", ex);
+            rInt.channel.send(rInt.helloTemplate.writeTo(PacketCodec.getTxBuffer()));
         } catch (IOException ex) {
             handleDaemonError("Std Daemon: IOException when sending hello datagram packet", ex);
         }
     }
 
     /**<p><h1>Send Packet to Neighbour</h1></p>
-     * <p>After the hello protocol, send a provided datagram packet to a specified neighbour over the multicast
-     * interface. The sent packet will be directional. The full buffer should be passed to this method.</p>
+     * <p>After the hello protocol, send a provided packet buffer to a specified neighbour, using the channel of the
+     * interface the neighbour is on. The sent packet will be directional. The full buffer should be passed to this
+     * method.</p>
      * <p>This method is protocol version aware, and will handle encrypt for the EncDaemon.</p>
      * @param neighbour neighbour to direct a packet to
-     * @param packetBuffer packet buffer to be sent in a DatagramPacket to the neighbour
+     * @param packetBuffer packet buffer to be sent to the neighbour
      */
     static void sendPacketToNeighbour(NeighbourNode neighbour, byte[] packetBuffer) {
         try {
-            /*If encrypted OSPF, encrypt the packetBuffer and update checksum and length in header. The only excess code
-            is due to the need to encrypt the data.*/
+            /*If encrypted OSPF, encrypt the packetBuffer into this thread's transmit buffer, which also updates checksum
+            and length in header. Otherwise, the packetBuffer is already correct. Send it in the neighbour's direction.*/
             if (operationMode == 0x04)
-                packetBuffer = updateChecksumAndLength(neighbour.enParam.encrypt(packetBuffer));
-
-            //For all packets, packetBuffer is now correct, make a packet from it, send it in the neighbour's direction.
-            DatagramPacket packet = new DatagramPacket(packetBuffer, packetBuffer.length, multicastSocketAddr);
-            multicastSocket.setNetworkInterface(neighbour.rIntOwner.toNetworkInterface());
-            multicastSocket.send(packet);
-
-            //Final act, assuming handleDaemonError not called. Reset the rxmt retransmission timer;
-            neighbour.resetRxmtTimer();
-        } catch (SocketException ex) {
-            handleDaemonError("SocketException when sending a packet to neighbour", ex);
+                neighbour.rIntOwner.channel.send(
+                        neighbour.enParam.encrypt(ByteBuffer.wrap(packetBuffer), PacketCodec.getTxBuffer()));
+            else
+                neighbour.rIntOwner.channel.send(packetBuffer);
         } catch (IOException ex) {
             handleDaemonError("IOException when sending a packet to neighbour", ex);
         }
     }
 
-    /**<p><h1>Standard Multicast Receive Handle Method</h1></p>
-     * <p>Method implemented as a thread to receive an packet from any network joined to the multicast group. A thread
-     * is required as the receive method is blocking.</p>
-     * <p>Once a packet is received, it is verified, data is scraped and it is passed onto specific handle methods, for
-     * use in protocol functions and features.</p>
+    /**<p><h1>Send DBD to Neighbour</h1></p>
+     * <p>Send the last DBD packet made for a neighbour, and reset the rxmt timer, so the DBD is retransmitted until the
+     * neighbour answers. Only DBD packets reset the rxmt timer. Flooding retransmits on its own timer.</p>
+     * @param neighbour neighbour to send the last DBD packet to
      */
-    private static void receiveMulticastThread() {
-        //Buffer for raw data.
-        byte[] pBytes = new byte[4000];
-        DatagramPacket pReturned = new DatagramPacket(pBytes, pBytes.length);
-
-        //Only runs if not interrupted. If interrupted thread will end execution. To cancel, interrupt.
-        while (!Thread.currentThread().isInterrupted()) {
-
-            try {
-                multicastSocket.receive(pReturned);
-            } catch (IOException ex) {
-                handleDaemonError("Exception on HelloReceiveThread", ex);
-            }
+    static void sendDBDToNeighbour(NeighbourNode neighbour) {
+        sendPacketToNeighbour(neighbour, neighbour.lastSentDBD.packetBuffer);
+        neighbour.resetRxmtTimer();
+    }
 
-            //Get value used multiple times, source IP.
-            IPAddress pSource = new IPAddressNetwork.IPAddressGenerator().from(pReturned.getAddress());
+    /**<p><h1>Send Packets to Neighbour</h1></p>
+     * <p>Send a burst of packet buffers to a specified neighbour, in order, using the channel of the interface the
+     * neighbour is on. The packets are sent as one batch, so packets from other threads are not interleaved.</p>
+     * <p>For the EncDaemon, the whole burst is encrypted in one call, into the transmit arena of this thread, so the
+     * cipher of the neighbour is locked once for the burst.</p>
+     * @param neighbour neighbour to direct the packets to
+     * @param packetBuffers packet buffers to be sent to the neighbour
+     */
+    static void sendPacketsToNeighbour(NeighbourNode neighbour, List<byte[]> packetBuffers) {
+        List<ByteBuffer> packets = new ArrayList<>(packetBuffers.size());
+        for (byte[] packetBuffer: packetBuffers)
+            packets.add(ByteBuffer.wrap(packetBuffer));
 
-            //Treat the packet as valid initially, scrape the length from the packet and use it to truncate the buffer
-            int pLength = Short.toUnsignedInt(Shorts.fromByteArray(Arrays.copyOfRange(pBytes, 2, 4)));
-            byte[] packetBuffer = Arrays.copyOfRange(pReturned.getData(), 0, pLength);
+        try {
+            //If encrypted OSPF, encrypt the whole burst at once, updating checksum and length of each packet.
+            if (operationMode == 0x04) {
+                ByteBuffer arena = PacketCodec.getTxArena(EncryptionParameters.getArenaSize(packets, 1));
+                packets = neighbour.enParam.encryptBatch(packets, arena, new ArrayList<>(packets.size()));
+            }
+            neighbour.rIntOwner.channel.send(packets);
+        } catch (IOException ex) {
+            handleDaemonError("IOException when sending packets to neighbour", ex);
+        }
+    }
 
-            //Only accept packets that are the normal (unencrypted) protocol version (ospfv2)
-            if (pBytes[0] != 0x02)
-                continue;
+    /**<p><h1>Standard Receive Packet Handle Method</h1></p>
+     * <p>Method called by the PacketEngine on the worker thread of the interface a packet was received on. The receive
+     * itself is done by the PacketEngine, so this method never blocks on the network.</p>
+     * <p>Once a packet is received, it is verified, data is scraped and it is passed onto specific handle methods, for
+     * use in protocol functions and features. The packet is read in place through the views owned by the channel.</p>
+     * @param rxChannel channel the packet was received on
+     * @param packet received packet buffer, pooled by the channel
+     * @param pSource IPv4 source address of packet, as an int
+     */
+    private static void receivePacket(InterfaceChannel rxChannel, ByteBuffer packet, int pSource) {
+        //Only accept packets that are the normal (unencrypted) protocol version (ospfv2)
+        if (packet.limit() < HEADER_LENGTH || packet.get(0) != 0x02)
+            return;
 
-            //validate the data. If invalid, packetBuffer will be null so skip over current packet (loop).
-            packetBuffer = StdDaemon.validateOSPFHeader(packetBuffer, pSource);
-            if (packetBuffer == null)
-                continue;
+        //Treat the packet as valid initially, scrape the length from the packet and use it to truncate the buffer
+        if (!truncateToPacketLength(packet))
+            return;
 
-            //region SCRAPE NEIGHBOUR
-            //RID in bytes 4,5,6,7 to string. Using IPAddress class to convert bytes to the RID, easy peasy.
-            IPAddressString neighbourRID = new IPAddressNetwork.IPAddressGenerator().from(
-                    Arrays.copyOfRange(packetBuffer, 4, 8)
-            ).toAddressString();
-            NeighbourNode neighbour = NeighbourNode.getNeighbourNodeByRID(neighbourRID);
-            //endregion SCRAPE NEIGHBOUR
-
-            //Branch, pass to packet processor for each specific packet type.
-            switch (packetBuffer[1]) {
-                case 0x01 -> processHelloPacket(neighbour, neighbourRID, pSource, packetBuffer);
-                case 0x02 -> {
-                    assert neighbour != null;
-                    processDBDPacket(neighbour, packetBuffer);
-                }
+        //validate the data. If invalid, drop the current packet.
+        if (!StdDaemon.validateOSPFHeader(packet, pSource))
+            return;
+
+        //region SCRAPE NEIGHBOUR
+        PacketView header = rxChannel.packetView.wrap(packet);
+        int neighbourRID = header.getRID();
+        NeighbourNode neighbour = NeighbourNode.getNeighbourNodeByRID(neighbourRID);
+        //endregion SCRAPE NEIGHBOUR
+
+        //Branch, pass to packet processor for each specific packet type.
+        switch (header.getType()) {
+            case 0x01 -> processHelloPacket(neighbour, neighbourRID, pSource, rxChannel.helloView.wrap(packet));
+            case 0x02 -> {
+                assert neighbour != null;
+                processDBDPacket(neighbour, rxChannel, packet);
+            }
+            case 0x03 -> {
+                if (neighbour != null)
+                    Flooding.processLSRequest(neighbour, packet);
+            }
+            case 0x04 -> {
+                if (neighbour != null)
+                    Flooding.processLSUpdate(neighbour, rxChannel, packet);
+            }
+            case 0x05 -> {
+                if (neighbour != null)
+                    Flooding.processLSAck(neighbour, rxChannel, packet);
             }
         }
     }
 
+    /**<p><h1>Truncate to Packet Length</h1></p>
+     * <p>Sets the buffer limit to the packet length reported in the OSPF header, dropping anything received past the
+     * packet. A packet that reports a length shorter than the header, or longer than was received, is invalid.</p>
+     * @param packet received packet buffer
+     * @return true if the buffer now holds exactly the reported packet, false for drop packet
+     */
+    static boolean truncateToPacketLength(ByteBuffer packet) {
+        if (packet.limit() < HEADER_LENGTH)
+            return false;
+
+        int pLength = packet.getShort(2) & 0xffff;
+        if (pLength < HEADER_LENGTH || pLength > packet.limit())
+            return false;
+
+        packet.limit(pLength);
+        return true;
+    }
+
     /**<p><h1>Validate OSPF Header</h1></p>
-     * <p>Scrapes and checks received data in the OSPF header is valid. In the event the header is invalid, null is
-     * returned, to be handled by the receiveMulticastThread implementations as drop packet.</p>
+     * <p>Scrapes and checks received data in the OSPF header is valid. In the event the header is invalid, false is
+     * returned, to be handled by the receivePacket implementations as drop packet.</p>
      * <p>Checks the packet was not sent by this node, that the packet was sent from a connected network, that the
-     * received interface was enabled, and that the checksum is valid.</p>
-     * @param packetBuffer truncated received packet buffer
-     * @param pSource IPAddress source of packet
-     * @return the validated initial packet buffer, or null for drop packet
+     * received interface was enabled, and that the checksum is valid. The checksum is verified in place, without
+     * modifying the packet.</p>
+     * @param packet truncated received packet buffer
+     * @param pSource IPv4 source address of packet, as an int
+     * @return true if the packet is valid, or false for drop packet
      */
-    static byte[] validateOSPFHeader(byte[] packetBuffer, IPAddress pSource) {
+    static boolean validateOSPFHeader(ByteBuffer packet, int pSource) {
+        return validateOSPFSource(pSource) && isChecksumValid(packet);
+    }
+
+    /**<p><h1>Validate OSPF Source</h1></p>
+     * <p>Checks the packet was not sent by this node, that the packet was sent from a connected network, and that the
+     * received interface was enabled.</p>
+     * @param pSource IPv4 source address of packet, as an int
+     * @return true if the source is valid, or false for drop packet
+     */
+    static boolean validateOSPFSource(int pSource) {
         //region VERIFY PACKET
-        //Check this node was not the source, if so reject the packet by null
+        //Check this node was not the source, if so reject the packet
         if (RouterInterface.getInterfaceByIP(pSource) != null)
-            return null;
+            return false;
 
         RouterInterface receiveInt = RouterInterface.getInterfaceByIPNetwork(pSource);
         if (receiveInt == null) {
             System.err.println("UNLIKELY CONDITION: Packet received from network this node is not in");
-            return null;
+            return false;
         }
 
         //Reject packets received on interfaces that are not enabled.
-        if (!receiveInt.isEnabled)
-            return null;
-
-        //Get checksum. Bytes 12, 13
-        long pChecksum = Short.toUnsignedLong(Shorts.fromByteArray(Arrays.copyOfRange(packetBuffer, 12, 14)));
-
-        packetBuffer[12] = packetBuffer[13] = 0;//Unset checksum, so checksum calc will be correct.
+        return receiveInt.isEnabled;
+    }
 
-        //verify checksums. If wrong, print special message. Important for debugging, inform server of line error.
-        if (pChecksum != Launcher.ipChecksum(packetBuffer)) {
-            System.err.println("Packet checksum mismatch. Got " + pChecksum + ", expected " +
-                    Launcher.ipChecksum(packetBuffer));
-            return null;
+    /**<p><h1>Is Checksum Valid</h1></p>
+     * <p>The checksum is verified in place, without modifying the packet.</p>
+     * @param packet truncated received packet buffer
+     * @return true if the checksum is valid, or false for drop packet
+     */
+    static boolean isChecksumValid(ByteBuffer packet) {
+        /*verify checksums. Summing the packet including a correct checksum field gives 0. If wrong, print special
+        message. Important for debugging, inform server of line error.*/
+        if (Launcher.ipChecksum(packet, 0, packet.limit()) != 0) {
+            System.err.println("Packet checksum mismatch. Got " + (packet.getShort(12) & 0xffff));
+            return false;
         }
-        return packetBuffer;
+        return true;
     }
 
     /**<p><h1>StdDaemon Process Hello Packet</h1></p>
-     * <p>Processes a validated hello packet received on the multicast socket. The method scrapes the known neighbours
+     * <p>Processes a validated hello packet received on an interface channel. The method scrapes the known neighbours
      * list, and manipulates the neighbour on this node in the configuration and neighbours table.</p>
      * @param neighbour scraped neighbour to manipulate, from NeighbourNode.getNeighbourNodeByRID
      * @param neighbourRID scraped neighbour RID from buffer
      * @param pSource ip address of packet source, used to create a new neighbour node
-     * @param packetBuffer raw, but manipulated and validated  packet buffer
+     * @param hello view over the validated hello packet
      */
-    private static void processHelloPacket(NeighbourNode neighbour, IPAddressString neighbourRID, IPAddress pSource,
-                                            byte[] packetBuffer) {
-        int pLength = packetBuffer.length;
-
+    private static void processHelloPacket(NeighbourNode neighbour, int neighbourRID, int pSource,
+                                            HelloView hello) {
         //region SCRAPE KNOWN RIDS
-        //Gather known RIDs from the hello packet
-        List<IPAddressString> reportedKnownRIDs = new ArrayList<>();
-        if (pLength > 44) {
-            if ((pLength - 44) %4 != 0) {
-                //Not allowed, number of bytes after should be a multiple of 4 bytes. Ignore packet
-                System.err.println("Neighbour Node reported adjacent neighbours incorrectly");
-                return;
-            }
-
-            //Number of 4 byte pairs after the first 44 hello header bytes.
-            int knownNeighboursListLength = (pLength - 44) / 4;
-
-            //Loop through each 4 bytes after BDR RID, which are all recently known adjacent RIDs.
-            for (int i = 0; i < knownNeighboursListLength; i++) {
-                int curByteOffset = 44 + (i*4);
-                reportedKnownRIDs.add(new IPAddressNetwork.IPAddressGenerator().from(
-                        Arrays.copyOfRange(packetBuffer, curByteOffset, curByteOffset+4)
-                ).toAddressString());
-            }
+        //Not allowed, number of bytes after should be a multiple of 4 bytes. Ignore packet
+        if (!hello.isNeighboursListValid()) {
+            System.err.println("Neighbour Node reported adjacent neighbours incorrectly");
+            return;
         }
         //endregion SCRAPE KNOWN RIDS
 
-        //Add new neighbour
-        if (neighbour == null) {
-            neighbour = new NeighbourNode(neighbourRID, pSource);
-            Config.neighboursTable.add(neighbour);
+        //Neighbours must agree on the hello and dead intervals, otherwise the hello is ignored.
+        if (!HelloScheduler.areIntervalsMatching(hello)) {
+            System.err.println("Neighbour Node reported a different hello or dead interval");
+            return;
         }
 
+        //Add new neighbour.
+        if (neighbour == null)
+            neighbour = Config.neighboursTable.putIfAbsent(new NeighbourNode(neighbourRID, pSource));
+
         //Update neighbour parameters only for state change Down -> Init.
         if (neighbour.getState() == ExternalStates.DOWN) {
-            //Treat priority byte as string, parse string -> int
-            neighbour.priority = Integer.parseUnsignedInt(packetBuffer[31] + "");
+            neighbour.priority = hello.getPriority();
 
-            Config.thisNode.knownNeighbours.add(neighbourRID);
+            Config.thisNode.addKnownNeighbour(neighbour.getRID());
 
-            Launcher.printToUser("New Adjacency for node '" + neighbourRID + "'");
+            Launcher.printToUser("New Adjacency for node '" + neighbour.getRIDString() + "'");
 
             neighbour.setState(ExternalStates.INIT);
 
@@ -300,31 +296,32 @@ class StdDaemon {
         }
 
         //Update neighbour parameters for each received hello packet
-        neighbour.knownNeighbours = reportedKnownRIDs;
+        neighbour.setKnownNeighbours(hello);
         neighbour.resetInactiveTimer();
 
         /*If in init state and this neighbour reports to know of this current node, this is the conditions for the
         2WayReceived event. Trigger it*/
-        if (neighbour.getState() == ExternalStates.INIT && neighbour.knownNeighbours.contains(Config.thisNode.getRID()))
+        if (neighbour.getState() == ExternalStates.INIT && neighbour.isKnownNeighbour(Config.thisNode.getRID()))
             evTwoWayReceived(neighbour);
     }
     //TODO: how does OSPF work with multiple exchanges working at the same time? Would more exchange need to take place to reflect new LSAs on the neighbours?
 
     /**<p><h1>StdDaemon Process DBD packet</h1></p>
-     * <p>Process a validated DBD packet received on the multicast socket. This method passes data received to correct
+     * <p>Process a validated DBD packet received on an interface channel. This method passes data received to correct
      * methods. The method manages the process flow for DBD packets, including process flows for master and slave nodes
      * </p>
      * @param neighbour scraped neighbour to manipulate, from NeighbourNode.getNeighbourNodeByRID
-     * @param packetBuffer raw, but manipulated and validated  packet buffer
+     * @param rxChannel channel the packet was received on, owning the views to read it with
+     * @param packet validated packet buffer, decrypted for the EncDaemon
      */
-    static void processDBDPacket(NeighbourNode neighbour, byte[] packetBuffer) {
-        neighbour.lastReceivedDBD = new DBDPacket(packetBuffer);
+    static void processDBDPacket(NeighbourNode neighbour, InterfaceChannel rxChannel, ByteBuffer packet) {
+        neighbour.lastReceivedDBD = new DBDPacket(rxChannel.dbdView.wrap(packet), rxChannel.lsaView);
 
         //region DBD M/S ELECTION
         if (neighbour.lastReceivedDBD.isFirstPacket() && neighbour.lastReceivedDBD.listLSAs.size() == 0
         && neighbour.getState().equals(ExternalStates.EXSTART)) {
-            //if RFC conditions match for initial packet, set master / slave based on higher RID.
-            neighbour.isMaster = neighbour.getRIDAsInt() > Config.thisNode.getRIDAsInt();
+            //if RFC conditions match for initial packet, set master / slave based on higher RID. RIDs are unsigned.
+            neighbour.isMaster = Integer.compareUnsigned(neighbour.getRID(), Config.thisNode.getRID()) > 0;
             neighbour.setState(ExternalStates.EXCHANCE);
 
             //For the slave, update last sent ddSeqNo to last received to avoid a check, and then do nothing
@@ -338,12 +335,12 @@ class StdDaemon {
         //region RETRANSMIT BAD PACKETS
         if (!neighbour.isMaster) {
             if (neighbour.lastReceivedDBD.getDDSeqNo() == neighbour.lastSentDBD.getDDSeqNo() - 1) {
-                sendPacketToNeighbour(neighbour, neighbour.lastSentDBD.packetBuffer);
+                sendDBDToNeighbour(neighbour);
                 return;
             }
         } else {
             if (neighbour.lastReceivedDBD.getDDSeqNo() == neighbour.lastSentDBD.getDDSeqNo()) {
-                sendPacketToNeighbour(neighbour, neighbour.lastSentDBD.packetBuffer);
+                sendDBDToNeighbour(neighbour);
                 return;
             }
         }
@@ -372,8 +369,8 @@ class StdDaemon {
         }
         //endregion VALIDATE PACKET
 
-        //Scrape and store data now validated
-        neighbour.lsaRequestList.addAll(neighbour.lastReceivedDBD.listLSAs);
+        //Scrape and store data now validated. Only LSAs more recent than the LSDB are requested.
+        Flooding.addRequests(neighbour, neighbour.lastReceivedDBD.listLSAs);
 
         //region MASTER ENDPOINT
         if (!neighbour.lastSentDBD.isMoreBitSet() && !neighbour.lastReceivedDBD.isMoreBitSet() && !neighbour.isMaster) {
@@ -386,13 +383,13 @@ class StdDaemon {
         if (!neighbour.isMaster) {
             if (!neighbour.lastSentDBD.isMoreBitSet() && neighbour.lastReceivedDBD.isMoreBitSet()) {
                 neighbour.lastSentDBD = new DBDPacket(MTU, neighbour.lastSentDBD.getDDSeqNo() + 1, (byte) 0x01, null);
-                sendPacketToNeighbour(neighbour, neighbour.lastSentDBD.packetBuffer);
+                sendDBDToNeighbour(neighbour);
                 return;
             }
         } else {
             if (!neighbour.lastSentDBD.isMoreBitSet()) {
                 neighbour.lastSentDBD = new DBDPacket(MTU, neighbour.lastReceivedDBD.getDDSeqNo(), (byte) 0x00, null);
-                sendPacketToNeighbour(neighbour, neighbour.lastSentDBD.packetBuffer);
+                sendDBDToNeighbour(neighbour);
 
                 //region SLAVE ENDPOINT
                 if (!neighbour.lastReceivedDBD.isMoreBitSet())
@@ -416,26 +413,29 @@ class StdDaemon {
         //List containing data
         List<RLSA> sendLSAList = new ArrayList<>();
 
-        //Select LSAs to send. Make sure not over MTU using maxNoData.
-        for (int i = neighbour.lastSentLSAIndex; i < Config.lsdb.routerLSAs.size(); i++) {
-            RLSA lsa = Config.lsdb.routerLSAs.get(i);
-            maxNoData -= lsa.getLength();//Take LSA length away from MTU budget. If over budget, don't add and set M
+        /*Select LSAs to send from the summary list snapshot taken at ExStart, continuing after the last LSA sent. Make
+        sure not over MTU using maxNoData.*/
+        List<RLSA> dbSummaryList = neighbour.dbSummaryList;
+        int i = neighbour.lastSentLSAIndex;
+        for (; i < dbSummaryList.size(); i++) {
+            RLSA lsa = dbSummaryList.get(i);
+            maxNoData -= RLSA.LSA_HEADER_LENGTH;//Take header length from the MTU budget. If over, don't add and set M
             if (maxNoData < 0) {
                 flags = (byte) (flags | 0x02);//Add M bit
-                neighbour.lastSentLSAIndex = --i;
                 break;
             }
-            //TODO: should full LSA be exchanged? If yes add lsa, if no make new summary LSA and add to list (current).
-            sendLSAList.add(new RLSA(lsa.makeRLSAHeaderBuffer()));
+            //Only the header of the LSA is written into the DBD packet.
+            sendLSAList.add(lsa);
         }
+        neighbour.lastSentLSAIndex = i;
 
         //Build packet, using correct sequence no. send packet.
         if (!neighbour.isMaster) {
             neighbour.lastSentDBD = new DBDPacket(MTU, neighbour.lastSentDBD.getDDSeqNo() + 1, flags, sendLSAList);
-            sendPacketToNeighbour(neighbour, neighbour.lastSentDBD.packetBuffer);
+            sendDBDToNeighbour(neighbour);
         } else {
             neighbour.lastSentDBD = new DBDPacket(MTU, neighbour.lastReceivedDBD.getDDSeqNo(), flags, sendLSAList);
-            sendPacketToNeighbour(neighbour, neighbour.lastSentDBD.packetBuffer);
+            sendDBDToNeighbour(neighbour);
 
             //region SLAVE ENDPOINT
             if (!neighbour.lastReceivedDBD.isMoreBitSet() && !neighbour.lastSentDBD.isMoreBitSet())
@@ -459,15 +459,13 @@ class StdDaemon {
         //Set Correct state for event
         neighbour.setState(ExternalStates.EXSTART);
 
-        //Update complete flag for encrypted OSPF. Both Std and Enc will perform the check, no unnecessary difference
-        if (operationMode == 0x04)
-            neighbour.rIntOwner.dhExchange.flagComplete = true;
-
-        //Refresh the local LSA, which will add the new neighbour
-        Config.lsdb.setupLocalRLSA();
+        //Refresh the local LSA, which will add the new neighbour, then take the summary list for the exchange.
+        Flooding.originateLocalRLSA();
+        neighbour.dbSummaryList = Config.lsdb.getSummarySnapshot();
+        neighbour.lastSentLSAIndex = 0;
 
         neighbour.lastSentDBD = new DBDPacket(MTU, new Random().nextInt(), (byte) 0x07, null);
-        sendPacketToNeighbour(neighbour, neighbour.lastSentDBD.packetBuffer);
+        sendDBDToNeighbour(neighbour);
     }
 
     /**<p><h1>Exchange Done Event</h1></p>
@@ -486,6 +484,9 @@ class StdDaemon {
         //Set Correct state for event
         neighbour.setState(ExternalStates.LOADING);
 
+        //Request the LSAs on the request list. With nothing to request, the neighbour goes straight to Full.
+        Flooding.sendRequest(neighbour);
+
         //Statistics Endpoint test. If stats not finished, don't display anything and continue. ElIf stats done, end.
         Config.thisNode.neighboursDone++;
         if (Stat.endNoAdjacencies != -1 && (Config.thisNode.neighboursDone < Stat.endNoAdjacencies))
@@ -493,109 +494,26 @@ class StdDaemon {
         else if (Stat.endNoAdjacencies != -1)
             Stat.endStats();
 
-        //Display data received from each neighbour. Only reached if stats not enabled, or stats complete.
-        //1) Header, 2) Neighbour number, 3) LSA headers 4) LSA data (encoded form)
-        Launcher.printToUser("Data In Request Lists:");
-        for (NeighbourNode n: Config.neighboursTable) {
-            if (n.getState().value < ExternalStates.LOADING.value)
-                continue;
-            System.out.println(neighbour.lsaRequestList.size() + " Records from " + n.getRID().toString() + ":\n\r" +
-                    "lsID, Adv. Router, Seq#, age");
-            for (RLSA lsa: n.lsaRequestList) {
-                System.out.println(lsa.toString());
-                for (LinkData link: lsa.links) {
-                    Launcher.printBuffer(link.makeBuffer());
-                }
+        //Display the LSAs learned. Only reached if stats not enabled, or stats complete.
+        //1) Header, 2) Number of LSAs, 3) LSA headers 4) LSA data (encoded form)
+        Launcher.printToUser("Data In LSDB:");
+        List<RLSA> lsas = Config.lsdb.snapshot().lsas();
+        System.out.println(lsas.size() + " Records:\n\r" +
+                "lsID, Adv. Router, Seq#, age");
+        for (RLSA lsa: lsas) {
+            System.out.println(lsa.toString());
+            for (LinkData link: lsa.links) {
+                Launcher.printBuffer(link.makeBuffer());
             }
         }
-    }
-
-    /**<p><h1>Make Hello Packet</h1></p>
-     * <p>From a generic byte buffer (treated as unsigned), return a hello packet. The packet includes corrected values
-     * based on this node's RID, neighbours RIDs, updating the length and internet checksum.</p>
-     * <p></p>
-     * <p>This node's rid is derived from Config.thisNode.rid</p>
-     * <p>The RIDs of neighbours are derived from Config.neighboursTable. The router IDs from each NeighbourNode.rid</p>
-     * @return the completed hello packet in bytes.
-     */
-    private static byte[] makeHelloPacket() {
-        //Generic buffer that will be updated with specific values.
-        byte[] ospfBuffer = {
-                //GENERIC OSPF HEADER
-                0x02,//version
-                0x01,//message type
-                0x00, 0x2c,//packet length
-                (byte) 0xc0, (byte) 0xa8, 0x01, 0x01,//source router rid (dotted decimal)
-                0x00, 0x00, 0x00, 0x00,//area id (dotted decimal)
-                0x00, 0x00,//checksum
-                0x00, 0x00,//Auth type//0x00, 0x01
-                0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00,//Auth Data//0x63, 0x69, 0x73, 0x63, 0x6f, 0x00, 0x00, 0x00//"Cisco"
-
-                //OSPF HELLO PACKET HEADER
-                (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00,//Network Mask, p2p networks equal to 0.0.0.0.
-                0x00, 0x0a,//hello interval//10
-                0x00,//options
-                0x01,//router priority
-                0x00, 0x00, 0x00, 0x28,//router dead interval//40
-                0x00, 0x00, 0x00, 0x00,//DR
-                0x00, 0x00, 0x00, 0x00,//BDR
-        };
-
-        //Update router ID (4, 5, 6, 7)
-        try {
-            byte[] rid = Config.thisNode.getRIDBytes();
-            ospfBuffer[4] = rid[0];
-            ospfBuffer[5] = rid[1];
-            ospfBuffer[6] = rid[2];
-            ospfBuffer[7] = rid[3];
-        } catch (Exception ex)  {
-            handleDaemonError("Error when creating an OSPF packet: Substituting in router ID.", ex);
-        }
 
-        //Update Network Mask? (24, 25, 26, 27)
-        //not for this experiment
-
-        //Append neighbours
-        for (NeighbourNode neighbour: Config.neighboursTable) {
-            //Skip over non-adjacent nodes
-            if (neighbour.getState() == ExternalStates.DOWN)
-                continue;
-
-            ospfBuffer = Bytes.concat(ospfBuffer, neighbour.getRIDBytes());
-        }
-
-
-        //Update packet length (2, 3), Update Checksum (12, 13)
-        return updateChecksumAndLength(ospfBuffer);
-    }
-
-    /**<p><h1>Update Checksum and Packet Length in Packet Buffer</h1></p>
-     * <p>Processes a starting buffer for any make method, in the process updating the packet length and checksum fields
-     * to correct values.</p>
-     * @param buffer buffer to operate on and scrape data from
-     * @return original buffer with modified packet length and checksum fields
-     */
-    static byte[] updateChecksumAndLength(byte[] buffer) {
-        //Update length, using ByteBuffer to put the int value in array, truncated to short
-        //Length in positions 2 and 3 in OSPF header
-        int packetLength = buffer.length;
-        ByteBuffer lenBuffer = ByteBuffer.allocate(4);
-        lenBuffer.putInt(packetLength);
-        buffer[2] = lenBuffer.array()[2];
-        buffer[3] = lenBuffer.array()[3];
-
-        //Update checksum, using ByteBuffer to put the resulting long value in array, truncated to short
-        //Checksum in positions 12 and 13
-        //Clear checksum, so it won't be counted in the checksum calculation
-        buffer[12] = buffer[13] = 0;
-        ByteBuffer chkBuffer = ByteBuffer.allocate(8);
-
-        //Calculate checksum, store it in the chkBuffer, then store it in the output buffer
-        chkBuffer.putLong(Launcher.ipChecksum(buffer));
-        buffer[12] = chkBuffer.array()[6];
-        buffer[13] = chkBuffer.array()[7];
-
-        return buffer;
+        //Routes from the last SPF calculation, which may not have run yet.
+        SPF.Result routes = SPF.getLastResult();
+        if (routes == null)
+            return;
+        Launcher.printToUser("Routes, " + routes.getReachableCount() + " routers reachable:");
+        for (int rid: routes.rids())
+            System.out.println(routes.getRouteString(rid));
     }
 
     /**<p><h1>Handle Daemon Exception</h1></p>
@@ -614,14 +532,8 @@ class StdDaemon {
         }
 
         //Clean exit
-        if (timerHelloSend != null)
-            timerHelloSend.cancel();
-        if (threadStdMulticastListen.isAlive())
-            threadStdMulticastListen.interrupt();
-        if (EncDaemon.threadEncMulticastListen.isAlive())
-            EncDaemon.threadEncMulticastListen.interrupt();
-        if (multicastSocket != null)
-            multicastSocket.close();
+        HelloScheduler.stop();
+        PacketEngine.stop();
         System.exit(-3);
     }
     //endregion
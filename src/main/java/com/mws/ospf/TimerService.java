@@ -0,0 +1,143 @@
+package com.mws.ospf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**<p><h1>Timer Service</h1></p>
+ * <p>Single hashed wheel timer shared by every protocol timer, replacing a java.util.Timer, and its thread, per timer.
+ * The wheel is an array of buckets, each a doubly linked list of ProtocolTimers. One thread advances the wheel every
+ * tick, firing the timers in the current bucket that have no rounds left.</p>
+ * <p>Scheduling, resetting and cancelling a timer only links or unlinks it from a bucket, so each is O(1) and never
+ * creates a thread or an object. Timers are accurate to one tick.</p>
+ * <p>Timer tasks run on the wheel thread, unless the timer has an executor. Tasks that send packets or do other slow
+ * work should use the taskExecutor, so they do not hold up the wheel. The taskExecutor has a single thread, so protocol
+ * timer tasks never run at the same time as each other.</p>
+ */
+class TimerService {
+    //region STATIC CONSTANTS
+    static final long TICK_MS = 10;
+    private static final int WHEEL_SIZE = 512;//Power of 2. Over 5 seconds of ticks, so most timers take one round.
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    //endregion STATIC CONSTANTS
+
+    //region STATIC PROPERTIES
+    static final ExecutorService taskExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Thread-Timer-Tasks");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final ProtocolTimer[] wheel = new ProtocolTimer[WHEEL_SIZE];
+    private static long tick = 0;//Next tick to be processed. Guarded by wheel.
+    private static final Thread threadWheel = new Thread(TimerService::wheelThread, "Thread-Timer-Wheel");
+    //endregion STATIC PROPERTIES
+
+    static {
+        //Each bucket is a circular list, with an empty timer as its head.
+        for (int i = 0; i < WHEEL_SIZE; i++)
+            wheel[i] = new ProtocolTimer();
+
+        threadWheel.setDaemon(true);
+        threadWheel.start();
+    }
+
+    //region STATIC METHODS
+    /**<p><h1>Get Wheel Lock</h1></p>
+     * <p>Lock guarding every bucket and the timers linked into them.</p>
+     * @return the wheel lock
+     */
+    static Object lock() {
+        return wheel;
+    }
+
+    /**<p><h1>Add Timer</h1></p>
+     * <p>Link a timer into the bucket for its delay. The timer must not already be in a bucket.</p>
+     * @param timer timer to add
+     * @param delayMs delay until the timer fires, rounded up to a whole number of ticks, at least 1
+     */
+    static void add(ProtocolTimer timer, long delayMs) {
+        synchronized (wheel) {
+            long ticks = Math.max(1, (delayMs + TICK_MS - 1) / TICK_MS);
+            timer.rounds = (ticks - 1) / WHEEL_SIZE;
+
+            ProtocolTimer head = wheel[(int) ((tick + ticks - 1) & WHEEL_MASK)];
+            timer.prev = head.prev;
+            timer.next = head;
+            head.prev.next = timer;
+            head.prev = timer;
+        }
+    }
+
+    /**<p><h1>Remove Timer</h1></p>
+     * <p>Unlink a timer from its bucket, if it is in one.</p>
+     * @param timer timer to remove
+     */
+    static void remove(ProtocolTimer timer) {
+        synchronized (wheel) {
+            if (timer.next == null)
+                return;
+
+            timer.prev.next = timer.next;
+            timer.next.prev = timer.prev;
+            timer.prev = timer.next = null;
+        }
+    }
+
+    /**<p><h1>Wheel Thread</h1></p>
+     * <p>Thread method. Sleeps until each tick is due, then expires the current bucket. Ticks are kept against the
+     * start time, so a slow tick does not push back every tick after it.</p>
+     */
+    private static void wheelThread() {
+        List<ProtocolTimer> expired = new ArrayList<>();
+        long startNanos = System.nanoTime();
+
+        while (!Thread.currentThread().isInterrupted()) {
+            long deadline;
+            synchronized (wheel) {
+                deadline = startNanos + TimeUnit.MILLISECONDS.toNanos((tick + 1) * TICK_MS);
+            }
+            long sleepNanos = deadline - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+            }
+
+            //Expire the bucket under the lock, but run the tasks after it, so tasks may reset timers.
+            synchronized (wheel) {
+                ProtocolTimer head = wheel[(int) (tick & WHEEL_MASK)];
+                ProtocolTimer timer = head.next;
+                while (timer != head) {
+                    ProtocolTimer next = timer.next;
+                    if (timer.rounds > 0) {
+                        timer.rounds--;
+                    } else {
+                        timer.prev.next = next;
+                        next.prev = timer.prev;
+                        timer.prev = timer.next = null;
+
+                        timer.expiredGeneration = timer.generation;
+                        expired.add(timer);
+                    }
+                    timer = next;
+                }
+                tick++;
+
+                //Periodic timers are added back before their task runs, measured from when they were due.
+                for (ProtocolTimer expiredTimer: expired) {
+                    if (expiredTimer.periodMs > 0)
+                        add(expiredTimer, expiredTimer.periodMs);
+                }
+            }
+
+            for (ProtocolTimer expiredTimer: expired)
+                expiredTimer.fire();
+            expired.clear();
+        }
+    }
+    //endregion STATIC METHODS
+}
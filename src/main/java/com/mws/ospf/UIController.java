@@ -48,7 +48,7 @@ public class UIController {
      */
     @FXML
     protected void initialize() {
-        txtRID.setText(String.valueOf(Config.thisNode.getRID()));
+        txtRID.setText(Config.thisNode.getRIDString());
         tbpNeighbours.getTabs().clear();
         timerUpdateGUI.setCycleCount(Timeline.INDEFINITE);
         timerUpdateGUI.play();
@@ -67,7 +67,7 @@ public class UIController {
                 Config.writeConfig();
             } catch (IllegalArgumentException ex) {
                 lblOutStatus.setText("RID was invalid, reverted to default value");
-                txtRID.setText(Config.thisNode.getRID().toString());
+                txtRID.setText(Config.thisNode.getRIDString());
             }
         }
     }
@@ -83,17 +83,19 @@ public class UIController {
             }
 
             VBox vbTabPropValues = (VBox) ((HBox) n.tab.getContent()).getChildren().get(1);
-            ((Label) vbTabPropValues.getChildren().get(0)).setText(n.getRID().toString());
+            ((Label) vbTabPropValues.getChildren().get(0)).setText(n.getRIDString());
             ((Label) vbTabPropValues.getChildren().get(1)).setText(n.ipAddress.toPrefixLengthString());
             ((Label) vbTabPropValues.getChildren().get(2)).setText(n.getState().toString());
             ((Label) vbTabPropValues.getChildren().get(3)).setText(n.getKnownNeighboursString());
+            ((Label) vbTabPropValues.getChildren().get(4)).setText(getRouteString(n));
 
             //Start of DBD data display
             HBox hbDBDRoot = (HBox) vbTabPropValues.getChildren().get(5);
             hbDBDRoot.getChildren().clear();
 
-            //For each learned RLSA, create a string as header. Also append link data as children underneath.
-            for (RLSA lsa: n.lsaRequestList) {
+            //For each learned RLSA, create a string as header. Also append link data as children underneath. Read
+            //from the current LSDB snapshot, which never changes, so no lock is needed.
+            for (RLSA lsa: Config.lsdb.snapshot().lsas()) {
                 hbDBDRoot.getChildren().add(new Label(lsa.toString()));
                 //Make a string containing the link buffer as hex. Loop over each byte, convert into hex split into bytes
                 for (LinkData link: lsa.links) {
@@ -105,7 +107,7 @@ public class UIController {
 
                     hbDBDRoot.getChildren().add(new Label(linkBufferString.toString()));
                 }// for (LinkData link: lsa.links) {
-            }// for (RLSA lsa: n.lsaRequestList) {
+            }// for (RLSA lsa: Config.lsdb.snapshot().lsas()) {
         } // for (NeighbourNode n : Config.neighboursTable) {
     }
 
@@ -123,7 +125,7 @@ public class UIController {
 
         //Neighbour information
         vbTabPropNames.getChildren().add(0, new Label("RID: "));
-        vbTabPropValues.getChildren().add(0, new Label(n.getRID().toString()));
+        vbTabPropValues.getChildren().add(0, new Label(n.getRIDString()));
 
         vbTabPropNames.getChildren().add(1, new Label("IPv4: "));
         vbTabPropValues.getChildren().add(1, new Label(n.ipAddress.toPrefixLengthString()));
@@ -134,16 +136,28 @@ public class UIController {
         vbTabPropNames.getChildren().add(3, new Label("Known Neighbours: "));
         vbTabPropValues.getChildren().add(3, new Label(n.getKnownNeighboursString()));
 
+        vbTabPropNames.getChildren().add(4, new Label("Route: "));
+        vbTabPropValues.getChildren().add(4, new Label(getRouteString(n)));
+
         //DBD Data
         HBox hbDBDRoot = new HBox();
-        vbTabPropNames.getChildren().add(4, new Label("LSA Request List:"));
-        vbTabPropNames.getChildren().add(5, hbDBDRoot);
+        vbTabPropNames.getChildren().add(5, new Label("LSDB:"));
+        vbTabPropValues.getChildren().add(5, hbDBDRoot);
 
         n.tab = new Tab();
-        n.tab.setText(n.getRID().toString());
+        n.tab.setText(n.getRIDString());
         n.tab.setContent(hbTabRoot);
 
         tbpNeighbours.getTabs().add(n.tab);
     }
+
+    /**<p><h1>Get Route String</h1></p>
+     * @param n neighbour node
+     * @return the route to the neighbour from the last SPF result
+     */
+    private String getRouteString(NeighbourNode n) {
+        SPF.Result routes = SPF.getLastResult();
+        return routes == null ? "Not calculated" : routes.getRouteString(n.getRID());
+    }
     //endregion OBJECT METHODS
 }
@@ -0,0 +1,118 @@
+package com.mws.ospf;
+
+import inet.ipaddr.IPAddressString;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**<p><h1>Hello Template Test</h1></p>
+ * <p>Checks the neighbours list and RFC 1624 checksum patched by HelloTemplate against a hello encoded in full, with the
+ * same neighbours in the same order, and finished by PacketCodec.finishPacket.</p>
+ */
+class HelloTemplateTest {
+    //region STATIC CONSTANTS
+    private static final byte VERSION = 0x02;
+    private static final int OPERATIONS = 100_000;
+    private static final int RID_RANGE = 64;//Small, so adds of listed RIDs and removes of unlisted RIDs happen too
+    //endregion STATIC CONSTANTS
+
+    //region OBJECT PROPERTIES
+    private HelloTemplate template;
+    private final List<Integer> listed = new ArrayList<>();//Neighbours in the order the template lists them
+    //endregion OBJECT PROPERTIES
+
+    //region TESTS
+    @BeforeEach
+    void setUp() {
+        Config.thisNode = new ThisNode(new IPAddressString("1.1.1.1"), "test", List.of());
+        template = new HelloTemplate(VERSION);
+    }
+
+    @Test
+    void randomAddsAndRemovesMatchFullEncode() {
+        Random random = new Random(5);
+        for (int i = 0; i < OPERATIONS; i++) {
+            //RIDs across the whole unsigned range, so every bit of both checksum words changes.
+            int rid = (1 + random.nextInt(RID_RANGE)) * 0x9E3779B1;
+            if (random.nextBoolean())
+                add(rid);
+            else
+                remove(rid);
+            assertMatchesFullEncode("Operation " + i);
+        }
+    }
+
+    @Test
+    void removeSwapsLastIntoPlace() {
+        add(0x0a000001);
+        add(0x0a000002);
+        add(0x0a000003);
+        add(0xc0a80101);
+
+        remove(0x0a000001);
+        assertMatchesFullEncode("First removed");
+        remove(0x0a000003);
+        assertMatchesFullEncode("Middle removed");
+    }
+
+    @Test
+    void removeLastEntry() {
+        add(0x0a000001);
+        add(0xffffffff);
+
+        remove(0xffffffff);
+        assertMatchesFullEncode("Last entry removed");
+        remove(0x0a000001);
+        assertMatchesFullEncode("Only entry removed");
+    }
+    //endregion TESTS
+
+    //region HELPERS
+    /**<p><h1>Add</h1></p>
+     * <p>Add a neighbour to the template, and to the expected list. A listed neighbour is not added again.</p>
+     * @param rid neighbour RID
+     */
+    private void add(int rid) {
+        template.addNeighbour(rid);
+        if (!listed.contains(rid))
+            listed.add(rid);
+    }
+
+    /**<p><h1>Remove</h1></p>
+     * <p>Remove a neighbour from the template, and from the expected list, moving the last neighbour into its place.
+     * </p>
+     * @param rid neighbour RID
+     */
+    private void remove(int rid) {
+        template.removeNeighbour(rid);
+        int index = listed.indexOf(rid);
+        if (index == -1)
+            return;
+        int last = listed.remove(listed.size() - 1);
+        if (index < listed.size())
+            listed.set(index, last);
+    }
+
+    /**<p><h1>Assert Matches Full Encode</h1></p>
+     * <p>Encode the hello in full, with the expected neighbours, and compare it to the template byte for byte.</p>
+     * @param message message on failure
+     */
+    private void assertMatchesFullEncode(String message) {
+        ByteBuffer expected = PacketCodec.encodeHello(ByteBuffer.allocate(PacketCodec.TX_BUFFER_SIZE), VERSION);
+        expected.limit(expected.capacity());
+        expected.position(HelloView.HELLO_HEADER_LENGTH);
+        for (int rid: listed)
+            expected.putInt(rid);
+        PacketCodec.finishPacket(expected);
+
+        ByteBuffer actual = template.writeTo(ByteBuffer.allocate(PacketCodec.TX_BUFFER_SIZE));
+        assertArrayEquals(PacketCodec.toArray(expected), PacketCodec.toArray(actual), message);
+    }
+    //endregion HELPERS
+}
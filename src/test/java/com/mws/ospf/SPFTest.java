@@ -0,0 +1,196 @@
+package com.mws.ospf;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**<p><h1>SPF Test</h1></p>
+ * <p>Checks the incremental update of SPF against a full calculation. A random topology is changed in random batches
+ * of metric changes, links added and removed, and routers removed at MaxAge. After each batch, the incremental update
+ * must give every router the same distance as a full calculation over the same LSDB.</p>
+ */
+class SPFTest {
+    //region STATIC CONSTANTS
+    private static final int ROOT_RID = 1;
+    private static final int ROUTERS = 200;
+    private static final int BATCHES = 2000;
+    private static final int MAX_BATCH_SIZE = 4;
+    private static final int MAX_METRIC = 100;
+    //endregion STATIC CONSTANTS
+
+    //region OBJECT PROPERTIES
+    private final Random random = new Random(7);
+    private final Map<Integer, List<int[]>> topology = new HashMap<>();//RID to {neighbour RID, metric} of each link
+    private final Map<LSAKey, RLSA> lsdb = new LinkedHashMap<>();
+    private final Map<Integer, Integer> sequenceNumbers = new HashMap<>();
+    //endregion OBJECT PROPERTIES
+
+    //region TESTS
+    @Test
+    void updateMatchesFullCalculation() {
+        makeTopology();
+        long version = 0;
+        SPF incremental = new SPF(List.copyOf(lsdb.values()), ROOT_RID);
+        incremental.runFull();
+
+        int incrementalRuns = 0;
+        for (int batch = 0; batch < BATCHES; batch++) {
+            List<LSAChange> changes = makeChanges(++version);
+            LSDB.Snapshot snapshot = new LSDB.Snapshot(version, List.copyOf(lsdb.values()), Map.copyOf(lsdb));
+
+            //As SPF.calculate does, a calculation that can't be updated is replaced by a full one.
+            if (incremental.update(snapshot, changes)) {
+                incrementalRuns++;
+            } else {
+                incremental = new SPF(snapshot.lsas(), ROOT_RID);
+                incremental.runFull();
+            }
+
+            SPF full = new SPF(snapshot.lsas(), ROOT_RID);
+            full.runFull();
+            SPF.Result incrementalResult = incremental.makeResult(version, 0, true);
+            SPF.Result fullResult = full.makeResult(version, 0, false);
+            for (int rid = 1; rid <= ROUTERS; rid++)
+                assertEquals(fullResult.getDistance(rid), incrementalResult.getDistance(rid),
+                        "Batch " + batch + ", distance to router " + rid);
+        }
+
+        //Most batches are small enough to be updated, else the test says nothing about the update.
+        assertTrue(incrementalRuns > BATCHES / 2, "Only " + incrementalRuns + " batches updated incrementally");
+    }
+    //endregion TESTS
+
+    //region HELPERS
+    /**<p><h1>Make Topology</h1></p>
+     * <p>A ring of every router, so all are reachable at the start, plus one random link from each router.</p>
+     */
+    private void makeTopology() {
+        for (int rid = 1; rid <= ROUTERS; rid++)
+            topology.put(rid, new ArrayList<>());
+        for (int rid = 1; rid <= ROUTERS; rid++) {
+            addLink(rid, rid % ROUTERS + 1);
+            int other = 1 + random.nextInt(ROUTERS);
+            if (other != rid)
+                addLink(rid, other);
+        }
+        for (int rid = 1; rid <= ROUTERS; rid++)
+            lsdb.put(new LSAKey(RLSA.LS_TYPE, rid, rid), makeLSA(rid));
+    }
+
+    /**<p><h1>Make Changes</h1></p>
+     * <p>Apply a random batch of changes to the topology and the LSDB, logging each as the LSDB would.</p>
+     * @param version version of the snapshot the changes make
+     * @return the changes, in order
+     */
+    private List<LSAChange> makeChanges(long version) {
+        List<LSAChange> changes = new ArrayList<>();
+        int batchSize = 1 + random.nextInt(MAX_BATCH_SIZE);
+        for (int i = 0; i < batchSize; i++) {
+            int rid = 1 + random.nextInt(ROUTERS);
+            List<int[]> links = topology.get(rid);
+            List<Integer> changed = new ArrayList<>(List.of(rid));
+
+            switch (random.nextInt(5)) {
+                case 0 -> {
+                    //Metric change, only on one side of the link.
+                    if (!links.isEmpty())
+                        links.get(random.nextInt(links.size()))[1] = 1 + random.nextInt(MAX_METRIC);
+                }
+                case 1 -> {
+                    //Link removed, from one side or both.
+                    if (!links.isEmpty()) {
+                        int[] link = links.remove(random.nextInt(links.size()));
+                        if (random.nextBoolean()) {
+                            topology.get(link[0]).removeIf(back -> back[0] == rid);
+                            changed.add(link[0]);
+                        }
+                    }
+                }
+                case 2 -> {
+                    //Link added, both ways.
+                    int other = 1 + random.nextInt(ROUTERS);
+                    if (other != rid) {
+                        addLink(rid, other);
+                        changed.add(other);
+                    }
+                }
+                case 3 -> {
+                    //Metric cut to the least, so paths through the link get better.
+                    if (!links.isEmpty())
+                        links.get(random.nextInt(links.size()))[1] = 1;
+                }
+                case 4 -> {
+                    //Router removed at MaxAge. The root always has its LSA.
+                    if (rid == ROOT_RID)
+                        continue;
+                    RLSA old = lsdb.remove(new LSAKey(RLSA.LS_TYPE, rid, rid));
+                    if (old != null)
+                        changes.add(new LSAChange(version, LSAChange.Type.MAX_AGED, old, null));
+                    continue;
+                }
+            }
+
+            for (int changedRID: changed) {
+                RLSA lsa = makeLSA(changedRID);
+                RLSA old = lsdb.put(lsa.getKey(), lsa);
+                changes.add(new LSAChange(version, old == null ? LSAChange.Type.ADDED : LSAChange.Type.REPLACED,
+                        old, lsa));
+            }
+        }
+        return changes;
+    }
+
+    /**<p><h1>Add Link</h1></p>
+     * <p>Add a link both ways, with the same random metric.</p>
+     * @param rid RID of one router
+     * @param other RID of the other router
+     */
+    private void addLink(int rid, int other) {
+        int metric = 1 + random.nextInt(MAX_METRIC);
+        topology.get(rid).add(new int[] {other, metric});
+        topology.get(other).add(new int[] {rid, metric});
+    }
+
+    /**<p><h1>Make LSA</h1></p>
+     * <p>Encode the router LSA of a router from the topology, with the next sequence number, and read it back as a
+     * received LSA. The link data of each link is made from the neighbour RID.</p>
+     * @param rid RID of the router
+     * @return the router LSA
+     */
+    private RLSA makeLSA(int rid) {
+        List<int[]> links = topology.get(rid);
+        int length = RLSA.LSA_HEADER_LENGTH + 4 + links.size() * LinkData.LINK_DATA_SIZE;
+        int sequenceNumber = sequenceNumbers.merge(rid, 1, Integer::sum) + RLSA.INITIAL_SEQUENCE_NUMBER;
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putShort((short) 0);//LS age
+        buffer.put((byte) 0);//Options
+        buffer.put(RLSA.LS_TYPE);
+        buffer.putInt(rid);//LS ID
+        buffer.putInt(rid);//Advertising router
+        buffer.putInt(sequenceNumber);
+        buffer.putShort((short) 0);//Checksum, completed below
+        buffer.putShort((short) length);
+        buffer.putShort((short) 0);//Flags
+        buffer.putShort((short) links.size());
+        for (int[] link: links) {
+            buffer.putInt(link[0]);//Link ID
+            buffer.putInt(link[0] * 7);//Link data
+            buffer.put((byte) 1);//Point to point
+            buffer.put((byte) 0);//# TOS
+            buffer.putShort((short) link[1]);//Metric
+        }
+        buffer.putShort(16, (short) RLSA.fletcherChecksum16(buffer, 0, length));
+        return new RLSA(new LSAHeaderView().wrap(buffer, 0));
+    }
+    //endregion HELPERS
+}
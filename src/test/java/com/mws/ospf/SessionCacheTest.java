@@ -0,0 +1,174 @@
+package com.mws.ospf;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKey;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**<p><h1>Session Cache Test</h1></p>
+ * <p>Checks the Session Resume exchange between two sessions holding the same cached secret, as EncDaemon runs it. The
+ * requester sends a request, the responder a response with a challenge, and the requester a confirm. Replays of the
+ * request or the confirm must not let the responder set a key.</p>
+ */
+class SessionCacheTest {
+    //region STATIC CONSTANTS
+    private static final int REQUESTER_RID = 0x01010101;
+    private static final int RESPONDER_RID = 0x02020202;
+    //endregion STATIC CONSTANTS
+
+    //region OBJECT PROPERTIES
+    private SessionCache.Session requester;
+    private SessionCache.Session responder;
+    //endregion OBJECT PROPERTIES
+
+    //region TESTS
+    @BeforeEach
+    void setUp() {
+        byte[] secret = new byte[32];
+        Arrays.fill(secret, (byte) 0x5a);
+        requester = new SessionCache.Session(secret.clone(), CipherSuite.AES_GCM);
+        responder = new SessionCache.Session(secret.clone(), CipherSuite.AES_GCM);
+    }
+
+    @Test
+    void bothEndsDeriveSameKey() {
+        Exchange exchange = runExchange();
+        assertTrue(responder.takeChallenge(exchange.requestNonce, exchange.responseNonce));
+
+        SecretKey requesterKey = requester.deriveKey(REQUESTER_RID, RESPONDER_RID, exchange.requestNonce,
+                exchange.responseNonce);
+        SecretKey responderKey = responder.deriveKey(REQUESTER_RID, RESPONDER_RID, exchange.requestNonce,
+                exchange.responseNonce);
+        assertArrayEquals(requesterKey.getEncoded(), responderKey.getEncoded());
+
+        //A new exchange makes a new key, so a key is never used twice.
+        Exchange next = runExchange();
+        assertFalse(Arrays.equals(requesterKey.getEncoded(), requester.deriveKey(REQUESTER_RID, RESPONDER_RID,
+                next.requestNonce, next.responseNonce).getEncoded()));
+    }
+
+    @Test
+    void replayedRequestOnlyMakesNewChallenge() {
+        Exchange exchange = runExchange();
+        assertTrue(responder.takeChallenge(exchange.requestNonce, exchange.responseNonce));
+
+        //The replayed request still has a valid proof, so the responder answers it with a new challenge.
+        assertTrue(responder.isProofValid(exchange.requestProof, SessionCache.RESUME_REQUEST, REQUESTER_RID,
+                RESPONDER_RID, exchange.requestNonce, SessionCache.NO_NONCE));
+        byte[] replayChallenge = SessionCache.makeNonce();
+        responder.addChallenge(exchange.requestNonce, replayChallenge);
+
+        //The confirm recorded from the first exchange does not match the new challenge.
+        assertFalse(responder.takeChallenge(exchange.requestNonce, exchange.responseNonce));
+        //Without the secret, no confirm for the new challenge can be made.
+        byte[] forged = new SessionCache.Session(new byte[32], CipherSuite.AES_GCM).makeProof(
+                SessionCache.RESUME_CONFIRM, REQUESTER_RID, RESPONDER_RID, exchange.requestNonce, replayChallenge);
+        assertFalse(responder.isProofValid(forged, SessionCache.RESUME_CONFIRM, REQUESTER_RID, RESPONDER_RID,
+                exchange.requestNonce, replayChallenge));
+    }
+
+    @Test
+    void replayedConfirmSetsNoKey() {
+        Exchange exchange = runExchange();
+        assertTrue(responder.isProofValid(exchange.confirmProof, SessionCache.RESUME_CONFIRM, REQUESTER_RID,
+                RESPONDER_RID, exchange.requestNonce, exchange.responseNonce));
+        assertTrue(responder.takeChallenge(exchange.requestNonce, exchange.responseNonce));
+
+        //The proof of the replay is still valid, but its challenge was used, so no key is set.
+        assertTrue(responder.isProofValid(exchange.confirmProof, SessionCache.RESUME_CONFIRM, REQUESTER_RID,
+                RESPONDER_RID, exchange.requestNonce, exchange.responseNonce));
+        assertFalse(responder.takeChallenge(exchange.requestNonce, exchange.responseNonce));
+
+        //Nor once the responder has answered a later request.
+        Exchange next = runExchange();
+        assertFalse(responder.takeChallenge(exchange.requestNonce, exchange.responseNonce));
+        assertTrue(responder.takeChallenge(next.requestNonce, next.responseNonce));
+    }
+
+    @Test
+    void takeChallengeSucceedsOnce() {
+        byte[] requestNonce = SessionCache.makeNonce();
+        byte[] first = SessionCache.makeNonce();
+        byte[] second = SessionCache.makeNonce();
+        responder.addChallenge(requestNonce, first);
+        responder.addChallenge(requestNonce, second);
+
+        assertTrue(responder.takeChallenge(requestNonce, second));
+        assertFalse(responder.takeChallenge(requestNonce, second));
+        //Taking a challenge clears the others, as the session is resumed.
+        assertFalse(responder.takeChallenge(requestNonce, first));
+    }
+
+    @Test
+    void oldestChallengeDroppedWhenFull() {
+        byte[] requestNonce = SessionCache.makeNonce();
+        byte[] oldest = SessionCache.makeNonce();
+        responder.addChallenge(requestNonce, oldest);
+        for (int i = 0; i < SessionCache.MAX_CHALLENGES; i++)
+            responder.addChallenge(requestNonce, SessionCache.makeNonce());
+
+        assertFalse(responder.takeChallenge(requestNonce, oldest));
+    }
+
+    @Test
+    void proofBoundToMessageAndDirection() {
+        Exchange exchange = runExchange();
+
+        //A response proof can't be sent back as a confirm, nor a confirm reflected to the requester.
+        assertFalse(requester.isProofValid(exchange.responseProof, SessionCache.RESUME_CONFIRM, RESPONDER_RID,
+                REQUESTER_RID, exchange.requestNonce, exchange.responseNonce));
+        assertFalse(requester.isProofValid(exchange.confirmProof, SessionCache.RESUME_CONFIRM, RESPONDER_RID,
+                REQUESTER_RID, exchange.requestNonce, exchange.responseNonce));
+
+        //The confirm proof, sent in plaintext, is not the key.
+        byte[] key = requester.deriveKey(REQUESTER_RID, RESPONDER_RID, exchange.requestNonce, exchange.responseNonce)
+                .getEncoded();
+        assertFalse(Arrays.equals(key, Arrays.copyOf(exchange.confirmProof, key.length)));
+    }
+    //endregion TESTS
+
+    //region HELPERS
+    /**<p><h1>Run Exchange</h1></p>
+     * <p>Run a request, response and confirm between the sessions, checking each proof as EncDaemon does. The confirm
+     * is made, but left for the test to give to the responder.</p>
+     * @return the nonces and proofs sent
+     */
+    private Exchange runExchange() {
+        byte[] requestNonce = SessionCache.makeNonce();
+        requester.pendingNonce = requestNonce;
+        byte[] requestProof = requester.makeProof(SessionCache.RESUME_REQUEST, REQUESTER_RID, RESPONDER_RID,
+                requestNonce, SessionCache.NO_NONCE);
+
+        assertTrue(responder.isProofValid(requestProof, SessionCache.RESUME_REQUEST, REQUESTER_RID, RESPONDER_RID,
+                requestNonce, SessionCache.NO_NONCE));
+        byte[] responseNonce = SessionCache.makeNonce();
+        responder.addChallenge(requestNonce, responseNonce);
+        byte[] responseProof = responder.makeProof(SessionCache.RESUME_RESPONSE, RESPONDER_RID, REQUESTER_RID,
+                requestNonce, responseNonce);
+
+        assertTrue(requester.isProofValid(responseProof, SessionCache.RESUME_RESPONSE, RESPONDER_RID, REQUESTER_RID,
+                requestNonce, responseNonce));
+        assertArrayEquals(requester.pendingNonce, requestNonce);
+        requester.pendingNonce = null;
+        byte[] confirmProof = requester.makeProof(SessionCache.RESUME_CONFIRM, REQUESTER_RID, RESPONDER_RID,
+                requestNonce, responseNonce);
+
+        return new Exchange(requestNonce, responseNonce, requestProof, responseProof, confirmProof);
+    }
+
+    /**<p><h1>Exchange</h1></p>
+     * @param requestNonce nonce of the request
+     * @param responseNonce challenge nonce of the response
+     * @param requestProof proof sent in the request
+     * @param responseProof proof sent in the response
+     * @param confirmProof proof sent in the confirm
+     */
+    private record Exchange(byte[] requestNonce, byte[] responseNonce, byte[] requestProof, byte[] responseProof,
+                            byte[] confirmProof) {}
+    //endregion HELPERS
+}